@@ -0,0 +1,332 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Пул аккаунтов ABB (abb.accounts): на каждый аккаунт свой {@link PlaywrightWorker} со своим контекстом
+ * в общем Chromium и своим session-файлом. Вилки всех аккаунтов идут в один {@link ArbPipeline},
+ * повторы снимает его dedup.
+ *
+ * Шарды делятся между здоровыми аккаунтами: аккаунтов меньше, чем шардов, — каждый берёт свою часть;
+ * больше — один шард сканируют несколько аккаунтов, каждый в своём темпе, и шард обновляется чаще,
+ * чем позволил бы ABB одному аккаунту.
+ *
+ * 429 от ABB или выкидывание на логин — аккаунт остывает (abb.throttle-cooldown, дальше вдвое, до
+ * abb.max-throttle-cooldown), его шарды на это время забирают остальные. Резолв ссылок тоже уходит
+ * с остывающего аккаунта на наименее загруженный здоровый. Если остывают все — сканирует тот, у кого
+ * остывание кончится раньше: один аккаунт работает как до пула.
+ */
+@Component
+@Slf4j
+public class AbbAccountPool implements ArbScanner.Group {
+
+  // столько без новых страйков — остывание снова начинается с abb.throttle-cooldown
+  private static final Duration STRIKE_FORGET = Duration.ofHours(1);
+  private static final Duration RATE_WINDOW = Duration.ofMinutes(1);
+
+  private final AbbProperties abbProps;
+  private final TelegramSender telegramSender;
+  private final WorkerControlService control;
+  private final ArbPipeline pipeline;
+  private final BrowserPool browserPool;
+  private final ArbEventStore events;
+  private final RoutingRules routing;
+  private final String bcGameCookies;
+  private final String stateDir;
+
+  private final List<Account> accounts = new ArrayList<>();
+  private final List<ArbScanner> workers = new ArrayList<>();
+
+  // раскладка шардов; пересчитывается, когда меняется набор здоровых аккаунтов
+  private List<Account> planFor = List.of();
+  private Map<Account, List<AbbProperties.Shard>> plan = Map.of();
+  private long version;
+
+  public AbbAccountPool(AbbProperties abbProps,
+      TelegramSender telegramSender,
+      WorkerControlService control,
+      ArbPipeline pipeline,
+      BrowserPool browserPool,
+      ArbEventStore events,
+      RoutingRules routing,
+      @Value("${bc-game.session-cookies:}") String bcGameCookies,
+      // session-файлы лежат рядом с остальным состоянием (volume): после редеплоя логин не нужен
+      @Value("${state.dir:/app/state}") String stateDir) {
+    this.abbProps = abbProps;
+    this.telegramSender = telegramSender;
+    this.control = control;
+    this.pipeline = pipeline;
+    this.browserPool = browserPool;
+    this.events = events;
+    this.routing = routing;
+    this.bcGameCookies = bcGameCookies;
+    this.stateDir = stateDir;
+  }
+
+  // воркеры получают ссылку на пул, поэтому создаются после конструктора, а не в нём
+  @PostConstruct
+  void createWorkers() {
+    List<AbbProperties.Account> configured = abbProps.getAccounts();
+    if (configured == null || configured.isEmpty()) {
+      configured = List.of(new AbbProperties.Account(null, abbProps.getEmail(), abbProps.getPassword()));
+    }
+    for (int i = 0; i < configured.size(); i++) {
+      AbbProperties.Account c = configured.get(i);
+      String suffix = c.getName() != null && !c.getName().isBlank() ? c.getName() : String.valueOf(i + 1);
+      // первый аккаунт — "abb" и session.json, как до пула: команды бота и сохранённая сессия не меняются
+      Account a = i == 0
+          ? new Account("abb", "session.json", c)
+          : new Account("abb-" + suffix, "session-" + suffix + ".json", c);
+      accounts.add(a);
+      workers.add(new PlaywrightWorker(a, this, telegramSender, control, pipeline, browserPool, abbProps, events, routing));
+    }
+  }
+
+  @Override
+  public List<ArbScanner> scanners() {
+    return workers;
+  }
+
+  String bcGameCookies() {
+    return bcGameCookies;
+  }
+
+  String stateDir() {
+    return stateDir;
+  }
+
+  // =========================
+  // Раскладка шардов
+  // =========================
+
+  /**
+   * Шарды аккаунта и версия его раскладки: сменилась версия — сканер перезапускает сессию под новые шарды.
+   * Версия своя у каждого аккаунта, чтобы остывание соседа не перезапускало тех, чьи шарды не поменялись.
+   */
+  record Plan(long version, List<AbbProperties.Shard> shards) {}
+
+  synchronized Plan plan(Account a) {
+    refresh(System.currentTimeMillis());
+    return new Plan(a.planVersion, plan.getOrDefault(a, List.of()));
+  }
+
+  synchronized long version(Account a) {
+    refresh(System.currentTimeMillis());
+    return a.planVersion;
+  }
+
+  private void refresh(long now) {
+    List<Account> up = new ArrayList<>();
+    for (Account a : accounts) {
+      if (!a.throttled(now)) up.add(a);
+    }
+    if (up.isEmpty()) {
+      Account soonest = accounts.get(0);
+      for (Account a : accounts) {
+        if (a.throttledUntilMs < soonest.throttledUntilMs) soonest = a;
+      }
+      up.add(soonest);
+    }
+    if (up.equals(planFor)) return;
+
+    List<AbbProperties.Shard> shards = allShards();
+    Map<Account, List<AbbProperties.Shard>> next = new LinkedHashMap<>();
+    for (Account a : up) next.put(a, new ArrayList<>());
+    if (up.size() >= shards.size()) {
+      // на каждый шард по несколько аккаунтов
+      for (int k = 0; k < up.size(); k++) next.get(up.get(k)).add(shards.get(k % shards.size()));
+    } else {
+      for (int j = 0; j < shards.size(); j++) next.get(up.get(j % up.size())).add(shards.get(j));
+    }
+    for (Account a : accounts) {
+      if (!next.getOrDefault(a, List.of()).equals(plan.getOrDefault(a, List.of()))) a.planVersion++;
+    }
+    planFor = up;
+    plan = next;
+    version++;
+    if (accounts.size() > 1) log.info("[accounts] plan #{}: {}", version, describe(next));
+  }
+
+  private List<AbbProperties.Shard> allShards() {
+    List<AbbProperties.Shard> shards = abbProps.getShards();
+    return (shards == null || shards.isEmpty()) ? List.of(new AbbProperties.Shard("all", "/arbs")) : shards;
+  }
+
+  private static String describe(Map<Account, List<AbbProperties.Shard>> plan) {
+    StringBuilder sb = new StringBuilder();
+    plan.forEach((a, shards) -> {
+      if (sb.length() > 0) sb.append(", ");
+      sb.append(a.name).append('=').append(shards.stream().map(AbbProperties.Shard::getName).toList());
+    });
+    return sb.toString();
+  }
+
+  // =========================
+  // Здоровье аккаунтов (зовёт поток сканера)
+  // =========================
+
+  /** Скан прошёл: {@code requests} — сколько страниц фильтров прочитано. */
+  void scanned(Account a, int requests) {
+    a.requests.add(requests);
+  }
+
+  /** ABB ответил 429. Повторные сигналы во время остывания не удлиняют его. */
+  void throttled(Account a, String reason) {
+    strike(a, reason);
+  }
+
+  /** ABB выкинул аккаунт на логин посреди сессии или не пустил с его паролем. */
+  void signedOut(Account a, String reason) {
+    synchronized (this) {
+      a.signOuts++;
+    }
+    strike(a, reason);
+  }
+
+  private synchronized void strike(Account a, String reason) {
+    long now = System.currentTimeMillis();
+    a.lastIssue = reason;
+    if (a.throttled(now)) return;
+    if (now - a.lastStrikeMs > STRIKE_FORGET.toMillis()) a.strikes = 0;
+    long cooldown = Math.min(abbProps.getMaxThrottleCooldown().toMillis(),
+        abbProps.getThrottleCooldown().toMillis() << Math.min(a.strikes, 20));
+    a.strikes++;
+    a.lastStrikeMs = now;
+    a.throttledUntilMs = now + cooldown;
+    log.info("[accounts] {} cooling down {}s: {}", a.name, cooldown / 1000, reason);
+    refresh(now);
+  }
+
+  // =========================
+  // Резолв
+  // =========================
+
+  /** Резолвер аккаунта подключён к вкладкам (или отключён — пауза, рестарт). */
+  void resolverUp(Account a, ExternalUrlResolver own) {
+    a.resolver = own;
+    a.resolverUp = true;
+  }
+
+  void resolverDown(Account a) {
+    a.resolverUp = false;
+  }
+
+  /**
+   * Резолвер для вилок аккаунта: свой, пока аккаунт здоров и его вкладки открыты,
+   * иначе — наименее загруженный здоровый аккаунт пула.
+   */
+  ExternalUrlResolver resolverFor(Account home) {
+    return new ExternalUrlResolver() {
+      @Override
+      public String resolve(String aggregatorUrl) {
+        Account a = pickResolver(home);
+        a.resolves.increment();
+        return a.resolver.resolve(aggregatorUrl);
+      }
+
+      @Override
+      public String resolve(BetLine bet) {
+        Account a = pickResolver(home);
+        a.resolves.increment();
+        return a.resolver.resolve(bet);
+      }
+    };
+  }
+
+  private Account pickResolver(Account home) {
+    long now = System.currentTimeMillis();
+    if (home.canResolve(now)) return home;
+    Account best = null;
+    long bestLoad = Long.MAX_VALUE;
+    for (Account a : accounts) {
+      if (!a.canResolve(now)) continue;
+      long load = a.resolves.sum(RATE_WINDOW);
+      if (load < bestLoad) {
+        best = a;
+        bestLoad = load;
+      }
+    }
+    if (best != null) return best;
+    // остывают все: хоть чьи-то открытые вкладки лучше, чем никаких
+    if (home.resolverUp) return home;
+    for (Account a : accounts) {
+      if (a.resolverUp) return a;
+    }
+    return home;
+  }
+
+  // =========================
+  // /status
+  // =========================
+
+  /** Строка здоровья аккаунта для /status его сканера. */
+  String health(Account a) {
+    long now = System.currentTimeMillis();
+    List<AbbProperties.Shard> shards;
+    synchronized (this) {
+      shards = plan.getOrDefault(a, List.of());
+    }
+    StringBuilder sb = new StringBuilder();
+    if (a.throttled(now)) {
+      sb.append("cooling ").append((a.throttledUntilMs - now + 999) / 1000).append("s");
+    } else {
+      sb.append("ok");
+    }
+    sb.append(" req/min=").append(a.requests.sum(RATE_WINDOW))
+        .append(" resolves/min=").append(a.resolves.sum(RATE_WINDOW));
+    if (accounts.size() > 1) {
+      sb.append(" shards=").append(shards.stream().map(AbbProperties.Shard::getName).toList());
+    }
+    if (a.strikes > 0) sb.append(" strikes=").append(a.strikes);
+    if (a.signOuts > 0) sb.append(" sign-outs=").append(a.signOuts);
+    if (a.lastIssue != null) sb.append(" (").append(a.lastIssue).append(')');
+    return sb.toString();
+  }
+
+  /** Аккаунт пула: учётка, session-файл и здоровье. */
+  static final class Account {
+    final String name;
+    final String sessionFile;
+    final String email;
+    final String password;
+
+    final RollingCounter requests = new RollingCounter(Duration.ofSeconds(5), RATE_WINDOW);
+    final RollingCounter resolves = new RollingCounter(Duration.ofSeconds(5), RATE_WINDOW);
+
+    volatile ExternalUrlResolver resolver = ExternalUrlResolver.NONE;
+    volatile boolean resolverUp;
+
+    // ниже пишет пул под своим монитором, /status читает как есть
+    volatile long throttledUntilMs;
+    volatile int strikes;
+    volatile long lastStrikeMs;
+    volatile long signOuts;
+    volatile String lastIssue;
+    // версия раскладки этого аккаунта; пишет и читает пул под своим монитором
+    long planVersion;
+
+    Account(String name, String sessionFile, AbbProperties.Account creds) {
+      this.name = name;
+      this.sessionFile = sessionFile;
+      this.email = creds.getEmail();
+      this.password = creds.getPassword();
+    }
+
+    boolean throttled(long now) {
+      return now < throttledUntilMs;
+    }
+
+    boolean canResolve(long now) {
+      return resolverUp && !throttled(now);
+    }
+  }
+}
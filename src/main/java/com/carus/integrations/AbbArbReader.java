@@ -0,0 +1,205 @@
+package com.carus.integrations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.playwright.Locator;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.PlaywrightException;
+
+/**
+ * Чтение списка вилок со страницы /arbs.
+ *
+ * Проценты и коэффициенты в строке меняются только вместе с .updated-at, поэтому сначала одним
+ * evaluate снимаем с каждой строки отпечаток (arb_hash, updated-at, percent, odds) и полный
+ * разбор (десятки round-trip'ов в браузер на строку) делаем только для строк, чей отпечаток
+ * изменился. Для остальных отдаём разобранное в прошлый раз.
+ *
+ * Кэш свой у каждой вкладки: экземпляр на одну {@link Page} и один поток.
+ */
+final class AbbArbReader {
+
+  static final String ABB_BASE = "https://www.allbestbets.com";
+
+  private static final String ARB_ROWS = "#arbs-list ul.arbs-list > li.wrapper.arb.has-2-bets";
+
+  // [href со arb_hash, updated-at, percent, коэффициенты через |] по каждой строке
+  private static final String FINGERPRINT_JS = """
+      rows => rows.map(r => {
+        const text = sel => { const e = r.querySelector(sel); return e ? e.textContent.trim() : ''; };
+        const link = r.querySelector("a[href*='arb_hash=']");
+        const odds = Array.from(r.querySelectorAll('.bet-wrapper a.coefficient-link'))
+            .map(e => e.textContent.trim()).join('|');
+        return [link ? link.getAttribute('href') : null, text('.header .updated-at'), text('.header .percent'), odds];
+      })
+      """;
+
+  // arb_hash -> отпечаток и результат разбора с прошлого скана; только строки, что сейчас на доске
+  private Map<String, CachedRow> cache = new HashMap<>();
+
+  private volatile int lastRows;
+  private volatile int lastExtracted;
+
+  List<ScannedArb> readAll(Page page) {
+    Locator arbs = page.locator(ARB_ROWS);
+    List<?> fingerprints = (List<?>) arbs.evaluateAll(FINGERPRINT_JS);
+    int n = fingerprints.size();
+
+    Map<String, CachedRow> next = new HashMap<>(n * 2);
+    List<ScannedArb> out = new ArrayList<>(n);
+    int extracted = 0;
+
+    for (int i = 0; i < n; i++) {
+      RowFingerprint fp = RowFingerprint.of((List<?>) fingerprints.get(i));
+
+      CachedRow cached = fp.arbHash() == null ? null : cache.get(fp.arbHash());
+      if (cached != null && cached.fingerprint().equals(fp)) {
+        next.put(fp.arbHash(), cached);
+        out.add(cached.arb());
+        continue;
+      }
+
+      ScannedArb arb = readRow(arbs.nth(i));
+      extracted++;
+      out.add(arb);
+
+      // DOM мог перерисоваться между evaluate и разбором: кэшируем только если строка та же
+      if (arb.arbHash() != null && arb.arbHash().equals(fp.arbHash())) {
+        next.put(fp.arbHash(), new CachedRow(fp, arb));
+      }
+    }
+
+    cache = next;
+    lastRows = n;
+    lastExtracted = extracted;
+    return out;
+  }
+
+  /** Доля строк последнего скана, для которых полный разбор не понадобился. */
+  double lastSkipRatio() {
+    int rows = lastRows;
+    return rows == 0 ? 0.0 : 1.0 - (double) lastExtracted / rows;
+  }
+
+  private ScannedArb readRow(Locator arb) {
+    ArbHeader header = readHeader(arb);
+    String arbHash = extractArbHash(arb);
+    List<BetLine> betLines = readBets(arb);
+    return new ScannedArb(arbHash, header, betLines);
+  }
+
+  private ArbHeader readHeader(Locator arb) {
+    String percent = safeText(arb.locator(".header .percent"));
+    String percentClass = safeAttr(arb.locator(".header .percent"), "class");
+    String sport = safeText(arb.locator(".header .sport-name"));
+
+    String period = safeText(arb.locator(".header .arb-game-period span"));
+    if (period.isBlank()) {
+      period = safeText(arb.locator(".header .period-name"));
+    }
+
+    String updatedAt = safeText(arb.locator(".header .updated-at"));
+
+    return ArbHeader.parse(percent, percentClass, sport, period, updatedAt);
+  }
+
+  private List<BetLine> readBets(Locator arb) {
+    Locator bets = arb.locator(".bet-wrapper");
+    int count = bets.count();
+
+    List<BetLine> out = new ArrayList<>(Math.min(count, 3));
+    for (int j = 0; j < count; j++) {
+      out.add(readBet(bets.nth(j)));
+    }
+    return out;
+  }
+
+  private BetLine readBet(Locator bet) {
+    String book = safeText(bet.locator(".bookmaker-name a"));
+    String date = safeText(bet.locator(".date"));
+    String event = safeText(bet.locator(".event-name .name a"));
+    String league = safeText(bet.locator(".event-name .league"));
+    String market = safeText(bet.locator(".market a span"));
+    String odd = safeText(bet.locator("a.coefficient-link"));
+
+    // ✅ ссылка может быть на BET-кнопке или на коэффициенте (a.coefficient-link)
+    String href = safeAttr(bet.locator(".bet-button a"), "href");
+
+    if (href == null || href.isBlank()) {
+      href = safeAttr(bet.locator("a.coefficient-link"), "href");
+    }
+    if (href == null || href.isBlank()) {
+      href = safeAttr(bet.locator(".market a"), "href");
+    }
+
+    String abbBetUrl = toAbsAbbUrl(href);
+
+    String depth = null;
+    Locator depthLoc = bet.locator(".market-dept");
+    if (depthLoc.count() > 0) depth = safeText(depthLoc);
+
+    return BetLine.parse(book, date, event, league, market, odd, depth, abbBetUrl);
+  }
+
+  static String toAbsAbbUrl(String href) {
+    if (href == null) return null;
+    String h = href.trim();
+    if (h.isEmpty()) return null;
+    if (h.startsWith("http://") || h.startsWith("https://")) return h;
+    if (h.startsWith("/")) return ABB_BASE + h;
+    return ABB_BASE + "/" + h;
+  }
+
+  private String extractArbHash(Locator arb) {
+    Locator anyLink = arb.locator("a[href*='arb_hash=']").first();
+    return arbHashFromHref(anyLink.getAttribute("href"));
+  }
+
+  static String arbHashFromHref(String href) {
+    if (href == null) return null;
+
+    String key = "arb_hash=";
+    int idx = href.indexOf(key);
+    if (idx < 0) return null;
+
+    String tail = href.substring(idx + key.length());
+    int amp = tail.indexOf('&');
+    return (amp >= 0) ? tail.substring(0, amp) : tail;
+  }
+
+  private String safeText(Locator loc) {
+    try {
+      if (loc == null || loc.count() == 0) return "";
+      String t = loc.first().textContent(new Locator.TextContentOptions().setTimeout(0));
+      return t == null ? "" : t.trim();
+    } catch (PlaywrightException e) {
+      return "";
+    }
+  }
+
+  private String safeAttr(Locator loc, String name) {
+    try {
+      if (loc == null || loc.count() == 0) return null;
+      String v = loc.first().getAttribute(name, new Locator.GetAttributeOptions().setTimeout(0));
+      return v == null ? null : v.trim();
+    } catch (PlaywrightException e) {
+      return null;
+    }
+  }
+
+  private record RowFingerprint(String arbHash, String updatedAt, String percent, String odds) {
+
+    static RowFingerprint of(List<?> raw) {
+      return new RowFingerprint(arbHashFromHref(str(raw, 0)), str(raw, 1), str(raw, 2), str(raw, 3));
+    }
+
+    private static String str(List<?> raw, int i) {
+      Object v = i < raw.size() ? raw.get(i) : null;
+      return v == null ? null : v.toString();
+    }
+  }
+
+  private record CachedRow(RowFingerprint fingerprint, ScannedArb arb) {}
+}
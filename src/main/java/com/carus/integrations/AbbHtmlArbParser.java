@@ -0,0 +1,462 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Разбор HTML страницы /arbs без браузера — для HTTP-режима сканера ({@link AbbHttpScanner}).
+ *
+ * Документ читается потоком по тегам; дерево строится только внутри строки вилки
+ * ({@code li.wrapper.arb.has-2-bets}) и выбрасывается, как только строка закрылась, так что память
+ * не зависит от размера страницы. Из строки берём то же и теми же селекторами, что
+ * {@link AbbArbReader} на живой странице, и получаем те же {@link ScannedArb}.
+ *
+ * Не HTML5-парсер: скрипты и комментарии пропускаются, незакрытые теги закрываются по ближайшему
+ * одноимённому предку. Для разметки ABB этого хватает; если разметка поменялась —
+ * {@link Result#listFound()} ложно и сканер возвращается в браузер.
+ */
+final class AbbHtmlArbParser {
+
+  private static final Set<String> VOID = Set.of(
+      "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "source", "track", "wbr");
+
+  // те же селекторы, что в AbbArbReader
+  private static final Sel ANY_ARB_LINK = Sel.of("a[href*=arb_hash=]");
+  private static final Sel PERCENT = Sel.of(".header .percent");
+  private static final Sel SPORT = Sel.of(".header .sport-name");
+  private static final Sel GAME_PERIOD = Sel.of(".header .arb-game-period span");
+  private static final Sel PERIOD_NAME = Sel.of(".header .period-name");
+  private static final Sel UPDATED_AT = Sel.of(".header .updated-at");
+  private static final Sel BET = Sel.of(".bet-wrapper");
+  private static final Sel BOOK = Sel.of(".bookmaker-name a");
+  private static final Sel DATE = Sel.of(".date");
+  private static final Sel EVENT = Sel.of(".event-name .name a");
+  private static final Sel LEAGUE = Sel.of(".event-name .league");
+  private static final Sel MARKET = Sel.of(".market a span");
+  private static final Sel ODD = Sel.of("a.coefficient-link");
+  private static final Sel BET_BUTTON = Sel.of(".bet-button a");
+  private static final Sel MARKET_LINK = Sel.of(".market a");
+  private static final Sel DEPTH = Sel.of(".market-dept");
+
+  private AbbHtmlArbParser() {}
+
+  /** @param listFound на странице есть контейнер #arbs-list — разметка та, что мы знаем */
+  record Result(boolean listFound, List<ScannedArb> arbs) {}
+
+  static Result parse(Reader in) throws IOException {
+    return new Scan(in).run();
+  }
+
+  // =========================
+  // Токенизатор
+  // =========================
+
+  private static final class Scan {
+    private final Reader in;
+    private final char[] buf = new char[16 * 1024];
+    private int pos;
+    private int len;
+
+    private final List<ScannedArb> arbs = new ArrayList<>();
+    private boolean listFound;
+    // открытые элементы внутри текущей строки; пусто — мы вне строки
+    private final List<Node> open = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder();
+
+    Scan(Reader in) {
+      this.in = in;
+    }
+
+    Result run() throws IOException {
+      int c;
+      while ((c = next()) >= 0) {
+        if (c != '<') {
+          if (!open.isEmpty()) text.append((char) c);
+          continue;
+        }
+        flushText();
+        String tag = readUntil('>');
+        if (tag == null) break;
+        if (tag.startsWith("!") || tag.startsWith("?")) {
+          // комментарий (уже дочитан в readUntil), doctype
+        } else if (tag.startsWith("/")) {
+          endTag(tag.substring(1).trim().toLowerCase(Locale.ROOT));
+        } else {
+          startTag(tag);
+        }
+      }
+      return new Result(listFound, arbs);
+    }
+
+    private void startTag(String raw) throws IOException {
+      boolean selfClosing = raw.endsWith("/");
+      if (selfClosing) raw = raw.substring(0, raw.length() - 1);
+      Node n = Node.of(raw);
+      if (n.tag.isEmpty()) return;
+
+      if ("script".equals(n.tag) || "style".equals(n.tag)) {
+        if (!selfClosing) skipPast("</" + n.tag);
+        readUntil('>');
+        return;
+      }
+      if (!listFound && "arbs-list".equals(n.attr("id"))) listFound = true;
+
+      if (open.isEmpty()) {
+        if (!listFound || !"li".equals(n.tag) || !n.hasClasses("wrapper", "arb", "has-2-bets")) return;
+      } else {
+        Node parent = open.get(open.size() - 1);
+        n.parent = parent;
+        parent.children.add(n);
+      }
+      if (!selfClosing && !VOID.contains(n.tag)) open.add(n);
+    }
+
+    private void endTag(String tag) {
+      for (int i = open.size() - 1; i >= 0; i--) {
+        if (!open.get(i).tag.equals(tag)) continue;
+        Node closed = open.get(i);
+        open.subList(i, open.size()).clear();
+        if (i == 0) arbs.add(toArb(closed));
+        return;
+      }
+    }
+
+    private void flushText() {
+      if (text.length() == 0) return;
+      open.get(open.size() - 1).children.add(decode(text));
+      text.setLength(0);
+    }
+
+    private int next() throws IOException {
+      if (pos == len) {
+        len = in.read(buf, 0, buf.length);
+        pos = 0;
+        if (len <= 0) {
+          len = 0;
+          return -1;
+        }
+      }
+      return buf[pos++];
+    }
+
+    /** Содержимое тега до {@code end}, с учётом кавычек в атрибутах. */
+    private String readUntil(char end) throws IOException {
+      StringBuilder sb = new StringBuilder(64);
+      char quote = 0;
+      int c;
+      while ((c = next()) >= 0) {
+        if (quote != 0) {
+          if (c == quote) quote = 0;
+        } else if (c == '"' || c == '\'') {
+          quote = (char) c;
+        } else if (c == end) {
+          return sb.toString();
+        }
+        sb.append((char) c);
+        // комментарий может содержать '>' и кавычки — дочитываем его отдельно
+        if (sb.length() == 3 && sb.charAt(0) == '!' && sb.charAt(1) == '-' && sb.charAt(2) == '-') {
+          skipPast("-->");
+          return "!--";
+        }
+      }
+      return null;
+    }
+
+    private void skipPast(String marker) throws IOException {
+      int matched = 0;
+      int c;
+      while ((c = next()) >= 0) {
+        matched = Character.toLowerCase(c) == marker.charAt(matched) ? matched + 1
+            : (Character.toLowerCase(c) == marker.charAt(0) ? 1 : 0);
+        if (matched == marker.length()) return;
+      }
+    }
+  }
+
+  // =========================
+  // Строка вилки -> ScannedArb
+  // =========================
+
+  private static ScannedArb toArb(Node row) {
+    Node percent = PERCENT.first(row);
+    String period = text(GAME_PERIOD.first(row));
+    if (period.isBlank()) period = text(PERIOD_NAME.first(row));
+
+    ArbHeader header = ArbHeader.parse(text(percent), percent == null ? null : percent.attr("class"),
+        text(SPORT.first(row)), period, text(UPDATED_AT.first(row)));
+
+    Node link = ANY_ARB_LINK.first(row);
+    String arbHash = AbbArbReader.arbHashFromHref(link == null ? null : link.attr("href"));
+
+    List<Node> betNodes = BET.all(row);
+    List<BetLine> bets = new ArrayList<>(Math.min(betNodes.size(), 3));
+    for (Node bet : betNodes) bets.add(toBet(bet));
+    return new ScannedArb(arbHash, header, bets);
+  }
+
+  private static BetLine toBet(Node bet) {
+    String href = attr(BET_BUTTON.first(bet), "href");
+    if (href == null || href.isBlank()) href = attr(ODD.first(bet), "href");
+    if (href == null || href.isBlank()) href = attr(MARKET_LINK.first(bet), "href");
+
+    Node depth = DEPTH.first(bet);
+    return BetLine.parse(
+        text(BOOK.first(bet)), text(DATE.first(bet)), text(EVENT.first(bet)), text(LEAGUE.first(bet)),
+        text(MARKET.first(bet)), text(ODD.first(bet)), depth == null ? null : text(depth),
+        AbbArbReader.toAbsAbbUrl(href));
+  }
+
+  private static String text(Node n) {
+    if (n == null) return "";
+    StringBuilder sb = new StringBuilder();
+    n.appendText(sb);
+    return sb.toString().trim();
+  }
+
+  private static String attr(Node n, String name) {
+    if (n == null) return null;
+    String v = n.attr(name);
+    return v == null ? null : v.trim();
+  }
+
+  // =========================
+  // Дерево строки и селекторы
+  // =========================
+
+  private static final class Node {
+    final String tag;
+    final List<String> attrs;       // имя, значение, имя, значение...
+    final List<Object> children = new ArrayList<>(4);   // Node или String
+    Node parent;
+
+    private Node(String tag, List<String> attrs) {
+      this.tag = tag;
+      this.attrs = attrs;
+    }
+
+    /** Разбор содержимого тега: {@code div class="a b" id=x}. */
+    static Node of(String raw) {
+      int i = 0;
+      int n = raw.length();
+      while (i < n && !Character.isWhitespace(raw.charAt(i))) i++;
+      String tag = raw.substring(0, i).toLowerCase(Locale.ROOT);
+      List<String> attrs = new ArrayList<>(4);
+
+      while (i < n) {
+        while (i < n && Character.isWhitespace(raw.charAt(i))) i++;
+        int ns = i;
+        while (i < n && raw.charAt(i) != '=' && !Character.isWhitespace(raw.charAt(i))) i++;
+        if (ns == i) {
+          i++;
+          continue;
+        }
+        String name = raw.substring(ns, i).toLowerCase(Locale.ROOT);
+        while (i < n && Character.isWhitespace(raw.charAt(i))) i++;
+        String value = "";
+        if (i < n && raw.charAt(i) == '=') {
+          i++;
+          while (i < n && Character.isWhitespace(raw.charAt(i))) i++;
+          if (i < n && (raw.charAt(i) == '"' || raw.charAt(i) == '\'')) {
+            char q = raw.charAt(i++);
+            int vs = i;
+            while (i < n && raw.charAt(i) != q) i++;
+            value = raw.substring(vs, i);
+            i++;
+          } else {
+            int vs = i;
+            while (i < n && !Character.isWhitespace(raw.charAt(i))) i++;
+            value = raw.substring(vs, i);
+          }
+        }
+        attrs.add(name);
+        attrs.add(decode(value));
+      }
+      return new Node(tag, attrs);
+    }
+
+    String attr(String name) {
+      for (int i = 0; i < attrs.size(); i += 2) {
+        if (attrs.get(i).equals(name)) return attrs.get(i + 1);
+      }
+      return null;
+    }
+
+    boolean hasClasses(String... required) {
+      String cls = attr("class");
+      if (cls == null) return required.length == 0;
+      for (String r : required) {
+        if (!hasClass(cls, r)) return false;
+      }
+      return true;
+    }
+
+    private static boolean hasClass(String cls, String name) {
+      int from = 0;
+      while ((from = cls.indexOf(name, from)) >= 0) {
+        int end = from + name.length();
+        boolean startOk = from == 0 || Character.isWhitespace(cls.charAt(from - 1));
+        boolean endOk = end == cls.length() || Character.isWhitespace(cls.charAt(end));
+        if (startOk && endOk) return true;
+        from = end;
+      }
+      return false;
+    }
+
+    void appendText(StringBuilder sb) {
+      for (Object c : children) {
+        if (c instanceof Node node) node.appendText(sb);
+        else sb.append((String) c);
+      }
+    }
+  }
+
+  /** Потомок-комбинатор из простых селекторов {@code tag.class[attr*=value]} — всё, что нужно ABB. */
+  private static final class Sel {
+    final Simple[] chain;
+
+    private Sel(Simple[] chain) {
+      this.chain = chain;
+    }
+
+    static Sel of(String selector) {
+      String[] parts = selector.trim().split("\\s+");
+      Simple[] chain = new Simple[parts.length];
+      for (int i = 0; i < parts.length; i++) chain[i] = Simple.of(parts[i]);
+      return new Sel(chain);
+    }
+
+    /** Первый подходящий потомок {@code root} в порядке документа. */
+    Node first(Node root) {
+      List<Node> out = new ArrayList<>(1);
+      collect(root, root, out, true);
+      return out.isEmpty() ? null : out.get(0);
+    }
+
+    List<Node> all(Node root) {
+      List<Node> out = new ArrayList<>();
+      collect(root, root, out, false);
+      return out;
+    }
+
+    private boolean collect(Node root, Node n, List<Node> out, boolean firstOnly) {
+      for (Object c : n.children) {
+        if (!(c instanceof Node child)) continue;
+        if (matches(root, child)) {
+          out.add(child);
+          if (firstOnly) return true;
+        }
+        if (collect(root, child, out, firstOnly)) return true;
+      }
+      return false;
+    }
+
+    private boolean matches(Node root, Node n) {
+      if (!chain[chain.length - 1].matches(n)) return false;
+      int k = chain.length - 2;
+      for (Node a = n.parent; k >= 0 && a != null; a = a == root ? null : a.parent) {
+        if (chain[k].matches(a)) k--;
+      }
+      return k < 0;
+    }
+  }
+
+  private record Simple(String tag, String[] classes, String attr, String contains) {
+
+    static Simple of(String s) {
+      String attr = null;
+      String contains = null;
+      int br = s.indexOf('[');
+      if (br >= 0) {
+        String inner = s.substring(br + 1, s.lastIndexOf(']'));
+        int op = inner.indexOf("*=");
+        attr = inner.substring(0, op);
+        contains = inner.substring(op + 2).replace("'", "").replace("\"", "");
+        s = s.substring(0, br);
+      }
+      String[] parts = s.split("\\.");
+      String tag = parts[0].isEmpty() ? null : parts[0];
+      String[] classes = new String[parts.length - 1];
+      System.arraycopy(parts, 1, classes, 0, classes.length);
+      return new Simple(tag, classes, attr, contains);
+    }
+
+    boolean matches(Node n) {
+      if (tag != null && !tag.equals(n.tag)) return false;
+      if (classes.length > 0 && !n.hasClasses(classes)) return false;
+      if (attr != null) {
+        String v = n.attr(attr);
+        return v != null && v.contains(contains);
+      }
+      return true;
+    }
+  }
+
+  // =========================
+  // Сущности
+  // =========================
+
+  static String decode(CharSequence s) {
+    int amp = indexOf(s, '&');
+    if (amp < 0) return s.toString();
+    StringBuilder sb = new StringBuilder(s.length());
+    sb.append(s, 0, amp);
+    for (int i = amp; i < s.length(); i++) {
+      char c = s.charAt(i);
+      int semi;
+      if (c != '&' || (semi = indexOf(s, ';', i + 1, i + 10)) < 0) {
+        sb.append(c);
+        continue;
+      }
+      String name = s.subSequence(i + 1, semi).toString();
+      String repl = switch (name) {
+        case "amp" -> "&";
+        case "lt" -> "<";
+        case "gt" -> ">";
+        case "quot" -> "\"";
+        case "apos" -> "'";
+        case "nbsp" -> "\u00a0";
+        case "ndash" -> "\u2013";
+        case "mdash" -> "\u2014";
+        case "minus" -> "\u2212";
+        case "hellip" -> "\u2026";
+        case "laquo" -> "\u00ab";
+        case "raquo" -> "\u00bb";
+        default -> numeric(name);
+      };
+      if (repl == null) {
+        sb.append(c);
+        continue;
+      }
+      sb.append(repl);
+      i = semi;
+    }
+    return sb.toString();
+  }
+
+  private static String numeric(String name) {
+    if (!name.startsWith("#") || name.length() < 2) return null;
+    try {
+      int cp = name.charAt(1) == 'x' || name.charAt(1) == 'X'
+          ? Integer.parseInt(name.substring(2), 16)
+          : Integer.parseInt(name.substring(1));
+      return new String(Character.toChars(cp));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static int indexOf(CharSequence s, char c) {
+    return indexOf(s, c, 0, s.length());
+  }
+
+  private static int indexOf(CharSequence s, char c, int from, int to) {
+    for (int i = from; i < Math.min(to, s.length()); i++) {
+      if (s.charAt(i) == c) return i;
+    }
+    return -1;
+  }
+}
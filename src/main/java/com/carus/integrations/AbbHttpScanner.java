@@ -0,0 +1,147 @@
+package com.carus.integrations;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP-режим сканера ABB: страницы фильтров читаются обычным HTTP-клиентом с cookies из
+ * session.json и разбираются {@link AbbHtmlArbParser}, Chromium доску не рендерит.
+ *
+ * Все шарды запрашиваются параллельно по одному пулу соединений. Если ABB отправил на логин,
+ * ответил не 200 или разметка не та — {@link Fallback}: сканер возвращается в браузер
+ * (там же перелогин и свежий session.json) и пробует HTTP снова через {@code abb.http-scan.retry-after}.
+ *
+ * Экземпляр на одну сессию; зовёт только поток сканера.
+ */
+final class AbbHttpScanner {
+
+  /** HTTP-режим не справился, доску читает браузер. */
+  static final class Fallback extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Fallback(String reason) {
+      super(reason);
+    }
+  }
+
+  private final AbbProperties.HttpScan props;
+  private final String userAgent;
+  private final HttpClient http;
+
+  private volatile long lastBytes;
+
+  AbbHttpScanner(AbbProperties.HttpScan props, Path storageState, String userAgent) throws IOException {
+    this.props = props;
+    this.userAgent = userAgent;
+    CookieManager cookies = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
+    BrowserCookies.seed(cookies.getCookieStore(), BrowserCookies.fromStorageState(storageState));
+    this.http = HttpClient.newBuilder()
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .connectTimeout(props.getRequestTimeout())
+        .cookieHandler(cookies)
+        .build();
+  }
+
+  /**
+   * Один проход по всем фильтрам; порядок результатов — порядок шардов.
+   * pause/restart на канале сканера отменяют запросы в полёте ({@link WorkerControlService.Preempted}).
+   */
+  List<ShardCoverage.ShardScan> scan(List<AbbProperties.Shard> shards, WorkerControlService.Channel ch)
+      throws InterruptedException {
+    long t0 = System.nanoTime();
+    List<CompletableFuture<ShardCoverage.ShardScan>> pending = new ArrayList<>(shards.size());
+    for (AbbProperties.Shard shard : shards) {
+      HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(AbbArbReader.toAbsAbbUrl(shard.getPath())))
+          .timeout(props.getRequestTimeout())
+          .header("Accept", "text/html,application/xhtml+xml,*/*;q=0.8")
+          .header("Accept-Encoding", "gzip")
+          .GET();
+      if (userAgent != null) req.header("User-Agent", userAgent);
+
+      // разбор на потоке клиента: шарды парсятся параллельно, как и качаются
+      pending.add(http.sendAsync(req.build(), HttpResponse.BodyHandlers.ofInputStream())
+          .thenApply(resp -> read(shard, resp, t0)));
+    }
+
+    List<ShardCoverage.ShardScan> out = new ArrayList<>(pending.size());
+    try {
+      for (CompletableFuture<ShardCoverage.ShardScan> f : pending) {
+        out.add(ch.await(f, props.getRequestTimeout().toMillis() * 2));
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Fallback fb) throw fb;
+      throw new Fallback(String.valueOf(cause));
+    } catch (TimeoutException e) {
+      throw new Fallback("timed out after " + props.getRequestTimeout().toSeconds() * 2 + "s");
+    } finally {
+      // ошибка, таймаут или команда: недокачанные шарды не нужны
+      pending.forEach(p -> p.cancel(true));
+    }
+    return out;
+  }
+
+  private ShardCoverage.ShardScan read(AbbProperties.Shard shard, HttpResponse<InputStream> resp, long t0) {
+    try (InputStream raw = resp.body()) {
+      int code = resp.statusCode();
+      if (code >= 300 && code < 400) {
+        String location = resp.headers().firstValue("Location").orElse("");
+        throw new Fallback(location.contains("/users/sign_in") ? "session expired" : "redirect to " + location);
+      }
+      if (code != 200) throw new Fallback("HTTP " + code + " on " + shard.getName());
+
+      CountingInputStream counted = new CountingInputStream(raw);
+      InputStream body = resp.headers().firstValue("Content-Encoding").orElse("").contains("gzip")
+          ? new GZIPInputStream(counted) : counted;
+      AbbHtmlArbParser.Result r = AbbHtmlArbParser.parse(new InputStreamReader(body, StandardCharsets.UTF_8));
+      lastBytes = counted.count;
+      if (!r.listFound()) throw new Fallback("unexpected page on " + shard.getName() + " (no #arbs-list)");
+      return new ShardCoverage.ShardScan(shard.getName(), r.arbs(), (System.nanoTime() - t0) / 1_000_000);
+    } catch (IOException e) {
+      throw new Fallback("read failed on " + shard.getName() + ": " + e);
+    }
+  }
+
+  /** Размер последней страницы по сети, байт (для /status). */
+  long lastBytes() {
+    return lastBytes;
+  }
+
+  private static final class CountingInputStream extends FilterInputStream {
+    volatile long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) count++;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) count += n;
+      return n;
+    }
+  }
+}
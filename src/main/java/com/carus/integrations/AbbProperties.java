@@ -0,0 +1,126 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "abb")
+public class AbbProperties {
+
+  private String email;
+  private String password;
+
+  /**
+   * Пул аккаунтов, см. {@link AbbAccountPool}: у каждого свой контекст, свой session-файл и свой сканер.
+   * Пусто — один аккаунт из email/password, как раньше.
+   */
+  private List<Account> accounts = new ArrayList<>();
+
+  /** Первое остывание аккаунта после 429 или выкидывания на логин; дальше удваивается. */
+  private Duration throttleCooldown = Duration.ofMinutes(2);
+
+  /** Предел остывания. */
+  private Duration maxThrottleCooldown = Duration.ofMinutes(30);
+
+  /**
+   * Вкладки с разными фильтрами ABB, сканируются параллельно.
+   * ABB рисует ограниченное число вилок на список — шарды добирают то, что не влезло в один.
+   * Первый шард открывается на основной вкладке (там же логин), остальные — каждый в своём контексте.
+   */
+  private List<Shard> shards = new ArrayList<>(List.of(new Shard("all", "/arbs")));
+
+  /** Адаптивный интервал между сканами, см. {@link AdaptiveScanScheduler}. */
+  private Scan scan = new Scan();
+
+  /** Упреждающий резолв ссылок букмекеров, см. {@link PreResolver}. */
+  private PreResolve preresolve = new PreResolve();
+
+  /** Резолв bet-ссылок обычным HTTP с cookies браузера, см. {@link HttpLinkResolver}. */
+  private HttpResolve httpResolve = new HttpResolve();
+
+  /** Чтение доски обычным HTTP без рендера, см. {@link AbbHttpScanner}. */
+  private HttpScan httpScan = new HttpScan();
+
+  @Data
+  public static class Scan {
+    /** Самый частый скан, когда доска активно меняется. */
+    private Duration minInterval = Duration.ofSeconds(1);
+    /** Самый редкий скан, когда на доске тишина. */
+    private Duration maxInterval = Duration.ofSeconds(15);
+    /** С чего стартуем после логина. */
+    private Duration initialInterval = Duration.ofSeconds(5);
+    /** Доля времени, которую сканер может проводить в самом скане (0..1). */
+    private double cpuBudget = 0.5;
+  }
+
+  @Data
+  public static class PreResolve {
+    /** Отдельная вкладка резолвит ссылки с доски заранее, пока сканер ждёт. */
+    private boolean enabled = true;
+    /** Не больше стольких упреждающих навигаций в минуту. */
+    private int budgetPerMinute = 20;
+    /** Сколько живёт зарезолвленная ссылка в кэше. */
+    private Duration ttl = Duration.ofMinutes(10);
+    /** Предел очереди кандидатов (и, x4, кэша). */
+    private int maxCandidates = 2000;
+    /** Брать ссылку на событие у букмекера из резолва другого рынка того же события. */
+    private boolean eventLevel = true;
+  }
+
+  @Data
+  public static class HttpResolve {
+    /** Сначала HTTP, браузерная вкладка — только для ссылок, которые так не разобрались. */
+    private boolean enabled = true;
+    /** Таймаут одного шага цепочки (соединение и ответ). */
+    private Duration hopTimeout = Duration.ofSeconds(3);
+    /** Больше шагов — цепочка не наша, отдаём браузеру. */
+    private int maxHops = 8;
+    /** Как часто перечитывать cookies из контекста вкладки. */
+    private Duration identityRefresh = Duration.ofMinutes(5);
+  }
+
+  @Data
+  public static class HttpScan {
+    /** Доску читает HTTP-клиент, страница ABB в браузере не открыта; браузер — запасной путь. */
+    private boolean enabled = false;
+    /** Таймаут запроса страницы фильтра. */
+    private Duration requestTimeout = Duration.ofSeconds(10);
+    /** После отката в браузер — через сколько снова пробовать HTTP. */
+    private Duration retryAfter = Duration.ofMinutes(10);
+  }
+
+  @Data
+  public static class Account {
+    /** Имя для логов, команд бота и session-файла: сканер {@code abb-name} (первый аккаунт — просто "abb"). */
+    private String name;
+    private String email;
+    private String password;
+
+    public Account() {}
+
+    public Account(String name, String email, String password) {
+      this.name = name;
+      this.email = email;
+      this.password = password;
+    }
+  }
+
+  @Data
+  public static class Shard {
+    /** Имя для логов и /status, например "live", "prematch-football". */
+    private String name;
+    /** Путь на allbestbets.com с фильтром, например "/arbs?filter_id=123" (сохранённый фильтр ABB). */
+    private String path;
+
+    public Shard() {}
+
+    public Shard(String name, String path) {
+      this.name = name;
+      this.path = path;
+    }
+  }
+}
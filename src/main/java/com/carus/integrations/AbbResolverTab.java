@@ -0,0 +1,214 @@
+package com.carus.integrations;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.PlaywrightException;
+import com.microsoft.playwright.options.Cookie;
+import com.microsoft.playwright.options.WaitUntilState;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Вкладка для резолва ABB bet-ссылок в ссылки букмекеров (тихо, без ухода на букмекера).
+ *
+ * Резолв зовут потоки конвейера, а Playwright однопоточный, поэтому у вкладки свой поток,
+ * свой драйвер и свой контекст в общем Chromium; {@link #resolve} только ставит задачу в очередь этого потока.
+ */
+@Slf4j
+final class AbbResolverTab implements ExternalUrlResolver, AutoCloseable {
+
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+  private final Duration resolveTimeout;
+  private final ExecutorService thread;
+
+  // Универсальный capture: поймали внешний document URL -> сюда
+  private final AtomicReference<String> externalCapture = new AtomicReference<>();
+
+  // вкладку закрывают (пауза, рестарт): резолвы в очереди и в ожидании редиректа сразу отдают null
+  private volatile boolean closing;
+
+  // живут только на thread
+  private BrowserPool.Session session;
+  private Page resolverPage;
+
+  AbbResolverTab(String scannerName, Duration resolveTimeout) {
+    this.resolveTimeout = resolveTimeout;
+    this.thread = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "scanner-" + scannerName + "-resolver");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  void open(BrowserPool pool, String sessionOwner, Path storageState, String bcGameCookies)
+      throws InterruptedException {
+    Future<?> f = thread.submit(() -> {
+      session = pool.openSession(sessionOwner + "/resolver", storageState);
+      resolverPage = session.context().newPage();
+
+      if (bcGameCookies != null && !bcGameCookies.isBlank()) {
+        List<Cookie> cookies = parseCookieString(bcGameCookies, "bc.game");
+        session.context().addCookies(cookies);
+        log.info("[bc.game] Loaded {} session cookies", cookies.size());
+      }
+
+      // Универсальный перехват: как только resolverPage уходит на внешний document — сохраняем и abort
+      resolverPage.route("**/*", route -> {
+        String url = route.request().url();
+        String type = route.request().resourceType();
+
+        if ("document".equals(type)) {
+          if (url != null && !isAbbUrl(url)) {
+            log.debug("[resolver] document redirect -> {}", url);
+            externalCapture.compareAndSet(null, url);
+            route.abort();
+            return;
+          }
+        }
+
+        if ("image".equals(type) || "font".equals(type) || "media".equals(type)) {
+          route.abort();
+          return;
+        }
+
+        route.resume();
+      });
+
+      resolverPage.setDefaultTimeout(resolveTimeout.toMillis());
+      resolverPage.setDefaultNavigationTimeout(resolveTimeout.toMillis());
+    });
+    try {
+      f.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException re) throw re;
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /** Потокобезопасно: резолвы выстраиваются в очередь потока вкладки. */
+  @Override
+  public String resolve(String abbBetUrl) {
+    if (abbBetUrl == null || abbBetUrl.isBlank()) return null;
+
+    Future<String> f;
+    try {
+      f = thread.submit(() -> resolveOnTab(abbBetUrl));
+    } catch (RejectedExecutionException e) {
+      return null; // вкладку уже закрыли (рестарт сканера)
+    }
+
+    try {
+      // + запас на ожидание в очереди за другими резолвами
+      return f.get(resolveTimeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      f.cancel(true);
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException | TimeoutException e) {
+      f.cancel(true);
+      log.warn("[resolver] failed for {}: {}", abbBetUrl, e.toString());
+      return null;
+    }
+  }
+
+  /** Cookies и User-Agent контекста вкладки — для {@link HttpLinkResolver}. */
+  record Identity(String userAgent, List<Cookie> cookies) {}
+
+  /** Снимок cookies контекста; ждёт в очереди потока вкладки наравне с резолвами. */
+  Identity identity() throws InterruptedException {
+    Future<Identity> f;
+    try {
+      f = thread.submit(() -> resolverPage == null ? null
+          : new Identity((String) resolverPage.evaluate("() => navigator.userAgent"), session.context().cookies()));
+    } catch (RejectedExecutionException e) {
+      return null;
+    }
+    try {
+      return f.get(resolveTimeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      f.cancel(true);
+      log.warn("[resolver] cookie export failed: {}", e.toString());
+      return null;
+    }
+  }
+
+  private String resolveOnTab(String abbBetUrl) {
+    if (resolverPage == null || closing) return null;
+
+    externalCapture.set(null);
+    log.debug("[resolver] navigating to ABB url: {}", abbBetUrl);
+
+    try {
+      resolverPage.navigate(
+          abbBetUrl,
+          new Page.NavigateOptions()
+              .setWaitUntil(WaitUntilState.DOMCONTENTLOADED)
+              .setTimeout(resolveTimeout.toMillis())
+      );
+    } catch (PlaywrightException ignored) {}
+
+    long end = System.currentTimeMillis() + resolveTimeout.toMillis();
+    while (!closing && System.currentTimeMillis() < end) {
+      String got = externalCapture.get();
+      if (got != null && !got.isBlank()) return got;
+      try { resolverPage.waitForTimeout(100); } catch (Exception ignored) {}
+    }
+
+    return externalCapture.get();
+  }
+
+  @Override
+  public void close() {
+    closing = true;
+    try {
+      thread.submit(() -> {
+        if (session != null) session.close();
+        session = null;
+        resolverPage = null;
+      });
+    } catch (RejectedExecutionException ignored) {}
+    thread.shutdown();
+    try {
+      if (!thread.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+        thread.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      thread.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Парсит строку вида "name1=val1; name2=val2" в список Playwright Cookie для домена. */
+  private static List<Cookie> parseCookieString(String raw, String domain) {
+    List<Cookie> result = new ArrayList<>();
+    for (String part : raw.split(";")) {
+      String trimmed = part.trim();
+      if (trimmed.isEmpty()) continue;
+      int eq = trimmed.indexOf('=');
+      if (eq < 0) continue;
+      String name = trimmed.substring(0, eq).trim();
+      String value = trimmed.substring(eq + 1).trim();
+      result.add(new Cookie(name, value).setDomain(domain).setPath("/"));
+    }
+    return result;
+  }
+
+  private static boolean isAbbUrl(String url) {
+    if (url == null) return false;
+    String u = url.toLowerCase();
+    return u.contains("allbestbets.com");
+  }
+}
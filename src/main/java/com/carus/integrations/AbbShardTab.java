@@ -0,0 +1,106 @@
+package com.carus.integrations;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.options.WaitUntilState;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Дополнительная вкладка ABB со своим фильтром.
+ *
+ * Playwright не потокобезопасен, поэтому у вкладки свой поток, свой драйвер и свой контекст
+ * в общем Chromium (cookies берутся из session.json). Все вызовы Playwright идут только через {@link #thread}.
+ */
+@Slf4j
+final class AbbShardTab implements AutoCloseable {
+
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+  private final AbbProperties.Shard shard;
+  private final AbbArbReader reader;
+  private final ExecutorService thread;
+
+  // живут только на thread
+  private BrowserPool.Session session;
+  private Page page;
+
+  AbbShardTab(String scannerName, AbbProperties.Shard shard) {
+    this.shard = shard;
+    this.reader = new AbbArbReader();
+    this.thread = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "scanner-" + scannerName + "-" + shard.getName());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  String name() {
+    return shard.getName();
+  }
+
+  /** Открывает контекст и вкладку на фильтре шарда. Блокирует до готовности. */
+  void open(BrowserPool pool, String sessionOwner, Path storageState, Duration navTimeout)
+      throws InterruptedException {
+    await(thread.submit(() -> {
+      session = pool.openSession(sessionOwner + "/" + shard.getName(), storageState);
+      page = session.context().newPage();
+      page.setDefaultTimeout(navTimeout.toMillis());
+      page.navigate(
+          AbbArbReader.toAbsAbbUrl(shard.getPath()),
+          new Page.NavigateOptions()
+              .setWaitUntil(WaitUntilState.DOMCONTENTLOADED)
+              .setTimeout(navTimeout.toMillis())
+      );
+      if (page.url().contains("/users/sign_in")) {
+        throw new IllegalStateException("shard " + shard.getName() + ": ABB session rejected");
+      }
+      log.info("[shard {}] opened {}", shard.getName(), page.url());
+      return null;
+    }));
+  }
+
+  /** Запускает скан на потоке вкладки, не дожидаясь результата. */
+  Future<ShardCoverage.ShardScan> scanAsync() {
+    return thread.submit(() -> {
+      long t0 = System.nanoTime();
+      List<ScannedArb> arbs = reader.readAll(page);
+      return new ShardCoverage.ShardScan(shard.getName(), arbs, (System.nanoTime() - t0) / 1_000_000);
+    });
+  }
+
+  @Override
+  public void close() {
+    thread.submit(() -> {
+      if (session != null) session.close();
+      session = null;
+      page = null;
+    });
+    thread.shutdown();
+    try {
+      if (!thread.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+        thread.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      thread.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static <T> T await(Future<T> f) throws InterruptedException {
+    try {
+      return f.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException re) throw re;
+      throw new IllegalStateException(cause);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+
+/**
+ * Пауза между сканами по активности доски.
+ *
+ * Нашли новые/обновлённые вилки — интервал делим пополам (быстро догоняем движение),
+ * доска стоит — растягиваем на 25% до max. Снизу интервал ограничен min и CPU-бюджетом:
+ * доля времени, которую сканер проводит в самом скане, не больше cpuBudget.
+ *
+ * Считает только поток сканера; {@link #currentIntervalMs()} и {@link #scansPerMinute()} читает /status.
+ */
+final class AdaptiveScanScheduler {
+
+  private static final double SPEED_UP = 0.5;
+  private static final double BACK_OFF = 1.25;
+  private static final long WINDOW_MS = 60_000;
+
+  private final long minMs;
+  private final long maxMs;
+  private final double cpuBudget;
+
+  private volatile long intervalMs;
+
+  // время последних сканов для scans/min; кольцо на минуту при самом частом min
+  private final long[] scanTimes;
+  private int head;
+
+  AdaptiveScanScheduler(Duration min, Duration max, Duration initial, double cpuBudget) {
+    this.minMs = Math.max(1, min.toMillis());
+    this.maxMs = Math.max(minMs, max.toMillis());
+    this.cpuBudget = Math.min(1.0, Math.max(0.05, cpuBudget));
+    this.intervalMs = clamp(initial.toMillis());
+    this.scanTimes = new long[(int) Math.min(10_000, WINDOW_MS / minMs + 1)];
+  }
+
+  /**
+   * @param changed   сколько вилок в этом скане новые или обновились
+   * @param scanMs    сколько занял сам скан (без отправок)
+   * @return сколько ждать до следующего скана
+   */
+  long nextDelayMs(int changed, long scanMs) {
+    recordScan(System.currentTimeMillis());
+
+    double next = changed > 0 ? intervalMs * SPEED_UP : intervalMs * BACK_OFF;
+
+    // scanMs / (scanMs + delay) <= cpuBudget
+    long budgetFloor = (long) Math.ceil(scanMs * (1.0 - cpuBudget) / cpuBudget);
+
+    intervalMs = clamp(Math.max((long) next, budgetFloor));
+    return intervalMs;
+  }
+
+  long currentIntervalMs() {
+    return intervalMs;
+  }
+
+  synchronized int scansPerMinute() {
+    long cutoff = System.currentTimeMillis() - WINDOW_MS;
+    int n = 0;
+    for (long t : scanTimes) {
+      if (t > cutoff) n++;
+    }
+    return n;
+  }
+
+  private synchronized void recordScan(long now) {
+    scanTimes[head] = now;
+    head = (head + 1) % scanTimes.length;
+  }
+
+  private long clamp(long v) {
+    return Math.max(minMs, Math.min(maxMs, v));
+  }
+}
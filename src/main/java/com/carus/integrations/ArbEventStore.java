@@ -0,0 +1,463 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * История вилок: каждое появление, обновление, исчезновение, отправка в TG и ответ экзекьютора.
+ *
+ * Хранение — append-only колонки фиксированной ширины в memory-mapped файлах:
+ * {@code <dir>/<yyyy-MM-dd UTC>/seg-NNN/<column>.col}, число строк — в {@code rows.meta}.
+ * Данные лежат вне heap'а (page cache), поэтому месяцы истории не раздувают кучу;
+ * скан читает только нужные колонки.
+ *
+ * Запись не блокирует вызывающего: событие кладётся в {@link RingBuffer}, на диск его пишет
+ * отдельный поток; при переполнении событие отбрасывается и считается в drops.
+ */
+@Component
+@Slf4j
+public class ArbEventStore {
+
+  // типы событий
+  public static final byte SEEN = 1;
+  public static final byte UPDATED = 2;
+  public static final byte GONE = 3;
+  public static final byte SENT = 4;
+  public static final byte EXECUTED = 5;
+
+  private static final String[] TYPE_NAMES = {"?", "seen", "updated", "gone", "sent", "executed"};
+
+  private static final int QUEUE_CAPACITY = 1 << 16;
+  private static final int ROWS_PER_SEGMENT = 1 << 20;
+  private static final Duration FORCE_EVERY = Duration.ofSeconds(10);
+  // writer спит, пока record() его не разбудит; дольше этого не спит — fsync раз в FORCE_EVERY
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final String BOOKS_FILE = "books.dict";
+  private static final String ROWS_FILE = "rows.meta";
+
+  // счётчик строк пишется с release, читается с acquire — читатель не увидит строку раньше её колонок
+  private static final VarHandle ROWS_VIEW =
+      MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+  /** Колонки и их ширина в байтах. */
+  enum Column {
+    TS(8), TYPE(1), HASH(8), PERCENT(4), BOOK1(2), BOOK2(2), ODD1(4), ODD2(4), STATUS(2);
+
+    final int width;
+
+    Column(int width) {
+      this.width = width;
+    }
+
+    String file() {
+      return name().toLowerCase() + ".col";
+    }
+  }
+
+  private final Path dir;
+  private final RingBuffer<Event> queue = new RingBuffer<>(QUEUE_CAPACITY);
+
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong drops = new AtomicLong();
+
+  // словарь букмекеров: id = индекс; пишет только writer, читают все
+  private final List<String> books = new CopyOnWriteArrayList<>();
+  private final Map<String, Short> bookIds = new HashMap<>();
+
+  // живут только на writer
+  private Segment current;
+  private long lastForceMs;
+
+  private Thread writer;
+  private final Parking writerIdle = new Parking(MAX_PARK_NANOS);
+  private volatile boolean running;
+
+  public ArbEventStore(@Value("${events.dir:/app/events}") String dir) {
+    this.dir = Path.of(dir);
+  }
+
+  @PostConstruct
+  public void start() {
+    try {
+      Files.createDirectories(dir);
+      Path dict = dir.resolve(BOOKS_FILE);
+      if (Files.exists(dict)) {
+        for (String b : Files.readAllLines(dict, StandardCharsets.UTF_8)) {
+          bookIds.put(b, (short) books.size());
+          books.add(b);
+        }
+      }
+    } catch (IOException e) {
+      log.warn("[events] store disabled, cannot open {}: {}", dir, e.toString());
+      return;
+    }
+
+    running = true;
+    writer = new Thread(this::writeLoop, "arb-events-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    writerIdle.wakeAll();
+    if (writer != null) {
+      try { writer.join(5_000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+  }
+
+  // =========================
+  // Запись (из любых потоков, не блокирует)
+  // =========================
+
+  /** Появилась / обновилась вилка на доске. */
+  void arbObserved(byte type, ScannedArb arb) {
+    record(type, arb.arbHash(), arb.header(), arb.bets(), 0);
+  }
+
+  /** Вилка пропала с доски. */
+  void arbGone(String arbHash) {
+    record(GONE, arbHash, null, null, 0);
+  }
+
+  void arbSent(String arbHash, ArbHeader header, List<BetLine> bets) {
+    record(SENT, arbHash, header, bets, 0);
+  }
+
+  /** @param status HTTP-код ответа экзекьютора, 0 — ошибка транспорта */
+  void executorOutcome(String arbHash, int status) {
+    record(EXECUTED, arbHash, null, null, status);
+  }
+
+  private void record(byte type, String arbHash, ArbHeader header, List<BetLine> bets, int status) {
+    if (!running || arbHash == null) return;
+    BetLine b1 = bets != null && bets.size() > 0 ? bets.get(0) : null;
+    BetLine b2 = bets != null && bets.size() > 1 ? bets.get(1) : null;
+    Event e = new Event(System.currentTimeMillis(), type, hash64(arbHash),
+        scaled(header == null ? Double.NaN : header.percent(), 100),
+        b1 == null ? null : b1.book().name(), b2 == null ? null : b2.book().name(),
+        scaled(b1 == null ? Double.NaN : b1.odd(), 1000), scaled(b2 == null ? Double.NaN : b2.odd(), 1000),
+        (short) status);
+    if (queue.offer(e)) {
+      writerIdle.wakeOne();
+    } else {
+      drops.incrementAndGet();
+    }
+  }
+
+  // =========================
+  // Writer
+  // =========================
+
+  private void writeLoop() {
+    int idle = 0;
+    while (running || queue.size() > 0) {
+      Event e = queue.poll();
+      if (e == null) {
+        writerIdle.idle(++idle, () -> queue.size() > 0 || !running);
+        maybeForce();
+        continue;
+      }
+      idle = 0;
+      try {
+        append(e);
+        written.incrementAndGet();
+      } catch (IOException ex) {
+        drops.incrementAndGet();
+        log.warn("[events] write failed: {}", ex.toString());
+      }
+    }
+    if (current != null) current.close();
+  }
+
+  private void append(Event e) throws IOException {
+    LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(e.ts), ZoneOffset.UTC);
+    if (current == null || !current.day.equals(day) || current.rows() >= ROWS_PER_SEGMENT) {
+      if (current != null) current.close();
+      current = Segment.openForAppend(dayDir(day), day);
+    }
+    current.append(e.ts, e.type, e.hash, e.percent, bookId(e.book1), bookId(e.book2), e.odd1, e.odd2, e.status);
+  }
+
+  private short bookId(String book) throws IOException {
+    if (book == null || book.isBlank()) return -1;
+    String key = book.trim().toLowerCase();
+    Short id = bookIds.get(key);
+    if (id != null) return id;
+    if (books.size() >= Short.MAX_VALUE) return -1;
+
+    Files.writeString(dir.resolve(BOOKS_FILE), key + "\n", StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    short newId = (short) books.size();
+    bookIds.put(key, newId);
+    books.add(key);
+    return newId;
+  }
+
+  private void maybeForce() {
+    long now = System.currentTimeMillis();
+    if (current == null || now - lastForceMs < FORCE_EVERY.toMillis()) return;
+    lastForceMs = now;
+    current.force();
+  }
+
+  // =========================
+  // Чтение
+  // =========================
+
+  /**
+   * Проходит все строки за дни [from, to] (UTC) по порядку записи.
+   * {@link Row} переиспользуется между вызовами — не сохранять.
+   */
+  public void scan(LocalDate from, LocalDate to, RowVisitor visitor) throws IOException {
+    Row row = new Row();
+    for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+      Path dayDir = dayDir(d);
+      if (!Files.isDirectory(dayDir)) continue;
+      for (Path segDir : segmentDirs(dayDir)) {
+        Segment seg = Segment.openForRead(segDir, d);
+        if (seg == null) continue;
+        row.seg = seg;
+        int n = seg.rows();
+        for (int i = 0; i < n; i++) {
+          row.index = i;
+          visitor.visit(row);
+        }
+      }
+    }
+  }
+
+  /**
+   * Средняя жизнь вилки (первое появление -> исчезновение) по паре букмекеров.
+   * Вилки, не исчезнувшие внутри периода, не учитываются.
+   */
+  public Map<String, Lifetime> avgLifetimeByBookPair(LocalDate from, LocalDate to) throws IOException {
+    Map<Long, long[]> firstSeen = new HashMap<>(); // hash -> [ts, book1, book2]
+    Map<String, long[]> acc = new TreeMap<>();      // pair -> [count, sumMs]
+    scan(from, to, r -> {
+      if (r.type() == SEEN) {
+        firstSeen.putIfAbsent(r.hash(), new long[]{r.ts(), r.book1Id(), r.book2Id()});
+      } else if (r.type() == GONE) {
+        long[] s = firstSeen.remove(r.hash());
+        if (s == null) return;
+        long[] a = acc.computeIfAbsent(pairName((short) s[1], (short) s[2]), k -> new long[2]);
+        a[0]++;
+        a[1] += r.ts() - s[0];
+      }
+    });
+    Map<String, Lifetime> out = new LinkedHashMap<>();
+    acc.forEach((pair, a) -> out.put(pair, new Lifetime(a[0], a[1] / a[0])));
+    return out;
+  }
+
+  /**
+   * Распределение процента вилок при первом появлении: корзины по 0.5%, последняя — всё от 10%.
+   *
+   * @return [bucket] -> число вилок; bucket i = [i*0.5%, (i+1)*0.5%)
+   */
+  public long[] percentDistribution(LocalDate from, LocalDate to) throws IOException {
+    long[] buckets = new long[21];
+    scan(from, to, r -> {
+      if (r.type() != SEEN || r.percentBp() < 0) return;
+      buckets[Math.min(buckets.length - 1, r.percentBp() / 50)]++;
+    });
+    return buckets;
+  }
+
+  public String status() {
+    if (!running) return "events: off";
+    return "events: written=" + written.get() + " queued=" + queue.size() + " drops=" + drops.get()
+        + " books=" + books.size() + " files=" + (diskBytes() >> 20) + "MB";
+  }
+
+  private long diskBytes() {
+    try (var files = Files.walk(dir)) {
+      return files.filter(Files::isRegularFile).mapToLong(p -> {
+        try { return Files.size(p); } catch (IOException e) { return 0; }
+      }).sum();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  String bookName(short id) {
+    return id >= 0 && id < books.size() ? books.get(id) : "?";
+  }
+
+  private String pairName(short b1, short b2) {
+    String a = bookName(b1);
+    String b = bookName(b2);
+    return a.compareTo(b) <= 0 ? a + "/" + b : b + "/" + a;
+  }
+
+  static String typeName(byte type) {
+    return type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : "?";
+  }
+
+  private Path dayDir(LocalDate day) {
+    return dir.resolve(day.toString());
+  }
+
+  private static List<Path> segmentDirs(Path dayDir) throws IOException {
+    List<Path> out = new ArrayList<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dayDir, "seg-*")) {
+      ds.forEach(out::add);
+    }
+    out.sort(null);
+    return out;
+  }
+
+  /** FNV-1a 64: arb_hash в колонку фиксированной ширины. */
+  static long hash64(String s) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      h ^= s.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  private static int scaled(double v, int scale) {
+    return Double.isNaN(v) ? -1 : (int) Math.round(v * scale);
+  }
+
+  @FunctionalInterface
+  public interface RowVisitor {
+    void visit(Row row);
+  }
+
+  public record Lifetime(long arbs, long avgMs) {}
+
+  /** Курсор по строке сегмента; читает прямо из mapped-колонок. */
+  public final class Row {
+    private Segment seg;
+    private int index;
+
+    public long ts() { return seg.col(Column.TS).getLong(index * 8); }
+    public byte type() { return seg.col(Column.TYPE).get(index); }
+    public long hash() { return seg.col(Column.HASH).getLong(index * 8); }
+    /** Процент * 100, -1 если нет. */
+    public int percentBp() { return seg.col(Column.PERCENT).getInt(index * 4); }
+    public short book1Id() { return seg.col(Column.BOOK1).getShort(index * 2); }
+    public short book2Id() { return seg.col(Column.BOOK2).getShort(index * 2); }
+    public String book1() { return bookName(book1Id()); }
+    public String book2() { return bookName(book2Id()); }
+    /** Коэффициент * 1000, -1 если нет. */
+    public int odd1() { return seg.col(Column.ODD1).getInt(index * 4); }
+    public int odd2() { return seg.col(Column.ODD2).getInt(index * 4); }
+    public short status() { return seg.col(Column.STATUS).getShort(index * 2); }
+  }
+
+  private record Event(long ts, byte type, long hash, int percent,
+                       String book1, String book2, int odd1, int odd2, short status) {}
+
+  /** Один сегмент: по mapped-файлу на колонку + счётчик строк. */
+  private static final class Segment {
+    final LocalDate day;
+    private final MappedByteBuffer[] cols = new MappedByteBuffer[Column.values().length];
+    private final MappedByteBuffer rowsMeta;
+    private int rows;
+
+    private Segment(LocalDate day, Path segDir, FileChannel.MapMode mode) throws IOException {
+      this.day = day;
+      boolean write = mode == FileChannel.MapMode.READ_WRITE;
+      for (Column c : Column.values()) {
+        cols[c.ordinal()] = map(segDir.resolve(c.file()), mode, write ? (long) c.width * ROWS_PER_SEGMENT : -1);
+      }
+      rowsMeta = map(segDir.resolve(ROWS_FILE), mode, write ? Integer.BYTES : -1);
+      rows = rows();
+    }
+
+    static Segment openForAppend(Path dayDir, LocalDate day) throws IOException {
+      Files.createDirectories(dayDir);
+      List<Path> existing = segmentDirs(dayDir);
+      // дописываем в последний сегмент дня, если в нём есть место (рестарт в течение дня)
+      if (!existing.isEmpty()) {
+        Segment last = new Segment(day, existing.get(existing.size() - 1), FileChannel.MapMode.READ_WRITE);
+        if (last.rows < ROWS_PER_SEGMENT) return last;
+      }
+      Path segDir = dayDir.resolve(String.format("seg-%03d", existing.size()));
+      Files.createDirectories(segDir);
+      return new Segment(day, segDir, FileChannel.MapMode.READ_WRITE);
+    }
+
+    /** @return null если сегмент ещё не дописан до колонок (гонка с writer'ом) */
+    static Segment openForRead(Path segDir, LocalDate day) throws IOException {
+      if (!Files.exists(segDir.resolve(ROWS_FILE))) return null;
+      return new Segment(day, segDir, FileChannel.MapMode.READ_ONLY);
+    }
+
+    int rows() {
+      return (int) ROWS_VIEW.getAcquire(rowsMeta, 0);
+    }
+
+    MappedByteBuffer col(Column c) {
+      return cols[c.ordinal()];
+    }
+
+    void append(long ts, byte type, long hash, int percent, short b1, short b2, int o1, int o2, short status) {
+      int i = rows;
+      cols[Column.TS.ordinal()].putLong(i * 8, ts);
+      cols[Column.TYPE.ordinal()].put(i, type);
+      cols[Column.HASH.ordinal()].putLong(i * 8, hash);
+      cols[Column.PERCENT.ordinal()].putInt(i * 4, percent);
+      cols[Column.BOOK1.ordinal()].putShort(i * 2, b1);
+      cols[Column.BOOK2.ordinal()].putShort(i * 2, b2);
+      cols[Column.ODD1.ordinal()].putInt(i * 4, o1);
+      cols[Column.ODD2.ordinal()].putInt(i * 4, o2);
+      cols[Column.STATUS.ordinal()].putShort(i * 2, status);
+      rows = i + 1;
+      ROWS_VIEW.setRelease(rowsMeta, 0, rows);
+    }
+
+    void force() {
+      for (MappedByteBuffer b : cols) b.force();
+      rowsMeta.force();
+    }
+
+    void close() {
+      force();
+    }
+
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode, long size) throws IOException {
+      boolean write = mode == FileChannel.MapMode.READ_WRITE;
+      try (FileChannel ch = write
+          ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+          : FileChannel.open(file, StandardOpenOption.READ)) {
+        // файл создаётся сразу на весь сегмент (разреженный), читатель мапит сколько есть
+        MappedByteBuffer b = ch.map(mode, 0, write ? size : ch.size());
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        return b;
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.carus.integrations;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Канонический отпечаток вилки: то же событие, те же конторы, то же семейство рынка, тот же период —
+ * независимо от arb_hash, который ABB меняет при пересчёте вилки (чуть сдвинулась линия).
+ *
+ * Событие нормализуется один раз на исходную строку: без диакритики и регистра, по словам,
+ * без служебных слов (vs, fc…), слова по алфавиту — «Team A vs Team B» и «team a - team b» совпадают.
+ * У рынка отбрасываются числа-линии: «Over 2.5» и «Over 2.75» — одно семейство «over», а «AH1(-1.5)» — «ah1».
+ * Линия — число в скобках, со знаком или дробью после слова, целое после over/under/total; знак линии
+ * без номера команды остаётся («Handicap -1» — «handicap minus»). Голые исходы («1», «2», «X», «12»,
+ * «Team 1») остаются: это разные стороны рынка, а не разные линии.
+ * Результат — 64-битный хеш строк (не локальные id), одинаковый между рестартами и процессами.
+ */
+final class ArbFingerprint {
+
+  // кэши строка -> хеш; от разрастания (новые события каждый день) — просто сбрасываем
+  private static final int MAX_CACHED = 200_000;
+  private static final Map<String, Long> EVENTS = new ConcurrentHashMap<>();
+  private static final Map<String, Long> MARKETS = new ConcurrentHashMap<>();
+
+  private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+  private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+  // линия в скобках: «(-1.5)», «(0, -0.5)»
+  private static final Pattern PAREN_LINE = Pattern.compile("\\([\\s+\\-\\d.,]*\\)");
+  // после слова — со знаком или дробью: «over 2.5», «handicap -1», но не «team 1»; знак — это сторона
+  private static final Pattern LINE = Pattern.compile(
+      "(?<=[\\p{L})])\\s+([+-]?)(?:\\d+[.,]\\d+|(?<=[+-])\\d+)(?![\\p{L}\\p{N}])");
+  // целый тотал: «over 3», «total 10»
+  private static final Pattern TOTAL_LINE = Pattern.compile("\\b(over|under|total)\\s+\\d+(?![\\p{L}\\p{N}.,])");
+  private static final Set<String> STOP = Set.of("vs", "v", "fc", "sc", "cf", "ac", "afc", "fk", "sk", "the");
+
+  private ArbFingerprint() {}
+
+  static long of(ArbHeader header, List<BetLine> bets) {
+    long[] legs = new long[bets.size()];
+    for (int i = 0; i < legs.length; i++) {
+      BetLine b = bets.get(i);
+      long h = DedupCluster.hash64(b.book().name());
+      h = mix(h, event(b.event()));
+      h = mix(h, market(b.market()));
+      legs[i] = h;
+    }
+    // порядок плеч на странице не важен
+    Arrays.sort(legs);
+    long h = header == null ? 0 : market(header.period());
+    for (long leg : legs) h = mix(h, leg);
+    return h;
+  }
+
+  static long event(String raw) {
+    if (raw == null) return 0;
+    Long h = EVENTS.get(raw);
+    if (h != null) return h;
+    if (EVENTS.size() >= MAX_CACHED) EVENTS.clear();
+    long v = DedupCluster.hash64(normalizeEvent(raw));
+    EVENTS.put(raw, v);
+    return v;
+  }
+
+  static long market(String raw) {
+    if (raw == null) return 0;
+    Long h = MARKETS.get(raw);
+    if (h != null) return h;
+    if (MARKETS.size() >= MAX_CACHED) MARKETS.clear();
+    long v = DedupCluster.hash64(marketFamily(raw));
+    MARKETS.put(raw, v);
+    return v;
+  }
+
+  static String normalizeEvent(String raw) {
+    String[] words = NON_WORD.split(fold(raw));
+    Arrays.sort(words);
+    StringBuilder sb = new StringBuilder(raw.length());
+    String prev = null;
+    for (String w : words) {
+      if (w.isEmpty() || STOP.contains(w) || w.equals(prev)) continue;
+      if (sb.length() > 0) sb.append(' ');
+      sb.append(w);
+      prev = w;
+    }
+    return sb.toString();
+  }
+
+  static String marketFamily(String raw) {
+    String s = PAREN_LINE.matcher(fold(raw)).replaceAll(" ");
+    s = LINE.matcher(s).replaceAll(m -> m.group(1).equals("-") ? " minus" : m.group(1).equals("+") ? " plus" : " ");
+    s = TOTAL_LINE.matcher(s).replaceAll("$1");
+    return String.join(" ", NON_WORD.split(s.trim())).trim();
+  }
+
+  private static String fold(String s) {
+    return MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+  }
+
+  private static long mix(long h, long v) {
+    h ^= v + 0x9e3779b97f4a7c15L + (h << 6) + (h >>> 2);
+    return h;
+  }
+}
@@ -1,14 +1,33 @@
 package com.carus.integrations;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Dedup по arb_hash с TTL. Карта сохраняется в {@code <state.dir>/dedup.snapshot} раз в минуту
+ * и на остановке, на старте читается обратно — после редеплоя уже отправленные вилки не уходят повторно.
+ *
+ * С {@code cluster.enabled} решение за узлом-владельцем хеша ({@link DedupCluster}), а карта
+ * ещё и реплика того, что разослали остальные узлы.
+ */
 @Component
 public class ArbHashDeduplicator {
 
@@ -16,6 +35,8 @@ public class ArbHashDeduplicator {
 
   private static final Duration RETENTION = Duration.ofDays(2);      // TTL хеша
   private static final Duration CLEANUP_EVERY = Duration.ofHours(6); // как часто чистим
+  private static final Duration SNAPSHOT_EVERY = Duration.ofMinutes(1);
+  private static final String SNAPSHOT_FILE = "dedup.snapshot";
 
   private final ConcurrentHashMap<String, Long> sentAtMs = new ConcurrentHashMap<>();
 
@@ -26,11 +47,29 @@ public class ArbHashDeduplicator {
         return t;
       });
 
-  public ArbHashDeduplicator() {
+  private final Path snapshot;
+  private final ClusterProperties clusterProps;
+  // null — один инстанс; создаётся в start(): кластер получает ссылку на дедупликатор
+  private volatile DedupCluster cluster;
+
+  public ArbHashDeduplicator(@Value("${state.dir:/app/state}") String stateDir,
+      ClusterProperties clusterProps) throws IOException {
+    this.snapshot = Path.of(stateDir, SNAPSHOT_FILE);
+    this.clusterProps = clusterProps;
+    load();
     cleaner.scheduleAtFixedRate(this::cleanupSafe,
         CLEANUP_EVERY.toMillis(),
         CLEANUP_EVERY.toMillis(),
         TimeUnit.MILLISECONDS);
+    cleaner.scheduleWithFixedDelay(this::save,
+        SNAPSHOT_EVERY.toMillis(),
+        SNAPSHOT_EVERY.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PostConstruct
+  void start() throws IOException {
+    if (clusterProps.isEnabled()) cluster = new DedupCluster(clusterProps, this);
   }
 
   /**
@@ -41,6 +80,11 @@ public class ArbHashDeduplicator {
     if (arbHash == null || arbHash.isBlank()) return false;
 
     final long now = System.currentTimeMillis();
+    return cluster != null ? cluster.tryAcquire(arbHash, now) : acquireLocal(arbHash, now);
+  }
+
+  /** Решение по своей карте: этот узел — владелец хеша (или один инстанс). */
+  boolean acquireLocal(String arbHash, long now) {
     final long ttlMs = RETENTION.toMillis();
 
     final AtomicBoolean allowed = new AtomicBoolean(false);
@@ -75,10 +119,30 @@ public class ArbHashDeduplicator {
     return allowed.get();
   }
 
+  /** Хеш уже отправлен (своим или другим узлом) и не протух. */
+  boolean isHeld(String arbHash, long now) {
+    Long ts = sentAtMs.get(arbHash);
+    return ts != null && now - ts <= RETENTION.toMillis();
+  }
+
+  long heldSince(String arbHash) {
+    Long ts = sentAtMs.get(arbHash);
+    return ts == null ? 0 : ts;
+  }
+
+  /** Реплика: хеш отправил другой узел. */
+  void remember(String arbHash, long ts) {
+    if (ts > 0) sentAtMs.merge(arbHash, ts, Math::max);
+  }
+
   public int size() {
     return sentAtMs.size();
   }
 
+  public String status() {
+    return "dedup " + sentAtMs.size() + " hashes" + (cluster != null ? " | " + cluster.status() : "");
+  }
+
   private void cleanupSafe() {
     try {
       cleanup();
@@ -99,8 +163,53 @@ public class ArbHashDeduplicator {
     }
   }
 
+  /** Пишет снимок карты атомарно (tmp + rename). Зовётся по таймеру и при остановке. */
+  public synchronized void save() {
+    final long cutoff = System.currentTimeMillis() - RETENTION.toMillis();
+    Path tmp = snapshot.resolveSibling(SNAPSHOT_FILE + ".tmp");
+    try {
+      Files.createDirectories(snapshot.getParent());
+      int n = 0;
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        for (Map.Entry<String, Long> e : sentAtMs.entrySet()) {
+          if (e.getValue() < cutoff) continue;
+          out.writeUTF(e.getKey());
+          out.writeLong(e.getValue());
+          n++;
+        }
+      }
+      Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      log.debug("dedup snapshot: {} hashes -> {}", n, snapshot);
+    } catch (IOException e) {
+      log.warn("dedup snapshot failed: {}", e.getMessage());
+    }
+  }
+
+  private void load() {
+    if (!Files.exists(snapshot)) return;
+    final long cutoff = System.currentTimeMillis() - RETENTION.toMillis();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+      while (true) {
+        String hash;
+        try {
+          hash = in.readUTF();
+        } catch (EOFException eof) {
+          break;
+        }
+        long ts = in.readLong();
+        if (ts >= cutoff) sentAtMs.merge(hash, ts, Math::max);
+      }
+    } catch (IOException e) {
+      // оборванный снимок: берём то, что успели прочитать
+      log.warn("dedup snapshot {} truncated: {}", snapshot, e.getMessage());
+    }
+    log.info("dedup snapshot loaded: {} hashes from {}", sentAtMs.size(), snapshot);
+  }
+
   @PreDestroy
   public void shutdown() {
     cleaner.shutdownNow();
+    if (cluster != null) cluster.close();
+    save();
   }
 }
@@ -0,0 +1,16 @@
+package com.carus.integrations;
+
+/**
+ * Заголовок вилки. Текст процента хранится для сообщения, число разобрано один раз при чтении.
+ *
+ * @param percentText процент как на странице ("2.35%")
+ * @param percent     он же числом, NaN если не разобрался
+ */
+public record ArbHeader(String percentText, double percent, String percentClass,
+                        String sport, String period, String updatedAt) {
+
+  public static ArbHeader parse(String percentText, String percentClass, String sport,
+                                String period, String updatedAt) {
+    return new ArbHeader(percentText, Decimals.parse(percentText), percentClass, sport, period, updatedAt);
+  }
+}
@@ -0,0 +1,38 @@
+package com.carus.integrations;
+
+import java.util.List;
+
+/**
+ * Одна вилка на пути по {@link ArbPipeline}. Входные поля задаёт сканер,
+ * остальные заполняют ступени по очереди (передача через RingBuffer даёт happens-before).
+ */
+final class ArbJob {
+
+  final String source;
+  final String arbHash;
+  final ArbHeader header;
+  final List<BetLine> bets;
+  // не final: вилке из handoff резолвер сканера выдаётся, когда тот поднимется
+  ExternalUrlResolver resolver;
+  // считается один раз по интернированным букмекерам, дальше ступени не сравнивают строки
+  final int stakeLeg;
+  // когда сканер прочитал вилку (epoch ms); переживает handoff, по нему старое не проигрывается
+  long queuedAtMs = System.currentTimeMillis();
+
+  // resolve
+  double[] stakes;
+  List<BetLine> resolved;
+
+  // format
+  String message;
+  RoutingRules.Decision route;
+
+  ArbJob(String source, String arbHash, ArbHeader header, List<BetLine> bets, ExternalUrlResolver resolver) {
+    this.source = source;
+    this.arbHash = arbHash;
+    this.header = header;
+    this.bets = bets;
+    this.resolver = resolver;
+    this.stakeLeg = BookKind.firstLeg(bets, BookKind.STAKE);
+  }
+}
@@ -0,0 +1,522 @@
+package com.carus.integrations;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Общий конвейер для всех сканеров. Сканеры только читают страницу и кладут сырые вилки в
+ * {@link #submit}; дальше вилка идёт по ступеням, каждая со своими потоками и своей очередью:
+ *
+ * <pre>
+ * dedup -> resolve (ставки + внешние ссылки) -> format -> telegram
+ *                                                     \-> executor
+ * </pre>
+ *
+ * Вход (dedup) при переполнении отбрасывает: arb_hash ещё не занят, и следующий скан положит вилку снова.
+ * Дальше BLOCK — вилку, прошедшую dedup, терять нельзя, медленный сток притормаживает предыдущие ступени.
+ *
+ * На остановке {@link #drain} закрывает вход, ждёт, пока ступени и отправки в TG опустеют, а что не
+ * успело до дедлайна — пишет в {@code <state.dir>/pipeline.handoff}. На старте это проигрывается:
+ * format/telegram/executor сразу, dedup/resolve — когда сканер-источник откроет резолвер ({@link #scannerReady}).
+ * Вилки старше {@code shutdown.handoff-max-age} не проигрываются, как и вилки сканеров, которых больше нет
+ * в конфиге ({@link #retainSources}).
+ */
+@Component
+@Slf4j
+public class ArbPipeline {
+
+  // Банк под "равную вилку"
+  private static final double TOTAL_BANKROLL_USD = 100.0;
+
+  private static final int QUEUE_CAPACITY = 1024;
+  // резолв в основном идёт по HTTP (HttpLinkResolver) и ждёт сети, а не вкладки — потоков больше
+  private static final int RESOLVE_THREADS = 8;
+  // отправок в TG в полёте; больше — telegram-ступень ждёт, очередь растёт и BLOCK тормозит предыдущие ступени
+  private static final int TELEGRAM_MAX_IN_FLIGHT = 16;
+  private static final String HANDOFF_FILE = "pipeline.handoff";
+  // сколько ждём потоки ступени после interrupt
+  private static final long STAGE_JOIN_MS = 2_000;
+
+  private final TelegramSender telegramSender;
+  private final ArbHashDeduplicator arbHashDeduplicator;
+  private final FingerprintDeduplicator fingerprints;
+  private final EventCatalog catalog;
+  private final ExecutorOutbox executorOutbox;
+  private final ArbEventStore events;
+  private final LiveStats stats;
+  private final RoutingRules routing;
+
+  private final PipelineStage<ArbJob> dedupStage = new PipelineStage<>(
+      "dedup", QUEUE_CAPACITY, 1, PipelineStage.Backpressure.DROP_NEWEST, this::dedup);
+  private final PipelineStage<ArbJob> resolveStage = new PipelineStage<>(
+      "resolve", QUEUE_CAPACITY, RESOLVE_THREADS, PipelineStage.Backpressure.BLOCK, this::resolve);
+  private final PipelineStage<ArbJob> formatStage = new PipelineStage<>(
+      "format", QUEUE_CAPACITY, 1, PipelineStage.Backpressure.BLOCK, this::format);
+  private final PipelineStage<ArbJob> telegramStage = new PipelineStage<>(
+      "telegram", QUEUE_CAPACITY, 1, PipelineStage.Backpressure.BLOCK, this::sendTelegram);
+  private final PipelineStage<ArbJob> executorStage = new PipelineStage<>(
+      "executor", QUEUE_CAPACITY, 1, PipelineStage.Backpressure.BLOCK, this::sendExecutor);
+
+  private final List<PipelineStage<ArbJob>> stages =
+      List.of(dedupStage, resolveStage, formatStage, telegramStage, executorStage);
+
+  private final Path handoffFile;
+  private final Duration handoffMaxAge;
+  private volatile boolean intakeOpen = true;
+
+  // резолверы сканеров по имени источника — для вилок, проигранных после рестарта
+  private final Map<String, ExternalUrlResolver> resolvers = new ConcurrentHashMap<>();
+  // проигранные вилки dedup/resolve ждут, пока их сканер откроет резолвер
+  private final Map<String, List<PipelineHandoff.Entry>> awaitingScanner = new ConcurrentHashMap<>();
+  // отданы в IoExecutor, ответа TG ещё нет
+  private final Set<ArbJob> telegramInFlight = ConcurrentHashMap.newKeySet();
+  // без предела каждая вилка при медленном TG (429, ретраи) держала бы свой виртуальный поток
+  private final Semaphore telegramPermits = new Semaphore(TELEGRAM_MAX_IN_FLIGHT);
+
+  public ArbPipeline(TelegramSender telegramSender,
+      ArbHashDeduplicator arbHashDeduplicator,
+      FingerprintDeduplicator fingerprints,
+      EventCatalog catalog,
+      ExecutorOutbox executorOutbox,
+      ArbEventStore events,
+      LiveStats stats,
+      RoutingRules routing,
+      @Value("${state.dir:/app/state}") String stateDir,
+      @Value("${shutdown.handoff-max-age:2m}") Duration handoffMaxAge) {
+    this.telegramSender = telegramSender;
+    this.arbHashDeduplicator = arbHashDeduplicator;
+    this.fingerprints = fingerprints;
+    this.catalog = catalog;
+    this.executorOutbox = executorOutbox;
+    this.events = events;
+    this.stats = stats;
+    this.routing = routing;
+    this.handoffFile = Path.of(stateDir, HANDOFF_FILE);
+    this.handoffMaxAge = handoffMaxAge;
+  }
+
+  @PostConstruct
+  public void start() {
+    // с конца, чтобы ступень была готова раньше, чем в неё начнут класть
+    for (int i = stages.size() - 1; i >= 0; i--) stages.get(i).start();
+    replayHandoff();
+  }
+
+  @PreDestroy
+  public void stop() {
+    stages.forEach(PipelineStage::stop);
+  }
+
+  /**
+   * Вызывается потоком сканера для каждой прочитанной вилки. Не блокирует:
+   * при переполнении входной очереди вилка отбрасывается (dedup её ещё не видел).
+   *
+   * @return false если вилка не принята
+   */
+  public boolean submit(String source, ArbHeader header, List<BetLine> betLines, String arbHash,
+      ExternalUrlResolver resolver) {
+    if (arbHash == null || arbHash.isBlank() || !intakeOpen) return false;
+    return dedupStage.offer(new ArbJob(source, arbHash, header, betLines,
+        resolver == null ? ExternalUrlResolver.NONE : resolver));
+  }
+
+  /**
+   * Сканер открыл резолвер: дальше вилки после рестарта, которым нужен резолв, идут через него.
+   */
+  public void scannerReady(String source, ExternalUrlResolver resolver) {
+    resolvers.put(source, resolver);
+    List<PipelineHandoff.Entry> entries = awaitingScanner.remove(source);
+    if (entries == null) return;
+    int replayed = 0;
+    for (PipelineHandoff.Entry e : entries) {
+      // сканер мог подниматься долго (логин) — пока ждали, вилка устарела
+      if (PipelineHandoff.isStale(e.job(), handoffMaxAge)) continue;
+      e.job().resolver = resolver;
+      (dedupStage.name().equals(e.stage()) ? dedupStage : resolveStage).offer(e.job());
+      replayed++;
+    }
+    log.info("[handoff] replayed {} of {} arbs for {}", replayed, entries.size(), source);
+  }
+
+  /**
+   * Все сканеры запущены: вилки из handoff, ждущие сканер, которого больше нет (убрали из конфига,
+   * переименовали), выбрасываются — иначе они висят в памяти и снова уходят в handoff на каждой остановке.
+   */
+  public void retainSources(Set<String> sources) {
+    awaitingScanner.keySet().removeIf(src -> {
+      if (sources.contains(src)) return false;
+      List<PipelineHandoff.Entry> dropped = awaitingScanner.get(src);
+      log.warn("[handoff] dropped {} arbs for unknown scanner {}", dropped == null ? 0 : dropped.size(), src);
+      return true;
+    });
+  }
+
+  /**
+   * Мягкая остановка: закрывает вход, ждёт до дедлайна, пока ступени и отправки в TG опустеют,
+   * останавливает ступени и сохраняет недоделанное в handoff-файл.
+   *
+   * @return сколько вилок ушло в handoff
+   */
+  public int drain(Duration timeout) throws InterruptedException {
+    intakeOpen = false;
+    long deadline = System.currentTimeMillis() + timeout.toMillis();
+
+    // по порядку: когда ступень и все до неё пусты, в неё больше ничего не придёт
+    for (PipelineStage<ArbJob> s : stages) {
+      while (!s.isIdle() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+    }
+    while (!telegramInFlight.isEmpty() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+
+    List<PipelineHandoff.Entry> left = new ArrayList<>();
+    for (PipelineStage<ArbJob> s : stages) {
+      for (ArbJob j : s.stopAndCollect(STAGE_JOIN_MS)) left.add(new PipelineHandoff.Entry(s.name(), j));
+    }
+    // отправки, которые TG ещё не подтвердил, повторим после рестарта (возможен дубль, но не потеря)
+    for (ArbJob j : telegramInFlight) left.add(new PipelineHandoff.Entry(telegramStage.name(), j));
+    for (List<PipelineHandoff.Entry> waiting : awaitingScanner.values()) {
+      for (PipelineHandoff.Entry e : waiting) {
+        if (!PipelineHandoff.isStale(e.job(), handoffMaxAge)) left.add(e);
+      }
+    }
+
+    if (left.isEmpty()) {
+      log.info("[pipeline] drained clean");
+      return 0;
+    }
+    try {
+      PipelineHandoff.save(handoffFile, left);
+      log.warn("[pipeline] drain deadline hit, {} arbs handed off to {}", left.size(), handoffFile);
+    } catch (IOException e) {
+      log.warn("[pipeline] failed to save handoff, {} arbs lost: {}", left.size(), e.toString());
+    }
+    return left.size();
+  }
+
+  private void replayHandoff() {
+    List<PipelineHandoff.Entry> entries;
+    try {
+      entries = PipelineHandoff.load(handoffFile, src -> resolvers.getOrDefault(src, ExternalUrlResolver.NONE),
+          handoffMaxAge);
+    } catch (IOException e) {
+      log.warn("[handoff] cannot read {}: {}", handoffFile, e.toString());
+      return;
+    }
+    if (entries.isEmpty()) return;
+
+    for (PipelineHandoff.Entry e : entries) {
+      ArbJob j = e.job();
+      switch (e.stage()) {
+        case "format" -> formatStage.offer(j);
+        case "telegram" -> {
+          if (j.route != null && j.message != null) telegramStage.offer(j);
+        }
+        case "executor" -> {
+          if (j.resolved != null) executorStage.offer(j);
+        }
+        default -> awaitingScanner.computeIfAbsent(j.source, k -> new CopyOnWriteArrayList<>()).add(e);
+      }
+    }
+    log.info("[handoff] loaded {} arbs from previous run", entries.size());
+  }
+
+  /** Очередь telegram-ступени, для /stats. */
+  public String telegramQueue() {
+    return telegramStage.depth() + "/" + telegramStage.capacity();
+  }
+
+  /** Глубина очередей и латентности по ступеням, для /status. */
+  public String status() {
+    StringBuilder sb = new StringBuilder("pipeline");
+    for (PipelineStage<ArbJob> s : stages) sb.append("\n  ").append(s.status());
+    sb.append("\n  telegram in flight: ").append(TELEGRAM_MAX_IN_FLIGHT - telegramPermits.availablePermits())
+        .append("/").append(TELEGRAM_MAX_IN_FLIGHT);
+    return sb.toString();
+  }
+
+  // =========================
+  // Stages
+  // =========================
+
+  private void dedup(ArbJob job) {
+    // новый arb_hash, но то же событие, конторы и рынок (ABB пересчитал вилку) — тоже дубль
+    boolean fresh = shouldSendToTelegram(job.arbHash) && fingerprints.tryAcquire(job.header, job.bets);
+    stats.dedup(!fresh, job.bets);
+    if (fresh) resolveStage.offer(job);
+  }
+
+  private void resolve(ArbJob job) throws InterruptedException {
+    // 1) считаем "равную вилку" на банк
+    job.stakes = calcEqualStakesUsd(job.bets, TOTAL_BANKROLL_USD);
+
+    // 2) резолвим внешние ссылки ДЛЯ ОБЕИХ контор
+    long t0 = System.nanoTime();
+    job.resolved = resolveAllExternalUrls(job.bets, job.resolver);
+    stats.resolved(System.nanoTime() - t0);
+
+    formatStage.offer(job);
+  }
+
+  private void format(ArbJob job) {
+    job.message = buildTelegramMessage(job.header, job.resolved, job.arbHash, job.stakes);
+
+    // ✅ чат и экзекьютор — по правилам routing.file (перечитываются на лету)
+    job.route = routing.route(job.header, job.resolved);
+
+    if (job.route.chatId() != null) telegramStage.offer(job);
+    // Stake-ставка на экзакьютор идёт параллельно TG и не зависит от него
+    if (job.route.executor()) executorStage.offer(job);
+  }
+
+  // Сами отправки идут в виртуальных потоках IoExecutor: ступень только раздаёт их и не ждёт ретраев
+  private void sendTelegram(ArbJob job) throws InterruptedException {
+    // прервали на остановке — вилка уйдёт в handoff как недоделанная
+    telegramPermits.acquire();
+    long t0 = System.nanoTime();
+    telegramInFlight.add(job);
+    CompletableFuture<Void> sent;
+    try {
+      sent = telegramSender.sendTextAsync(job.route.chatId(), job.message);
+    } catch (RuntimeException e) {
+      telegramInFlight.remove(job);
+      telegramPermits.release();
+      throw e;
+    }
+    sent.whenComplete((v, e) -> {
+      telegramPermits.release();
+      if (e != null) {
+        // идёт drain — вилка остаётся в полёте и уйдёт в handoff; иначе TG её так и не принял
+        if (intakeOpen) {
+          telegramInFlight.remove(job);
+          log.warn("[pipeline] telegram gave up on {}: {}", job.arbHash, e.toString());
+        }
+        return;
+      }
+      telegramInFlight.remove(job);
+      stats.telegramSent(System.nanoTime() - t0);
+      log.atInfo()
+          .addKeyValue("arb", job.arbHash)
+          .addKeyValue("source", job.source)
+          .addKeyValue("books", () -> books(job.resolved))
+          .addKeyValue("updated", job.header.updatedAt())
+          .addKeyValue("stage", "telegram")
+          .addKeyValue("ms", (System.nanoTime() - t0) / 1_000_000)
+          .log(">>> SEND TO TG");
+      events.arbSent(job.arbHash, job.header, job.resolved);
+    });
+  }
+
+  private void sendExecutor(ArbJob job) throws InterruptedException {
+    if (job.stakeLeg >= 0) sendToExecutorIfStake(job.arbHash, job.resolved, job.stakeLeg, job.stakes);
+  }
+
+  private static String books(List<BetLine> bets) {
+    StringBuilder sb = new StringBuilder();
+    for (BetLine b : bets) {
+      if (sb.length() > 0) sb.append('/');
+      sb.append(b.book().name());
+    }
+    return sb.toString();
+  }
+
+  // =========================
+  // Executor
+  // =========================
+
+  /** @param leg индекс первого плеча Stake (ArbJob.stakeLeg) */
+  private void sendToExecutorIfStake(String arbHash, List<BetLine> betLines, int leg, double[] stakes)
+      throws InterruptedException {
+    if (betLines == null || leg >= betLines.size()) return;
+    BetLine b = betLines.get(leg);
+
+    if (b.resolvedUrl() == null || b.resolvedUrl().isBlank()) {
+      log.warn("[executor] Stake bet found but no resolved URL, skipping");
+      return;
+    }
+
+    String event = betLines.get(0).event();
+    BigDecimal odds = b.hasOdd() ? BigDecimal.valueOf(b.odd()).setScale(2, RoundingMode.HALF_UP) : null;
+    BigDecimal amount = (stakes != null && leg < stakes.length)
+        ? BigDecimal.valueOf(stakes[leg]).setScale(2, RoundingMode.HALF_UP)
+        : null;
+
+    if (odds == null || amount == null) {
+      log.warn("[executor] Cannot parse odds/amount for Stake bet, skipping");
+      return;
+    }
+
+    // в журнал outbox'а; доставкой с ретраями занимается он сам
+    BetSignal signal = new BetSignal(BetSignal.idempotencyKey(arbHash, leg),
+        event, b.market(), odds, amount, b.resolvedUrl());
+    if (!executorOutbox.enqueue(signal)) {
+      log.warn("[executor] disabled or outbox unavailable, skipping: {}", signal.idempotencyKey());
+    }
+  }
+
+  // =========================
+  // Equal stake calc
+  // =========================
+
+  private double[] calcEqualStakesUsd(List<BetLine> betLines, double total) {
+    if (betLines == null || betLines.size() < 2) return null;
+
+    BetLine b1 = betLines.get(0);
+    BetLine b2 = betLines.get(1);
+    if (!b1.hasOdd() || !b2.hasOdd()) return null;
+    double o1 = b1.odd();
+    double o2 = b2.odd();
+
+    double inv1 = 1.0 / o1;
+    double inv2 = 1.0 / o2;
+    double sum = inv1 + inv2;
+    if (sum <= 0) return null;
+
+    double s1 = total * inv1 / sum;
+    s1 = round2(s1);
+    double s2 = round2(total - s1);
+
+    return new double[] { s1, s2 };
+  }
+
+  private double round2(double v) {
+    return BigDecimal.valueOf(v).setScale(2, RoundingMode.HALF_UP).doubleValue();
+  }
+
+  // =========================
+  // External URLs
+  // =========================
+
+  /**
+   * @throws InterruptedException резолв прервали (drain не уложился в дедлайн). Резолверы на прерывание
+   *                              отдают null и только ставят флаг, а вилка с пустыми ссылками ушла бы в TG
+   *                              и мимо экзекьютора — пусть ступень отдаст её в handoff целиком.
+   */
+  private List<BetLine> resolveAllExternalUrls(List<BetLine> betLines, ExternalUrlResolver resolver)
+      throws InterruptedException {
+    if (betLines == null || betLines.isEmpty()) return betLines;
+
+    List<BetLine> out = new ArrayList<>(betLines.size());
+    for (BetLine b : betLines) {
+      // экзекьютору нужна страница события: если она уже в каталоге, редирект ABB не нужен
+      String resolved = catalog.find(b);
+      if (resolved == null) {
+        resolved = resolver.resolve(b);
+        if (Thread.interrupted()) throw new InterruptedException("resolve interrupted");
+        catalog.learn(b, resolved);
+      }
+      resolved = normalizeResolvedUrl(b.book(), resolved);
+      out.add(b.withResolvedUrl(resolved));
+    }
+    return out;
+  }
+
+  private String normalizeResolvedUrl(Book book, String url) {
+    if (url == null || url.isBlank()) return url;
+
+    return url;
+  }
+
+  // =========================
+  // Telegram message
+  // =========================
+
+  private String buildTelegramMessage(
+      ArbHeader h,
+      List<BetLine> bets,
+      String arbHash,
+      double[] stakes
+  ) {
+    String emoji = headerEmoji(h.percentClass());
+
+    String event = bets.isEmpty() ? "" : nullToEmpty(bets.get(0).event());
+    String league = bets.isEmpty() ? "" : nullToEmpty(bets.get(0).league());
+    String date = bets.isEmpty() ? "" : nullToEmpty(bets.get(0).date());
+    String period = nullToEmpty(h.period());
+
+    String timeUntil = bets.isEmpty() ? "" : formatTimeUntilGame(bets.get(0).startsAt());
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("⚡️ ").append(emoji).append(" ").append(nullToEmpty(h.percentText()));
+    if (!timeUntil.isBlank()) sb.append(" | ").append(timeUntil);
+    sb.append(" | ").append(nullToEmpty(h.sport()));
+
+    if (!period.isBlank()) sb.append(" ").append(period);
+    sb.append(" | ").append(nullToEmpty(h.updatedAt())).append("\n");
+
+    if (!event.isBlank()) sb.append("🏟 ").append(event).append("\n");
+    if (!league.isBlank()) sb.append("🏷 ").append(league).append("\n");
+    if (!date.isBlank()) sb.append("🗓 ").append(date).append("\n");
+
+    for (int i = 0; i < bets.size(); i++) {
+      BetLine b = bets.get(i);
+      sb.append(i + 1).append(") ")
+          .append(b.book().displayName()).append(" — ")
+          .append(nullToEmpty(b.market())).append(" @ ")
+          .append(nullToEmpty(b.oddText()));
+
+      if (stakes != null && i < stakes.length) {
+        sb.append(" | $").append(String.format(java.util.Locale.US, "%.2f", stakes[i]));
+      }
+
+      if (b.depth() != null && !b.depth().isBlank()) sb.append(" | depth ").append(b.depth());
+      sb.append("\n");
+    }
+
+    // ✅ ссылки на обе конторы (и любые другие)
+    for (BetLine b : bets) {
+      if (b.resolvedUrl() != null && !b.resolvedUrl().isBlank()) {
+        sb.append("🎯 ").append(b.book().displayName()).append(": ").append(b.resolvedUrl()).append("\n");
+      }
+    }
+
+    return sb.toString().trim();
+  }
+
+  private String headerEmoji(String percentClass) {
+    String c = (percentClass == null ? "" : percentClass).toLowerCase();
+    if (c.contains("green")) return "🟢";
+    if (c.contains("red")) return "🔴";
+    if (c.contains("yellow")) return "🟡";
+    return "⚪️";
+  }
+
+  private String nullToEmpty(String s) {
+    return s == null ? "" : s.trim();
+  }
+
+  private String formatTimeUntilGame(Instant startsAt) {
+    if (startsAt == null) return "";
+    long totalMinutes = Duration.between(Instant.now(), startsAt).toMinutes();
+    if (totalMinutes <= 0) return "";
+
+    long hours = totalMinutes / 60;
+    long minutes = totalMinutes % 60;
+    return hours > 0 ? hours + "ч " + minutes + "м" : minutes + "м";
+  }
+
+  // =========================
+  // Filtering / Dedup / Routing
+  // =========================
+
+  private boolean shouldSendToTelegram(String arbHash) {
+    if (arbHash == null || arbHash.isBlank()) return false;
+    return arbHashDeduplicator.tryAcquire(arbHash);
+  }
+}
@@ -0,0 +1,31 @@
+package com.carus.integrations;
+
+import java.util.List;
+
+/**
+ * Источник вилок. Каждый сканер крутится в {@link ScannerRuntime} на своём потоке,
+ * берёт себе контекст в общем Chromium через {@link BrowserPool}
+ * и сдаёт найденные вилки в общий {@link ArbPipeline}.
+ */
+public interface ArbScanner {
+
+  /** Короткое имя для команд бота и логов: "abb", "pb", ... */
+  String getName();
+
+  /**
+   * Блокирующий цикл сканирования. Сам переживает падения браузера,
+   * паузы и рестарты из {@link WorkerControlService}.
+   * Возвращается только когда поток прерван (shutdown).
+   */
+  void runLoop() throws InterruptedException;
+
+  /** Одна строка метрик для /status. Вызывается с чужого потока — только volatile/атомики. */
+  default String status() {
+    return "";
+  }
+
+  /** Бин, который создаёт сканеры сам (например, по одному на аккаунт); {@link ScannerRuntime} запускает их как обычные. */
+  interface Group {
+    List<ArbScanner> scanners();
+  }
+}
@@ -1,53 +1,224 @@
 package com.carus.integrations;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
-import java.math.BigDecimal;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Sends bet signals to the remote bet-executor-service via POST /api/bet-signal.
- * Fire-and-forget: failures are logged but never propagate to the parser loop.
+ * Sends bet signals to the remote bet-executor-service (POST /api/bet-signal or WebSocket).
+ * Signals from the pipeline go through {@link ExecutorOutbox}, which retries {@link #deliver}
+ * until the executor accepts them.
+ *
+ * Every executor URL has its own {@link CircuitBreaker}, fed by call outcomes and by background
+ * GET /api/health probes. While a breaker is open the URL gets no traffic, and a health probe
+ * is the half-open trial. Each signal is pinned to one URL before its first attempt ({@link #choose}:
+ * the healthy one with the fewest in-flight signals, then the lowest latency) and every retry goes
+ * there too: another executor does not know its idempotency key, so a timeout on A followed by a
+ * retry on B could place the bet twice. A pinned signal waits while its URL is down.
  */
 @Service
 public class BetExecutorClient {
 
+    private static final Duration PROBE_EVERY = Duration.ofSeconds(5);
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(5);
+
+    // endpoints that are already failing go last, then fewest signals in flight, then the fastest to answer
+    private static final Comparator<ExecutorEndpoint> LOAD_ORDER =
+            Comparator.<ExecutorEndpoint>comparingInt(e -> e.breaker.consecutiveFailures())
+                    .thenComparingInt(e -> e.inFlight.get())
+                    .thenComparingDouble(ExecutorEndpoint::latencyMs);
+
     private final RestTemplate restTemplate;
     private final BetExecutorProperties props;
+    private final List<ExecutorEndpoint> endpoints = new ArrayList<>();
+
+    private final HttpClient probeClient = HttpClient.newBuilder().connectTimeout(PROBE_TIMEOUT).build();
+    private final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "executor-health");
+        t.setDaemon(true);
+        return t;
+    });
 
-    public BetExecutorClient(RestTemplate restTemplate, BetExecutorProperties props) {
-        this.restTemplate = restTemplate;
+    public BetExecutorClient(RestTemplateBuilder restTemplateBuilder, BetExecutorProperties props) {
+        // own short timeouts: the Telegram template waits up to 20s, a dead executor must be cut off fast
+        this.restTemplate = restTemplateBuilder
+                .connectTimeout(CONNECT_TIMEOUT)
+                .readTimeout(READ_TIMEOUT)
+                .build();
         this.props = props;
+
+        List<String> urls = props.getUrls() == null || props.getUrls().isEmpty()
+                ? List.of(props.getUrl())
+                : props.getUrls();
+        for (String url : urls) endpoints.add(new ExecutorEndpoint(url, props));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!props.isEnabled()) return;
+        prober.scheduleWithFixedDelay(this::probeAll, 0, PROBE_EVERY.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        prober.shutdownNow();
+        endpoints.forEach(e -> e.ws.close());
+    }
+
+    /** True if at least one endpoint has a closed breaker. */
+    public boolean isAvailable() {
+        for (ExecutorEndpoint e : endpoints) {
+            if (e.breaker.allowRequest()) return true;
+        }
+        return false;
+    }
+
+    /** True if this endpoint takes traffic now (a signal pinned to it can be attempted). */
+    public boolean isAvailable(String url) {
+        ExecutorEndpoint ep = find(url);
+        return ep != null && ep.breaker.allowRequest();
+    }
+
+    /**
+     * Endpoint for a signal that has never been sent: the healthiest, least-loaded one.
+     *
+     * @return its URL, or null if every breaker is open
+     */
+    public String choose() {
+        ExecutorEndpoint best = null;
+        for (ExecutorEndpoint e : endpoints) {
+            if (!e.breaker.allowRequest()) continue;
+            if (best == null || LOAD_ORDER.compare(e, best) < 0) best = e;
+        }
+        return best == null ? null : best.url;
     }
 
     /**
-     * Posts a bet signal to the executor. Does nothing if executor is disabled.
-     * Never throws — failures are printed and swallowed.
+     * Delivers one signal as a pre-serialized JSON frame (see {@link BetSignalCodec#toJson}).
+     * Uses the endpoint's WebSocket channel when it is enabled and up, otherwise POSTs the same
+     * frame with an {@code Idempotency-Key} header. A frame that went out over the socket but got
+     * no ack is a transport error, never a REST fallback: the executor may already be placing it.
+     *
+     * @param url endpoint the signal is pinned to (from {@link #choose}); never another one
+     * @throws IllegalStateException if that endpoint's breaker is open or it is no longer configured
+     * @throws RuntimeException      on transport errors (connection refused, timeout)
      */
-    public void sendBetSignal(String event, String market,
-                              BigDecimal odds, BigDecimal amount, String eventUrl) {
-        if (!props.isEnabled()) {
-            System.out.println("[executor] disabled, skipping: " + event);
-            return;
+    public Delivery deliver(BetSignal signal, String frame, String url) {
+        ExecutorEndpoint ep = find(url);
+        if (ep == null) throw new IllegalStateException("executor " + url + " is no longer configured");
+        if (!ep.breaker.allowRequest()) throw new IllegalStateException("executor " + url + " unavailable (breaker open)");
+
+        ep.inFlight.incrementAndGet();
+        long start = System.currentTimeMillis();
+        try {
+            Delivery d = send(ep, signal, frame);
+            ep.recordLatency(System.currentTimeMillis() - start);
+            // 5xx means the executor is sick; 4xx means it is alive and answered
+            if (d.status() >= 500) ep.breaker.onFailure();
+            else ep.breaker.onSuccess();
+            return d;
+        } catch (RuntimeException e) {
+            ep.breaker.onFailure();
+            throw e;
+        } finally {
+            ep.inFlight.decrementAndGet();
         }
+    }
 
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("event", event);
-        body.put("market", market);
-        body.put("odds", odds);
-        body.put("amount", amount);
-        body.put("eventUrl", eventUrl);
+    public String channelStatus() {
+        StringBuilder sb = new StringBuilder("executors");
+        for (ExecutorEndpoint e : endpoints) sb.append("\n  ").append(e.status());
+        return sb.toString();
+    }
+
+    private ExecutorEndpoint find(String url) {
+        for (ExecutorEndpoint e : endpoints) {
+            if (e.url.equals(url)) return e;
+        }
+        return null;
+    }
+
+    private Delivery send(ExecutorEndpoint ep, BetSignal signal, String frame) {
+        if (ep.ws.enabled()) {
+            try {
+                BetSignalCodec.Ack ack = ep.ws.send(signal.idempotencyKey(), frame);
+                if (ack != null) {
+                    return new Delivery(ack.status() > 0 ? ack.status() : 202, ack.signalId(), "ws", ep.url);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while sending " + signal.idempotencyKey());
+            }
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Idempotency-Key", signal.idempotencyKey());
 
         try {
-            String url = props.getUrl() + "/api/bet-signal";
-            var response = restTemplate.postForEntity(url, body, Map.class);
-            System.out.println("[executor] accepted signal: event='" + event
-                    + "' status=" + response.getStatusCode());
-        } catch (Exception e) {
-            System.out.println("[executor] ERROR sending signal: event='" + event
-                    + "' error=" + e.getMessage());
+            var response = restTemplate.postForEntity(ep.url + "/api/bet-signal",
+                    new HttpEntity<>(frame, headers), String.class);
+            BetSignalCodec.Ack ack = response.getBody() == null ? null : BetSignalCodec.parseAck(response.getBody());
+            return new Delivery(response.getStatusCode().value(), ack == null ? null : ack.signalId(), "rest", ep.url);
+        } catch (HttpStatusCodeException e) {
+            return new Delivery(e.getStatusCode().value(), null, "rest", ep.url);
+        }
+    }
+
+    private void probeAll() {
+        for (ExecutorEndpoint e : endpoints) {
+            // an open breaker lets the probe through only after its pause; that probe is the half-open trial
+            if (!e.breaker.tryAcquireProbe()) continue;
+            long start = System.currentTimeMillis();
+            try {
+                HttpRequest req = HttpRequest.newBuilder(URI.create(e.url + "/api/health"))
+                        .timeout(PROBE_TIMEOUT)
+                        .GET()
+                        .build();
+                int code = probeClient.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+                e.health(String.valueOf(code));
+                if (code == 200) {
+                    e.recordLatency(System.currentTimeMillis() - start);
+                    e.breaker.onSuccess();
+                } else {
+                    e.breaker.onFailure();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                e.health(ex.getClass().getSimpleName());
+                e.breaker.onFailure();
+            }
         }
     }
+
+    /**
+     * Executor response to one signal.
+     *
+     * @param signalId id assigned by the executor (null if it did not send one)
+     * @param via      "ws" or "rest"
+     * @param url      executor endpoint that answered
+     */
+    public record Delivery(int status, String signalId, String via, String url) {}
 }
@@ -1,6 +1,10 @@
 package com.carus.integrations;
 
 import lombok.Data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @Data
@@ -12,4 +16,31 @@ public class BetExecutorProperties {
 
     /** Base URL of the bet executor service, e.g. http://192.168.1.10:8081 */
     private String url = "http://localhost:8081";
+
+    /**
+     * Several executor base URLs (e.g. one per AdsPower host). When set, {@link #url} is ignored
+     * and each signal goes to the healthiest, least-loaded one.
+     */
+    private List<String> urls = new ArrayList<>();
+
+    /**
+     * Transport for signals: "rest" (POST per signal) or "ws" (persistent WebSocket,
+     * REST is still used while the socket is down).
+     */
+    private String channel = "rest";
+
+    /** WebSocket endpoint path on the executor, appended to {@link #url} with ws:// scheme. */
+    private String wsPath = "/ws/bet-signal";
+
+    /** Directory of the durable signal outbox journal (kept across restarts). */
+    private String outboxDir = "/app/outbox";
+
+    /**
+     * Oldest signal the outbox still delivers; older ones (odds long gone) are dropped as dead,
+     * both while retrying and when the journal is replayed on start.
+     */
+    private Duration maxSignalAge = Duration.ofMinutes(2);
+
+    /** Delivery attempts per signal before it is dropped as dead. */
+    private int maxAttempts = 8;
 }
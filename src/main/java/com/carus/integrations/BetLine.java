@@ -0,0 +1,74 @@
+package com.carus.integrations;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Одно плечо вилки. Букмекер интернирован в {@link BookRegistry}, коэффициент и время начала
+ * разобраны один раз при чтении страницы; исходные строки оставлены для сообщения.
+ *
+ * @param date     дата как на странице ("dd.MM HH:mm" или "dd.MM.yyyy HH:mm")
+ * @param startsAt она же во времени; null если формат незнакомый
+ * @param oddText  коэффициент как на странице
+ * @param odd      он же числом, NaN если не разобрался
+ */
+public record BetLine(
+    Book book,
+    String date,
+    Instant startsAt,
+    String event,
+    String league,
+    String market,
+    String oddText,
+    double odd,
+    String depth,
+    String abbBetUrl,
+    String resolvedUrl
+) {
+
+  public static BetLine parse(String book, String date, String event, String league, String market,
+                              String oddText, String depth, String abbBetUrl) {
+    return new BetLine(BookRegistry.of(book), date, parseStart(date), event, league, market,
+        oddText, Decimals.parse(oddText), depth, abbBetUrl, null);
+  }
+
+  public BetLine withResolvedUrl(String url) {
+    return new BetLine(book, date, startsAt, event, league, market, oddText, odd, depth, abbBetUrl, url);
+  }
+
+  public boolean hasOdd() {
+    return odd > 1.0;
+  }
+
+  /** "dd.MM HH:mm" (год текущий) или "dd.MM.yyyy HH:mm" в зоне сервера. */
+  static Instant parseStart(String s) {
+    if (s == null) return null;
+    s = s.trim();
+    try {
+      int day = num(s, 0), month = num(s, 3);
+      if (s.length() == 11 && s.charAt(2) == '.' && s.charAt(5) == ' ' && s.charAt(8) == ':') {
+        return at(LocalDate.now().getYear(), month, day, num(s, 6), num(s, 9));
+      }
+      if (s.length() == 16 && s.charAt(2) == '.' && s.charAt(5) == '.' && s.charAt(10) == ' ' && s.charAt(13) == ':') {
+        int year = num(s, 6) * 100 + num(s, 8);
+        return at(year, month, day, num(s, 11), num(s, 14));
+      }
+    } catch (RuntimeException ignored) {
+      // не дата или несуществующая дата
+    }
+    return null;
+  }
+
+  private static Instant at(int year, int month, int day, int hour, int minute) {
+    return LocalDateTime.of(year, month, day, hour, minute).atZone(ZoneId.systemDefault()).toInstant();
+  }
+
+  /** Две цифры с позиции i. */
+  private static int num(String s, int i) {
+    char a = s.charAt(i), b = s.charAt(i + 1);
+    if (a < '0' || a > '9' || b < '0' || b > '9') throw new NumberFormatException(s);
+    return (a - '0') * 10 + (b - '0');
+  }
+}
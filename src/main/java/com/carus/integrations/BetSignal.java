@@ -0,0 +1,16 @@
+package com.carus.integrations;
+
+import java.math.BigDecimal;
+
+/**
+ * One bet signal for the executor.
+ *
+ * @param idempotencyKey arb_hash + leg index; the executor uses it to drop redelivered signals
+ */
+public record BetSignal(String idempotencyKey, String event, String market,
+                        BigDecimal odds, BigDecimal amount, String eventUrl) {
+
+    public static String idempotencyKey(String arbHash, int leg) {
+        return arbHash + ":" + leg;
+    }
+}
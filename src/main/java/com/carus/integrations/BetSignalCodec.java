@@ -0,0 +1,74 @@
+package com.carus.integrations;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON-кадры для экзекьютора. Сигнал сериализуется один раз при постановке в outbox,
+ * дальше один и тот же кадр уходит и по WebSocket, и телом REST-запроса.
+ */
+final class BetSignalCodec {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private BetSignalCodec() {}
+
+  /** Кадр сигнала: {"type":"signal","idempotencyKey":..,"event":..,...}. */
+  static String toJson(BetSignal s) {
+    StringBuilder sb = new StringBuilder(256);
+    sb.append("{\"type\":\"signal\"");
+    field(sb, "idempotencyKey", s.idempotencyKey());
+    field(sb, "event", s.event());
+    field(sb, "market", s.market());
+    sb.append(",\"odds\":").append(s.odds() == null ? "null" : s.odds().toPlainString());
+    sb.append(",\"amount\":").append(s.amount() == null ? "null" : s.amount().toPlainString());
+    field(sb, "eventUrl", s.eventUrl());
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Ответ экзекьютора: ack по WebSocket ({"type":"ack","idempotencyKey":..,"signalId":..,"status":202})
+   * или тело REST-ответа ({"signalId":..}).
+   *
+   * @return null если это не JSON-объект
+   */
+  static Ack parseAck(String json) {
+    try {
+      JsonNode n = MAPPER.readTree(json);
+      if (n == null || !n.isObject()) return null;
+      return new Ack(
+          n.path("type").asText(null),
+          n.path("idempotencyKey").asText(null),
+          n.path("signalId").asText(null),
+          n.path("status").asInt(0));
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static void field(StringBuilder sb, String name, String value) {
+    sb.append(",\"").append(name).append("\":");
+    if (value == null) {
+      sb.append("null");
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> sb.append("\\\"");
+        case '\\' -> sb.append("\\\\");
+        case '\n' -> sb.append("\\n");
+        case '\r' -> sb.append("\\r");
+        case '\t' -> sb.append("\\t");
+        default -> {
+          if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+          else sb.append(c);
+        }
+      }
+    }
+    sb.append('"');
+  }
+
+  record Ack(String type, String idempotencyKey, String signalId, int status) {}
+}
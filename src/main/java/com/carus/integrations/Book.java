@@ -0,0 +1,14 @@
+package com.carus.integrations;
+
+/**
+ * Букмекер из {@link BookRegistry}: один экземпляр на имя, сравнивать можно по id.
+ *
+ * @param name        имя как на странице агрегатора
+ * @param displayName имя для сообщений (точки -> пробелы)
+ */
+public record Book(int id, String name, String displayName, BookKind kind) {
+
+  public boolean is(BookKind k) {
+    return kind == k;
+  }
+}
@@ -0,0 +1,41 @@
+package com.carus.integrations;
+
+import java.util.List;
+
+/**
+ * Букмекеры, которых конвейер различает в коде (плечо Stake для экзекьютора). Определяется один раз
+ * при регистрации имени в {@link BookRegistry} (по подстроке, как раньше делал isBook).
+ * Маршрутизация по чатам — в {@link RoutingRules}.
+ */
+public enum BookKind {
+  BC_GAME("game"),
+  PINNACLE("pinnacle"),
+  STAKE("stake"),
+  OTHER(null);
+
+  private final String needle;
+
+  BookKind(String needle) {
+    this.needle = needle;
+  }
+
+  public int bit() {
+    return 1 << ordinal();
+  }
+
+  static BookKind classify(String lowerName) {
+    for (BookKind k : values()) {
+      if (k.needle != null && lowerName.contains(k.needle)) return k;
+    }
+    return OTHER;
+  }
+
+  /** @return индекс первого плеча данного вида или -1 */
+  public static int firstLeg(List<BetLine> bets, BookKind kind) {
+    if (bets == null) return -1;
+    for (int i = 0; i < bets.size(); i++) {
+      if (bets.get(i).book().kind() == kind) return i;
+    }
+    return -1;
+  }
+}
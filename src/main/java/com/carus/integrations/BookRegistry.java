@@ -0,0 +1,45 @@
+package com.carus.integrations;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Интернирование букмекеров: имя со страницы -> один {@link Book} с плотным id.
+ * Нормализация и классификация имени делаются один раз на новое имя, не на каждую вилку.
+ */
+public final class BookRegistry {
+
+  public static final Book UNKNOWN = new Book(0, "", "", BookKind.OTHER);
+
+  private static final Map<String, Book> BY_NAME = new ConcurrentHashMap<>();
+  private static final List<Book> BY_ID = new CopyOnWriteArrayList<>(List.of(UNKNOWN));
+
+  private BookRegistry() {}
+
+  public static Book of(String name) {
+    if (name == null || name.isBlank()) return UNKNOWN;
+    Book b = BY_NAME.get(name);
+    return b != null ? b : BY_NAME.computeIfAbsent(name, BookRegistry::register);
+  }
+
+  public static Book byId(int id) {
+    return id >= 0 && id < BY_ID.size() ? BY_ID.get(id) : UNKNOWN;
+  }
+
+  public static int size() {
+    return BY_ID.size();
+  }
+
+  // вызывается под блокировкой computeIfAbsent для этого имени
+  private static synchronized Book register(String name) {
+    String trimmed = name.trim();
+    Book b = new Book(BY_ID.size(), trimmed,
+        trimmed.replace('.', ' ').replaceAll("\\s+", " ").trim(),
+        BookKind.classify(trimmed.toLowerCase(Locale.ROOT)));
+    BY_ID.add(b);
+    return b;
+  }
+}
@@ -0,0 +1,55 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.playwright.options.Cookie;
+
+/** Cookies браузера для обычного HTTP-клиента: из контекста Playwright или из storageState (session.json). */
+final class BrowserCookies {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private BrowserCookies() {}
+
+  /** Кладёт cookies в хранилище {@link java.net.CookieManager}; одноимённые перезаписываются. */
+  static void seed(CookieStore store, List<Cookie> cookies) {
+    long nowSec = System.currentTimeMillis() / 1000;
+    for (Cookie c : cookies) {
+      if (c.domain == null || c.name == null) continue;
+      String host = c.domain.startsWith(".") ? c.domain.substring(1) : c.domain;
+      HttpCookie hc = new HttpCookie(c.name, c.value == null ? "" : c.value);
+      hc.setDomain(c.domain);
+      hc.setPath(c.path == null ? "/" : c.path);
+      hc.setVersion(0);
+      if (c.secure != null) hc.setSecure(c.secure);
+      if (c.httpOnly != null) hc.setHttpOnly(c.httpOnly);
+      if (c.expires != null && c.expires > 0) hc.setMaxAge(Math.max(0, c.expires.longValue() - nowSec));
+      store.add(URI.create("https://" + host + "/"), hc);
+    }
+  }
+
+  /** Cookies из файла {@code BrowserContext.storageState}. */
+  static List<Cookie> fromStorageState(Path file) throws IOException {
+    JsonNode root = MAPPER.readTree(file.toFile());
+    List<Cookie> out = new ArrayList<>();
+    for (JsonNode n : root.path("cookies")) {
+      Cookie c = new Cookie(n.path("name").asText(), n.path("value").asText())
+          .setDomain(n.path("domain").asText(null))
+          .setPath(n.path("path").asText("/"))
+          .setHttpOnly(n.path("httpOnly").asBoolean(false))
+          .setSecure(n.path("secure").asBoolean(false));
+      double expires = n.path("expires").asDouble(-1);
+      if (expires > 0) c.setExpires(expires);
+      out.add(c);
+    }
+    return out;
+  }
+}
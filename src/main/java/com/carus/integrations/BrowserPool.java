@@ -0,0 +1,245 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Playwright;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Один процесс Chromium на все сканеры.
+ *
+ * Playwright Java не потокобезопасен, поэтому каждый сканер получает свой
+ * {@link Playwright} (лёгкий node-драйвер) и подключается к общему Chromium по CDP,
+ * создавая себе отдельный {@link BrowserContext} (свои cookies/сессия).
+ * Лишний сканер стоит драйвер + контекст, а не целый браузер.
+ *
+ * Chromium поднимается при первом {@link #openSession} и гасится, когда закрыта последняя сессия
+ * (пауза всех сканеров по-прежнему отпускает браузер).
+ *
+ * С {@code browser.external-cdp-url} свой Chromium не запускается: пул подключается к внешнему
+ * (сайдкар под своим супервизором) и никогда его не гасит. Контексты, созданные через CDP, Chromium
+ * убирает при отключении клиента, а контекст по умолчанию живёт дольше JVM — его с уже открытыми
+ * вкладками отдаёт {@link #openWarmSession}, и после рестарта сканер продолжает на той же странице.
+ */
+@Component
+@Slf4j
+public class BrowserPool {
+
+  private final int cdpPort;
+  // пусто — запускаем свой Chromium
+  private final String externalCdpUrl;
+
+  // Хозяин процесса Chromium. Трогаем только под lock'ом пула.
+  private Playwright hostPw;
+  private Browser hostBrowser;
+  private int openSessions;
+  // контекст по умолчанию внешнего Chromium отдаём одной сессии за раз
+  private String warmOwner;
+
+  public BrowserPool(@Value("${browser.cdp-port:9222}") int cdpPort,
+      @Value("${browser.external-cdp-url:}") String externalCdpUrl) {
+    this.cdpPort = cdpPort;
+    this.externalCdpUrl = externalCdpUrl == null ? "" : externalCdpUrl.trim();
+  }
+
+  public boolean isExternal() {
+    return !externalCdpUrl.isEmpty();
+  }
+
+  /**
+   * Открывает контекст для сканера. Вызывать из потока сканера:
+   * все объекты сессии дальше используются только им.
+   *
+   * @param storageState файл сессии (cookies/localStorage) или null
+   */
+  public Session openSession(String scannerName, Path storageState) {
+    return open(scannerName, storageState, false);
+  }
+
+  /**
+   * Как {@link #openSession}, но с внешним Chromium — его контекст по умолчанию вместе с открытыми
+   * вкладками (cookies из storageState подкладываются, только если в контексте их ещё нет).
+   * Без внешнего Chromium или если контекст уже занят — обычная сессия.
+   */
+  public Session openWarmSession(String scannerName, Path storageState) {
+    return open(scannerName, storageState, true);
+  }
+
+  private Session open(String scannerName, Path storageState, boolean warm) {
+    String endpoint = acquireEndpoint();
+
+    Playwright pw = null;
+    try {
+      pw = Playwright.create();
+      Browser browser = pw.chromium().connectOverCDP(endpoint);
+
+      if (warm && isExternal() && !browser.contexts().isEmpty() && takeWarm(scannerName)) {
+        BrowserContext context = browser.contexts().get(0);
+        if (context.cookies().isEmpty() && storageState != null && Files.exists(storageState)) {
+          context.addCookies(BrowserCookies.fromStorageState(storageState));
+          log.info("[browser-pool] {}: external profile empty, cookies from {}", scannerName, storageState);
+        }
+        log.info("[browser-pool] {}: reusing default context of external Chromium ({} page(s))",
+            scannerName, context.pages().size());
+        return new Session(scannerName, pw, browser, context, true);
+      }
+
+      Browser.NewContextOptions opts = new Browser.NewContextOptions();
+      if (storageState != null && Files.exists(storageState)) {
+        log.info("[browser-pool] {}: loading session from {}", scannerName, storageState);
+        opts.setStorageStatePath(storageState);
+      }
+      BrowserContext context = browser.newContext(opts);
+
+      log.info("[browser-pool] {}: context opened (sessions={})", scannerName, sessionCount());
+      return new Session(scannerName, pw, browser, context, false);
+    } catch (IOException e) {
+      if (pw != null) try { pw.close(); } catch (Exception ignored) {}
+      release();
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      if (pw != null) try { pw.close(); } catch (Exception ignored) {}
+      release();
+      throw e;
+    }
+  }
+
+  public synchronized int sessionCount() {
+    return openSessions;
+  }
+
+  public synchronized boolean isBrowserUp() {
+    if (isExternal()) return openSessions > 0;
+    return hostBrowser != null && hostBrowser.isConnected();
+  }
+
+  private synchronized boolean takeWarm(String scannerName) {
+    if (warmOwner != null) return false;
+    warmOwner = scannerName;
+    return true;
+  }
+
+  private synchronized void releaseWarm(String scannerName) {
+    if (scannerName.equals(warmOwner)) warmOwner = null;
+  }
+
+  private synchronized String acquireEndpoint() {
+    if (isExternal()) {
+      openSessions++;
+      return externalCdpUrl;
+    }
+    if (hostBrowser == null || !hostBrowser.isConnected()) {
+      closeHost();
+      launchHost();
+    }
+    openSessions++;
+    return "http://127.0.0.1:" + cdpPort;
+  }
+
+  private synchronized void release() {
+    openSessions = Math.max(0, openSessions - 1);
+    if (openSessions == 0 && !isExternal()) {
+      log.info("[browser-pool] last session closed, stopping Chromium");
+      closeHost();
+    }
+  }
+
+  private void launchHost() {
+    hostPw = Playwright.create();
+    hostBrowser = hostPw.chromium().launch(new BrowserType.LaunchOptions()
+        .setHeadless(false)
+        .setArgs(List.of(
+            "--no-sandbox",
+            "--disable-dev-shm-usage",
+            "--disable-gpu",
+            // вкладки шардов в фоне не должны засыпать — иначе список вилок там не обновляется
+            "--disable-background-timer-throttling",
+            "--disable-renderer-backgrounding",
+            "--disable-backgrounding-occluded-windows",
+            "--remote-debugging-address=127.0.0.1",
+            "--remote-debugging-port=" + cdpPort
+        )));
+    log.info("[browser-pool] Chromium started, CDP port {}", cdpPort);
+  }
+
+  private void closeHost() {
+    try { if (hostBrowser != null) hostBrowser.close(); } catch (Exception ignored) {}
+    try { if (hostPw != null) hostPw.close(); } catch (Exception ignored) {}
+    hostBrowser = null;
+    hostPw = null;
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    openSessions = 0;
+    closeHost();
+  }
+
+  /** Контекст одного сканера в общем Chromium. Закрывать из того же потока, что открывал. */
+  public final class Session implements AutoCloseable {
+    private final String scannerName;
+    private final Playwright pw;
+    private final Browser browser;
+    private final BrowserContext context;
+    // контекст по умолчанию внешнего Chromium: не закрываем, он и его вкладки переживают JVM
+    private final boolean borrowed;
+    private boolean closed;
+
+    private Session(String scannerName, Playwright pw, Browser browser, BrowserContext context, boolean borrowed) {
+      this.scannerName = scannerName;
+      this.pw = pw;
+      this.browser = browser;
+      this.context = context;
+      this.borrowed = borrowed;
+    }
+
+    public BrowserContext context() {
+      return context;
+    }
+
+    /** Контекст внешнего Chromium, в нём могут быть вкладки с прошлого запуска. */
+    public boolean borrowed() {
+      return borrowed;
+    }
+
+    /**
+     * Для заимствованного контекста: закрыть наши вкладки (пауза, рестарт сканера), оставив одну
+     * пустую — headful Chromium без окон завершается. Для своего контекста ничего не делает,
+     * его вкладки закроет {@link #close}.
+     */
+    public void park() {
+      if (!borrowed || closed) return;
+      try {
+        List<Page> pages = context.pages();
+        for (int i = 1; i < pages.size(); i++) pages.get(i).close();
+        if (!pages.isEmpty()) pages.get(0).navigate("about:blank");
+      } catch (Exception e) {
+        log.warn("[browser-pool] {}: park failed: {}", scannerName, e.getMessage());
+      }
+    }
+
+    @Override
+    public void close() {
+      if (closed) return;
+      closed = true;
+      if (borrowed) releaseWarm(scannerName);
+      else try { context.close(); } catch (Exception ignored) {}
+      // для CDP-подключения close() только отключается, сам Chromium живёт
+      try { browser.close(); } catch (Exception ignored) {}
+      try { pw.close(); } catch (Exception ignored) {}
+      log.info("[browser-pool] {}: context closed", scannerName);
+      release();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+
+/**
+ * Автомат CLOSED -> OPEN -> HALF_OPEN для одного адреса экзекьютора.
+ *
+ * CLOSED: запросы идут, {@link #FAILURE_THRESHOLD} ошибок подряд (вызовы или health-пробы) -> OPEN.
+ * OPEN: запросы сразу отклоняются, пока не истечёт пауза (растёт вдвое до {@link #MAX_OPEN}).
+ * HALF_OPEN: пропускаем ровно одну пробу; успех -> CLOSED, ошибка -> снова OPEN.
+ */
+final class CircuitBreaker {
+
+  enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private static final int FAILURE_THRESHOLD = 3;
+  private static final Duration BASE_OPEN = Duration.ofSeconds(5);
+  private static final Duration MAX_OPEN = Duration.ofSeconds(60);
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openDurationMs = BASE_OPEN.toMillis();
+  private long openUntilMs;
+  private long trips;
+
+  /** Можно ли слать обычный запрос. */
+  synchronized boolean allowRequest() {
+    return state == State.CLOSED;
+  }
+
+  /**
+   * Можно ли сделать пробу. В OPEN по истечении паузы переходит в HALF_OPEN и отдаёт
+   * разрешение ровно одному вызывающему; пока проба не вернулась, остальным false.
+   */
+  synchronized boolean tryAcquireProbe() {
+    if (state == State.CLOSED) return true;
+    if (state == State.OPEN && System.currentTimeMillis() >= openUntilMs) {
+      state = State.HALF_OPEN;
+      return true;
+    }
+    return false;
+  }
+
+  synchronized void onSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    openDurationMs = BASE_OPEN.toMillis();
+  }
+
+  synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN) {
+      open(Math.min(MAX_OPEN.toMillis(), openDurationMs * 2));
+    } else if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+      open(BASE_OPEN.toMillis());
+    }
+  }
+
+  synchronized int consecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  synchronized State state() {
+    return state;
+  }
+
+  synchronized String status() {
+    String s = state.name().toLowerCase();
+    if (state == State.OPEN) {
+      s += " (" + Math.max(0, openUntilMs - System.currentTimeMillis()) / 1000 + "s)";
+    }
+    return s + " fails=" + consecutiveFailures + " trips=" + trips;
+  }
+
+  private void open(long durationMs) {
+    state = State.OPEN;
+    openDurationMs = durationMs;
+    openUntilMs = System.currentTimeMillis() + durationMs;
+    trips++;
+  }
+}
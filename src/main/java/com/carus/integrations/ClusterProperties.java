@@ -0,0 +1,41 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** Несколько инстансов с общим dedup, см. {@link DedupCluster}. */
+@Data
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+  /** Выключен — dedup только в своём процессе, как раньше. */
+  private boolean enabled = false;
+
+  /** Имя узла, уникальное в кластере; по нему строится кольцо. */
+  private String nodeId = "node-1";
+
+  /** UDP-адрес, который слушает узел, host:port. */
+  private String bind = "0.0.0.0:7946";
+
+  /** Остальные узлы: {@code id@host:port}. Пакеты принимаются только с этих адресов. */
+  private List<String> peers = new ArrayList<>();
+
+  /** Общий секрет узлов: каждый пакет подписан HMAC-SHA256. Без него кластер не стартует. */
+  private String secret = "";
+
+  /** Как часто узел сообщает остальным, что жив. */
+  private Duration heartbeat = Duration.ofMillis(200);
+
+  /** Столько без пакетов от узла — он выбывает из кольца, его диапазон берут соседи. */
+  private Duration failureTimeout = Duration.ofMillis(1500);
+
+  /** Сколько ждём ответа владельца хеша; не дождались — решаем сами (лучше дубль, чем пропуск). */
+  private Duration acquireTimeout = Duration.ofMillis(50);
+
+  /** Виртуальных точек на узел в кольце: больше — ровнее делятся диапазоны. */
+  private int virtualNodes = 64;
+}
@@ -14,13 +14,40 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 public class ControlBot implements SpringLongPollingBot, LongPollingSingleThreadUpdateConsumer {
 
   private final WorkerControlService control;
+  private final ArbPipeline pipeline;
+  private final IoExecutor io;
+  private final ExecutorOutbox outbox;
+  private final ArbEventStore events;
+  private final LiveStats stats;
+  private final RoutingRules routing;
+  private final ArbHashDeduplicator dedup;
+  private final FingerprintDeduplicator fingerprints;
+  private final EventCatalog catalog;
   private final TelegramClient tg;
   private final String token;
 
   public ControlBot(WorkerControlService control,
+                    ArbPipeline pipeline,
+                    IoExecutor io,
+                    ExecutorOutbox outbox,
+                    ArbEventStore events,
+                    LiveStats stats,
+                    RoutingRules routing,
+                    ArbHashDeduplicator dedup,
+                    FingerprintDeduplicator fingerprints,
+                    EventCatalog catalog,
                     TelegramClient tg,
                     @Value("${tg.bot-token}") String token) {
     this.control = control;
+    this.pipeline = pipeline;
+    this.io = io;
+    this.outbox = outbox;
+    this.events = events;
+    this.stats = stats;
+    this.routing = routing;
+    this.dedup = dedup;
+    this.fingerprints = fingerprints;
+    this.catalog = catalog;
     this.tg = tg;
     this.token = token;
   }
@@ -42,26 +69,72 @@ public class ControlBot implements SpringLongPollingBot, LongPollingSingleThread
     long chatId = update.getMessage().getChatId();
     String text = update.getMessage().getText().trim();
 
-    switch (text) {
+    // "/pause" -> все сканеры, "/pause abb" -> только abb
+    String[] parts = text.split("\\s+", 2);
+    String command = parts[0];
+    String scanner = parts.length > 1 ? parts[1].trim().toLowerCase() : null;
+
+    if (!control.isKnown(scanner)) {
+      reply(chatId, "❓ Неизвестный сканер: " + scanner + ". Есть: " + control.scannerNames());
+      return;
+    }
+    String target = scanner == null ? "все сканеры" : scanner;
+
+    switch (command) {
       case "/pause" -> {
-        control.pause();
-        reply(chatId, "⏸ Pause: воркер отпустит ABB-сессию (закроет браузер).");
+        control.pause(scanner);
+        reply(chatId, "⏸ Pause (" + target + "): сканер отпустит сессию (закроет контекст браузера).");
       }
       case "/resume" -> {
-        control.resume();
-        reply(chatId, "▶️ Resume: воркер снова поднимет браузер и залогинится.");
+        control.resume(scanner);
+        reply(chatId, "▶️ Resume (" + target + "): сканер снова поднимет контекст и залогинится.");
       }
       case "/restart" -> {
-        control.restart();
-        reply(chatId, "🔁 Restart: воркер пересоздаст Playwright/Browser и перелогинится.");
+        control.restart(scanner);
+        reply(chatId, "🔁 Restart (" + target + "): сканер пересоздаст контекст браузера и перелогинится.");
       }
       case "/status" -> {
-        reply(chatId, "paused=" + control.isPaused());
+        reply(chatId, statusText());
+      }
+      case "/stats" -> {
+        reply(chatId, stats.statsText(pipeline.telegramQueue() + ", io in flight " + io.inFlight()));
+      }
+      case "/top" -> {
+        reply(chatId, stats.topText());
+      }
+      case "/latency" -> {
+        reply(chatId, stats.latencyText() + "\n" + pipeline.status());
+      }
+      case "/routes" -> {
+        reply(chatId, routing.rulesText());
       }
       default -> { /* ignore */ }
     }
   }
 
+  private String statusText() {
+    StringBuilder sb = new StringBuilder();
+    for (String name : control.scannerNames()) {
+      sb.append(name)
+          .append(": paused=").append(control.isPaused(name))
+          .append(" running=").append(control.isRunning(name))
+          .append(" stage=").append(control.stage(name));
+      String details = control.status(name);
+      if (!details.isBlank()) sb.append("\n  ").append(details);
+      sb.append("\n");
+    }
+    if (sb.length() == 0) sb.append("no scanners\n");
+    sb.append(control.commandStats()).append('\n');
+    sb.append(pipeline.status()).append('\n').append(io.status())
+        .append('\n').append(outbox.status())
+        .append('\n').append(events.status())
+        .append('\n').append(routing.status())
+        .append('\n').append(dedup.status())
+        .append('\n').append(fingerprints.status())
+        .append('\n').append(catalog.status());
+    return sb.toString().trim();
+  }
+
   private void reply(long chatId, String msg) {
     try {
       tg.executeAsync(SendMessage.builder()
@@ -0,0 +1,38 @@
+package com.carus.integrations;
+
+/** Разбор чисел со страницы агрегатора ("1,95", "2.35%", " 3.10 ") без регулярок и промежуточных строк. */
+final class Decimals {
+
+  // точные степени 10: одно деление даёт тот же double, что Double.parseDouble
+  private static final double[] POW10 = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+  };
+
+  private Decimals() {}
+
+  /**
+   * Берёт цифры и первый разделитель ('.' или ','), остальное пропускает.
+   *
+   * @return значение или NaN, если цифр нет
+   */
+  static double parse(String text) {
+    if (text == null) return Double.NaN;
+    long mantissa = 0;
+    int scale = -1;   // -1 — разделителя ещё не было
+    int digits = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c >= '0' && c <= '9') {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (scale >= 0) scale++;
+          digits++;
+        }
+      } else if ((c == '.' || c == ',') && scale < 0) {
+        scale = 0;
+      }
+    }
+    if (digits == 0) return Double.NaN;
+    return mantissa / POW10[Math.max(0, scale)];
+  }
+}
@@ -0,0 +1,425 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Общий dedup нескольких инстансов: каждый arb_hash принадлежит одному узлу живого кольца
+ * (consistent hashing, {@code virtual-nodes} точек на узел), и только владелец решает, отправлять ли вилку.
+ *
+ * Узлы общаются по UDP: heartbeat раз в {@code heartbeat}, запрос владельцу (ACQUIRE → REPLY) и рассылка
+ * каждого выданного хеша всем узлам (SENT). Поэтому у каждого живого узла есть реплика отправленного:
+ * узел, который хеш уже знает, отвечает «дубль» сам, без сети, а когда владелец выпадает
+ * (нет пакетов {@code failure-timeout}), его диапазон переходит к соседям по кольцу, и они уже знают,
+ * что он раздал. Вернувшийся узел мог пропустить рассылки, пока лежал, но запрашивающий проверяет
+ * свою реплику раньше, чем спрашивает владельца.
+ *
+ * Не дождались ответа владельца ({@code acquire-timeout}) — решаем локально и рассылаем сами:
+ * дубль в чате дешевле пропущенной вилки. UDP без повторов: потерянный SENT — тот же редкий дубль.
+ *
+ * Чужой пакет может занять хеш (вилка не уйдёт) или выдать себя за живой узел, поэтому каждый пакет
+ * подписан HMAC-SHA256 на {@code cluster.secret}, а принимается только с адреса, который в {@code peers}
+ * указан для узла-отправителя. Не прошедшие проверку молча отбрасываются, счётчик — в /status.
+ */
+@Slf4j
+final class DedupCluster implements AutoCloseable {
+
+  private static final byte HEARTBEAT = 1;
+  private static final byte ACQUIRE = 2;
+  private static final byte REPLY = 3;
+  private static final byte SENT = 4;
+
+  private static final int MAX_PACKET = 1024;
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+  // усечённый HMAC-SHA256: подделка подбором 2^128 — с запасом, а пакет короче
+  private static final int TAG_BYTES = 16;
+
+  private final ClusterProperties props;
+  private final ArbHashDeduplicator local;
+  private final String self;
+  private final DatagramChannel channel;
+  private final Map<String, Peer> peers = new LinkedHashMap<>();
+  // Mac не потокобезопасен, а шлют поток сканера, приёмник и heartbeat
+  private final ThreadLocal<Mac> mac;
+
+  private volatile Ring ring;
+  private final Thread receiver;
+  private final ScheduledExecutorService ticker;
+
+  private final AtomicLong nextRequest = new AtomicLong();
+  private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+
+  private final AtomicLong ownedDecisions = new AtomicLong();
+  private final AtomicLong replicaHits = new AtomicLong();
+  private final AtomicLong remoteDecisions = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong served = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final LatencyHistogram remoteLatency = new LatencyHistogram();
+
+  DedupCluster(ClusterProperties props, ArbHashDeduplicator local) throws IOException {
+    this.props = props;
+    this.local = local;
+    this.self = props.getNodeId();
+    if (props.getSecret() == null || props.getSecret().isBlank()) {
+      throw new IllegalStateException("cluster.secret is required when cluster.enabled is true");
+    }
+    SecretKeySpec key = new SecretKeySpec(props.getSecret().getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+    this.mac = ThreadLocal.withInitial(() -> {
+      try {
+        Mac m = Mac.getInstance(MAC_ALGORITHM);
+        m.init(key);
+        return m;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(MAC_ALGORITHM + " unavailable", e);
+      }
+    });
+    for (String p : props.getPeers()) {
+      Peer peer = Peer.parse(p);
+      if (!peer.id.equals(self)) peers.put(peer.id, peer);
+    }
+    this.ring = Ring.of(List.of(self), props.getVirtualNodes());
+
+    this.channel = DatagramChannel.open();
+    channel.bind(address(props.getBind()));
+
+    this.receiver = new Thread(this::receiveLoop, "dedup-cluster-rx");
+    receiver.setDaemon(true);
+    receiver.start();
+
+    this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "dedup-cluster-hb");
+      t.setDaemon(true);
+      return t;
+    });
+    long hb = props.getHeartbeat().toMillis();
+    ticker.scheduleAtFixedRate(this::tick, 0, hb, TimeUnit.MILLISECONDS);
+    log.info("[cluster] {} listening on {}, peers {}", self, props.getBind(), peers.keySet());
+  }
+
+  // =========================
+  // Dedup
+  // =========================
+
+  boolean tryAcquire(String hash, long now) {
+    String owner = ring.owner(hash);
+    if (owner.equals(self)) {
+      ownedDecisions.incrementAndGet();
+      return acquireAndGossip(hash, now);
+    }
+    // реплика: владелец (или прошлый владелец) уже разослал этот хеш
+    if (local.isHeld(hash, now)) {
+      replicaHits.incrementAndGet();
+      return false;
+    }
+
+    long t0 = System.nanoTime();
+    long id = nextRequest.incrementAndGet();
+    Pending w = new Pending(Thread.currentThread());
+    pending.put(id, w);
+    try {
+      send(peers.get(owner).address, ACQUIRE, b -> {
+        b.putLong(id);
+        putString(b, hash);
+        b.putLong(now);
+      });
+      long deadline = t0 + props.getAcquireTimeout().toNanos();
+      while (w.state == 0) {
+        long left = deadline - System.nanoTime();
+        if (left <= 0) break;
+        LockSupport.parkNanos(w, left);
+      }
+    } finally {
+      pending.remove(id);
+    }
+
+    if (w.state == 0) {
+      timeouts.incrementAndGet();
+      return acquireAndGossip(hash, now);
+    }
+    remoteLatency.recordNanos(System.nanoTime() - t0);
+    remoteDecisions.incrementAndGet();
+    local.remember(hash, w.ts);
+    return w.state == Pending.GRANTED;
+  }
+
+  private boolean acquireAndGossip(String hash, long now) {
+    boolean ok = local.acquireLocal(hash, now);
+    if (ok) gossip(hash, now);
+    return ok;
+  }
+
+  private void gossip(String hash, long ts) {
+    for (Peer p : peers.values()) {
+      send(p.address, SENT, b -> {
+        putString(b, hash);
+        b.putLong(ts);
+      });
+    }
+  }
+
+  // =========================
+  // Сеть
+  // =========================
+
+  private void receiveLoop() {
+    ByteBuffer buf = ByteBuffer.allocate(MAX_PACKET);
+    while (channel.isOpen()) {
+      try {
+        buf.clear();
+        SocketAddress from = channel.receive(buf);
+        buf.flip();
+        handle(buf, from);
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException | RuntimeException e) {
+        log.warn("[cluster] bad packet: {}", e.toString());
+      }
+    }
+  }
+
+  private void handle(ByteBuffer b, SocketAddress from) {
+    if (!verify(b)) {
+      rejected.incrementAndGet();
+      return;
+    }
+    byte type = b.get();
+    String sender = getString(b);
+    Peer peer = peers.get(sender);
+    // не из нашего кластера или имя узла с чужого адреса
+    if (peer == null || !peer.address.equals(from)) {
+      rejected.incrementAndGet();
+      return;
+    }
+    peer.lastSeenMs = System.currentTimeMillis();
+
+    switch (type) {
+      case HEARTBEAT -> { }
+      case ACQUIRE -> {
+        long id = b.getLong();
+        String hash = getString(b);
+        long ts = b.getLong();
+        // решаем как владелец, даже если по нашему кольцу владелец другой: виды кольца сходятся за heartbeat
+        boolean ok = local.acquireLocal(hash, ts);
+        long held = ok ? ts : local.heldSince(hash);
+        served.incrementAndGet();
+        send(from, REPLY, r -> {
+          r.putLong(id);
+          r.put(ok ? Pending.GRANTED : Pending.DENIED);
+          r.putLong(held);
+        });
+        if (ok) gossip(hash, ts);
+      }
+      case REPLY -> {
+        Pending w = pending.get(b.getLong());
+        if (w == null) return; // опоздал, уже решили сами
+        byte state = b.get();
+        w.ts = b.getLong();
+        w.state = state;
+        LockSupport.unpark(w.waiter);
+      }
+      case SENT -> {
+        String hash = getString(b);
+        local.remember(hash, b.getLong());
+      }
+      default -> { }
+    }
+  }
+
+  private void tick() {
+    for (Peer p : peers.values()) send(p.address, HEARTBEAT, b -> { });
+
+    long now = System.currentTimeMillis();
+    long timeout = props.getFailureTimeout().toMillis();
+    List<String> alive = new ArrayList<>();
+    alive.add(self);
+    for (Peer p : peers.values()) {
+      if (now - p.lastSeenMs < timeout) alive.add(p.id);
+    }
+    Ring current = ring;
+    if (!current.sameMembers(alive)) {
+      ring = Ring.of(alive, props.getVirtualNodes());
+      log.info("[cluster] members: {}", ring.members());
+    }
+  }
+
+  private interface Body {
+    void write(ByteBuffer b);
+  }
+
+  private void send(SocketAddress to, byte type, Body body) {
+    ByteBuffer b = ByteBuffer.allocate(MAX_PACKET);
+    b.put(type);
+    putString(b, self);
+    body.write(b);
+    Mac m = mac.get();
+    m.update(b.array(), 0, b.position());
+    b.put(m.doFinal(), 0, TAG_BYTES);
+    b.flip();
+    try {
+      channel.send(b, to);
+    } catch (IOException e) {
+      // узел недоступен — выпадет из кольца по failure-timeout
+    }
+  }
+
+  /** Проверяет подпись в хвосте пакета и отрезает её: дальше буфер — только тело. */
+  private boolean verify(ByteBuffer b) {
+    int len = b.remaining() - TAG_BYTES;
+    if (len <= 0) return false;
+    Mac m = mac.get();
+    m.update(b.array(), 0, len);
+    byte[] expected = Arrays.copyOf(m.doFinal(), TAG_BYTES);
+    byte[] tag = Arrays.copyOfRange(b.array(), len, len + TAG_BYTES);
+    if (!MessageDigest.isEqual(expected, tag)) return false;
+    b.limit(len);
+    return true;
+  }
+
+  private static void putString(ByteBuffer b, String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    b.putShort((short) bytes.length);
+    b.put(bytes);
+  }
+
+  private static String getString(ByteBuffer b) {
+    byte[] bytes = new byte[b.getShort()];
+    b.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static InetSocketAddress address(String hostPort) {
+    int colon = hostPort.lastIndexOf(':');
+    return new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+  }
+
+  // =========================
+  // Метрики
+  // =========================
+
+  String status() {
+    return "cluster " + self + ": members " + ring.members()
+        + " | owned " + ownedDecisions.get() + ", replica " + replicaHits.get()
+        + ", remote " + remoteDecisions.get()
+        + " p50/p99=" + LatencyHistogram.formatMicros(remoteLatency.percentileMicros(0.5))
+        + "/" + LatencyHistogram.formatMicros(remoteLatency.percentileMicros(0.99))
+        + ", timeouts " + timeouts.get() + ", served " + served.get() + ", rejected " + rejected.get();
+  }
+
+  @Override
+  public void close() {
+    ticker.shutdownNow();
+    try { channel.close(); } catch (IOException ignored) {}
+    receiver.interrupt();
+  }
+
+  // =========================
+  // Кольцо
+  // =========================
+
+  /** Точки кольца по возрастанию и их узлы; неизменяемое, меняется целиком. */
+  private record Ring(long[] points, String[] owners, List<String> members) {
+
+    static Ring of(List<String> nodes, int virtualNodes) {
+      List<String> sorted = new ArrayList<>(new TreeSet<>(nodes));
+      int n = sorted.size() * virtualNodes;
+      long[][] pairs = new long[n][2];
+      int k = 0;
+      for (int i = 0; i < sorted.size(); i++) {
+        for (int v = 0; v < virtualNodes; v++) {
+          pairs[k][0] = hash64(sorted.get(i) + "#" + v);
+          pairs[k][1] = i;
+          k++;
+        }
+      }
+      Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+      long[] points = new long[n];
+      String[] owners = new String[n];
+      for (int i = 0; i < n; i++) {
+        points[i] = pairs[i][0];
+        owners[i] = sorted.get((int) pairs[i][1]);
+      }
+      return new Ring(points, owners, List.copyOf(sorted));
+    }
+
+    String owner(String key) {
+      int i = Arrays.binarySearch(points, hash64(key));
+      if (i < 0) i = -i - 1;
+      return owners[i == points.length ? 0 : i];
+    }
+
+    boolean sameMembers(List<String> alive) {
+      return members.equals(new ArrayList<>(new TreeSet<>(alive)));
+    }
+  }
+
+  /** FNV-1a с перемешиванием murmur3: одинаковый на всех узлах, в отличие от String.hashCode — 64 бита. */
+  static long hash64(String s) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      h ^= s.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static final class Peer {
+    final String id;
+    final InetSocketAddress address;
+    volatile long lastSeenMs;
+
+    private Peer(String id, InetSocketAddress address) {
+      this.id = id;
+      this.address = address;
+    }
+
+    /** {@code id@host:port} */
+    static Peer parse(String spec) {
+      int at = spec.indexOf('@');
+      if (at <= 0) throw new IllegalArgumentException("cluster peer must be id@host:port: " + spec);
+      return new Peer(spec.substring(0, at).trim(), address(spec.substring(at + 1).trim()));
+    }
+  }
+
+  private static final class Pending {
+    static final byte GRANTED = 1;
+    static final byte DENIED = 2;
+
+    final Thread waiter;
+    volatile byte state;
+    volatile long ts;
+
+    Pending(Thread waiter) {
+      this.waiter = waiter;
+    }
+  }
+}
@@ -0,0 +1,352 @@
+package com.carus.integrations;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Каталог событий букмекеров (event-catalog.books, по умолчанию Stake): название и время начала ->
+ * ссылка на страницу события. Экзекьютору нужна только она, поэтому плечо, событие которого уже в
+ * каталоге, не ходит через редирект ABB; резолвер зовётся только на промах.
+ *
+ * Наполняется ссылками, которые конвейер уже зарезолвил (без query — страница события, а не ставки),
+ * и страницами event-catalog.listings. Название нормализуется как в {@link ArbFingerprint}.
+ * Поиск: сначала точный ключ (букмекер, название, минута начала) в живой карте, потом нечёткий —
+ * то же название среди событий в окне допуска по времени (с event-catalog.fuzzy-names — и похожее
+ * по триграммам). Индекс — неизменяемый снимок
+ * (события по времени начала, списки триграмм по индексу), его перестраивает фоновый поток раз в
+ * event-catalog.refresh; поиск без блокировок.
+ *
+ * Ошибка здесь — ставка не на то событие, поэтому нечёткое совпадение требует времени начала с обеих
+ * сторон; событие из listings без времени находится только по точному названию. Похожие названия
+ * по умолчанию не совпадают: суффикс ("women", "u21", "ii") меняет матч, а похожесть почти не меняет.
+ */
+@Component
+@Slf4j
+public class EventCatalog {
+
+  private static final long NO_START = Long.MIN_VALUE;
+
+  private final EventCatalogProperties props;
+  private final HttpClient http;
+
+  // (букмекер, название, минута начала) -> событие; пишут резолв и listings
+  private final ConcurrentHashMap<String, Entry> live = new ConcurrentHashMap<>();
+  private volatile Map<Integer, BookIndex> index = Map.of();
+  private volatile boolean dirty;
+
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong exactHits = new AtomicLong();
+  private final AtomicLong fuzzyHits = new AtomicLong();
+  private final AtomicLong learned = new AtomicLong();
+  private volatile int listingsOk;
+  private volatile String listingError;
+
+  private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "event-catalog");
+    t.setDaemon(true);
+    return t;
+  });
+
+  public EventCatalog(EventCatalogProperties props) {
+    this.props = props;
+    this.http = HttpClient.newBuilder()
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .connectTimeout(Duration.ofSeconds(10))
+        .build();
+    if (!props.isEnabled()) return;
+
+    long every = props.getRefresh().toMillis();
+    refresher.scheduleWithFixedDelay(this::rebuild, every, every, TimeUnit.MILLISECONDS);
+    if (!props.getListings().isEmpty()) {
+      refresher.scheduleWithFixedDelay(this::fetchListings, 0, props.getListingRefresh().toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  boolean covers(Book book) {
+    return props.isEnabled() && book != null && props.getBooks().contains(book.kind());
+  }
+
+  /** @return ссылка на страницу события или null — промах, нужен резолв */
+  String find(BetLine bet) {
+    if (!covers(bet.book()) || bet.event() == null) return null;
+    lookups.incrementAndGet();
+
+    String name = ArbFingerprint.normalizeEvent(bet.event());
+    long start = minute(bet.startsAt());
+    long now = System.currentTimeMillis();
+    Entry e = live.get(key(bet.book().id(), name, start));
+    // событие из listings без времени — только по точному названию
+    if (e == null && start != NO_START) e = live.get(key(bet.book().id(), name, NO_START));
+    if (e != null && fresh(e, now)) {
+      exactHits.incrementAndGet();
+      return e.url();
+    }
+
+    String url = fuzzy(bet.book().id(), name, start, now);
+    if (url != null) fuzzyHits.incrementAndGet();
+    return url;
+  }
+
+  /** Резолв плеча удался: запоминаем страницу события. */
+  void learn(BetLine bet, String resolvedUrl) {
+    if (!covers(bet.book()) || bet.event() == null) return;
+    String page = eventPage(resolvedUrl);
+    if (page == null) return;
+    put(bet.book().id(), ArbFingerprint.normalizeEvent(bet.event()), minute(bet.startsAt()), page);
+    learned.incrementAndGet();
+  }
+
+  private void put(int bookId, String name, long start, String url) {
+    if (name.isEmpty()) return;
+    Entry e = new Entry(bookId, name, start, url, System.currentTimeMillis(), trigrams(name));
+    Entry old = live.put(key(bookId, name, start), e);
+    if (old == null || !old.url().equals(url)) dirty = true;
+  }
+
+  // =========================
+  // Нечёткий поиск
+  // =========================
+
+  private String fuzzy(int bookId, String name, long start, long now) {
+    // без времени начала нечёткое совпадение слишком рискованно
+    if (start == NO_START) return null;
+    BookIndex idx = index.get(bookId);
+    if (idx == null) return null;
+
+    // события отсортированы по началу: окно допуска — отрезок индексов, в списках триграмм тоже
+    long tolerance = props.getStartTolerance().toMinutes();
+    int lo = lowerBound(idx.starts(), start - tolerance);
+    int hi = lowerBound(idx.starts(), start + tolerance + 1);
+    if (lo >= hi) return null;
+
+    long[] grams = trigrams(name);
+    int[] common = new int[hi - lo];
+    for (long g : grams) {
+      int[] posting = idx.postings().get(g);
+      if (posting == null) continue;
+      for (int i = lowerBound(posting, lo); i < posting.length && posting[i] < hi; i++) common[posting[i] - lo]++;
+    }
+
+    Entry best = null;
+    double bestScore = props.getMinSimilarity();
+    for (int k = 0; k < common.length; k++) {
+      if (common[k] == 0) continue;
+      Entry e = idx.entries()[lo + k];
+      // нормализованное название — отсортированные слова без стоп-слов: равенство = те же слова
+      if (!props.isFuzzyNames() && !e.name().equals(name)) continue;
+      double dice = 2.0 * common[k] / (grams.length + e.grams().length);
+      if (dice < bestScore || !fresh(e, now)) continue;
+      best = e;
+      bestScore = dice;
+    }
+    return best == null ? null : best.url();
+  }
+
+  private static int lowerBound(long[] a, long key) {
+    int lo = 0, hi = a.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < key) lo = mid + 1; else hi = mid;
+    }
+    return lo;
+  }
+
+  private static int lowerBound(int[] a, int key) {
+    int lo = 0, hi = a.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < key) lo = mid + 1; else hi = mid;
+    }
+    return lo;
+  }
+
+  /** Различающиеся триграммы названия с пробелом по краям, отсортированы. */
+  static long[] trigrams(String name) {
+    String s = " " + name + " ";
+    if (s.length() < 3) return new long[0];
+    long[] out = new long[s.length() - 2];
+    for (int i = 0; i < out.length; i++) {
+      out[i] = ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+    Arrays.sort(out);
+    int n = 0;
+    for (int i = 0; i < out.length; i++) {
+      if (i == 0 || out[i] != out[i - 1]) out[n++] = out[i];
+    }
+    return Arrays.copyOf(out, n);
+  }
+
+  /** Новый снимок индекса из живой карты; заодно выбрасывает устаревшее. */
+  private void rebuild() {
+    try {
+      long now = System.currentTimeMillis();
+      if (live.values().removeIf(e -> !fresh(e, now))) dirty = true;
+      if (!dirty) return;
+      dirty = false;
+
+      Map<Integer, List<Entry>> byBook = new HashMap<>();
+      for (Entry e : live.values()) {
+        // без времени в нечёткий поиск не попадают, их находит точный ключ
+        if (e.start() != NO_START) byBook.computeIfAbsent(e.bookId(), k -> new ArrayList<>()).add(e);
+      }
+
+      Map<Integer, BookIndex> next = new HashMap<>();
+      byBook.forEach((book, list) -> {
+        list.sort(Comparator.comparingLong(Entry::start));
+        Entry[] entries = list.toArray(new Entry[0]);
+        long[] starts = new long[entries.length];
+        Map<Long, List<Integer>> building = new HashMap<>();
+        for (int i = 0; i < entries.length; i++) {
+          starts[i] = entries[i].start();
+          for (long g : entries[i].grams()) building.computeIfAbsent(g, k -> new ArrayList<>()).add(i);
+        }
+        Map<Long, int[]> postings = new HashMap<>(building.size() * 2);
+        building.forEach((g, ids) -> postings.put(g, ids.stream().mapToInt(Integer::intValue).toArray()));
+        next.put(book, new BookIndex(entries, starts, postings));
+      });
+      index = next;
+    } catch (RuntimeException e) {
+      log.warn("[catalog] rebuild failed: {}", e.toString());
+    }
+  }
+
+  // =========================
+  // Listings
+  // =========================
+
+  private void fetchListings() {
+    int ok = 0;
+    for (EventCatalogProperties.Listing l : props.getListings()) {
+      try {
+        int n = fetchListing(l);
+        ok++;
+        log.info("[catalog] {} events from {}", n, l.getUrl());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        listingError = l.getUrl() + ": " + e;
+        log.warn("[catalog] listing failed {}", listingError);
+      }
+    }
+    listingsOk = ok;
+    rebuild();
+  }
+
+  private int fetchListing(EventCatalogProperties.Listing l) throws Exception {
+    URI base = URI.create(l.getUrl());
+    HttpResponse<String> resp = http.send(HttpRequest.newBuilder(base).timeout(Duration.ofSeconds(20)).GET().build(),
+        HttpResponse.BodyHandlers.ofString());
+    if (resp.statusCode() != 200) throw new IllegalStateException("HTTP " + resp.statusCode());
+
+    Book book = BookRegistry.of(l.getBook());
+    Pattern p = Pattern.compile(l.getPattern());
+    boolean hasName = p.pattern().contains("(?<name>");
+    boolean hasStart = p.pattern().contains("(?<start>");
+    int n = 0;
+    Matcher m = p.matcher(resp.body());
+    while (m.find()) {
+      String url = base.resolve(m.group("url")).toString();
+      String name = hasName ? m.group("name") : fromSlug(url);
+      long start = hasStart ? parseStart(m.group("start")) : NO_START;
+      if (name == null) continue;
+      put(book.id(), ArbFingerprint.normalizeEvent(name), start, eventPage(url));
+      n++;
+    }
+    return n;
+  }
+
+  /** "/sports/soccer/england/premier-league/41234567-arsenal-fc-chelsea-fc" -> "arsenal fc chelsea fc". */
+  static String fromSlug(String url) {
+    String path = URI.create(url).getPath();
+    if (path == null) return null;
+    String last = path.substring(path.lastIndexOf('/') + 1);
+    last = last.replaceFirst("^\\d+-", "");
+    return last.isEmpty() ? null : last.replace('-', ' ');
+  }
+
+  private static long parseStart(String s) {
+    if (s == null || s.isBlank()) return NO_START;
+    try {
+      if (s.chars().allMatch(Character::isDigit)) {
+        long v = Long.parseLong(s);
+        return (v > 100_000_000_000L ? v / 1000 : v) / 60;
+      }
+      return Instant.parse(s).getEpochSecond() / 60;
+    } catch (RuntimeException e) {
+      return NO_START;
+    }
+  }
+
+  // =========================
+  // Разное
+  // =========================
+
+  /** Ссылка без query и fragment: страница события, а не конкретной ставки. */
+  static String eventPage(String url) {
+    if (url == null || url.isBlank()) return null;
+    int cut = url.length();
+    int q = url.indexOf('?');
+    int h = url.indexOf('#');
+    if (q >= 0) cut = q;
+    if (h >= 0 && h < cut) cut = h;
+    return url.substring(0, cut);
+  }
+
+  private static long minute(Instant t) {
+    return t == null ? NO_START : t.getEpochSecond() / 60;
+  }
+
+  private static String key(int bookId, String name, long start) {
+    return bookId + "|" + name + "|" + start;
+  }
+
+  private boolean fresh(Entry e, long now) {
+    return now - e.seenAtMs() <= props.getTtl().toMillis();
+  }
+
+  public String status() {
+    if (!props.isEnabled()) return "event catalog off";
+    long n = lookups.get();
+    long hits = exactHits.get() + fuzzyHits.get();
+    String s = "event catalog: hit " + (n == 0 ? "—" : Math.round(100.0 * hits / n) + "%")
+        + " (" + exactHits.get() + " exact + " + fuzzyHits.get() + " fuzzy of " + n + ")"
+        + ", " + live.size() + " events " + props.getBooks() + ", learned " + learned.get();
+    if (!props.getListings().isEmpty()) {
+      s += ", listings " + listingsOk + "/" + props.getListings().size()
+          + (listingError != null ? " (last error " + listingError + ")" : "");
+    }
+    return s;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    refresher.shutdownNow();
+  }
+
+  private record Entry(int bookId, String name, long start, String url, long seenAtMs, long[] grams) {}
+
+  /** События букмекера по возрастанию начала; списки триграмм — возрастающие индексы в entries. */
+  private record BookIndex(Entry[] entries, long[] starts, Map<Long, int[]> postings) {}
+}
@@ -0,0 +1,58 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** Каталог событий букмекеров, см. {@link EventCatalog}. */
+@Data
+@ConfigurationProperties(prefix = "event-catalog")
+public class EventCatalogProperties {
+
+  /** Выключен — ссылка на событие всегда через редирект ABB, как раньше. Включать, когда измерено качество попаданий. */
+  private boolean enabled = false;
+
+  /** Для плеч каких букмекеров ищем событие в каталоге. */
+  private List<BookKind> books = new ArrayList<>(List.of(BookKind.STAKE));
+
+  /** Насколько может расходиться время начала у вилки и в каталоге. */
+  private Duration startTolerance = Duration.ofMinutes(10);
+
+  /**
+   * Похожие, но не равные названия (триграммы, порог min-similarity). Выключено — в окне времени
+   * совпадает только то же название с точностью до порядка слов и стоп-слов: "real madrid women" и
+   * "real madrid" похожи на 0.84, а это ставка не на тот матч.
+   */
+  private boolean fuzzyNames = false;
+
+  /** Порог похожести названий по триграммам (Dice, 0..1), только при fuzzy-names. */
+  private double minSimilarity = 0.9;
+
+  /** Как часто перестраивается индекс триграмм (точные совпадения видны сразу). */
+  private Duration refresh = Duration.ofSeconds(30);
+
+  /** Сколько событие живёт в каталоге после того, как его видели последний раз. */
+  private Duration ttl = Duration.ofHours(12);
+
+  /** Страницы со списками событий, которые каталог сам читает по HTTP. */
+  private List<Listing> listings = new ArrayList<>();
+
+  /** Как часто перечитывать listings. */
+  private Duration listingRefresh = Duration.ofMinutes(5);
+
+  @Data
+  public static class Listing {
+    /** Букмекер, чьи события на странице (имя как на ABB, например "Stake"). */
+    private String book;
+    /** Страница или JSON со списком событий. */
+    private String url;
+    /**
+     * Регулярка по телу ответа. Группа {@code url} — ссылка на событие (можно относительную);
+     * {@code name} — название (нет — берётся из slug ссылки); {@code start} — начало, ISO-8601 или epoch-секунды.
+     */
+    private String pattern;
+  }
+}
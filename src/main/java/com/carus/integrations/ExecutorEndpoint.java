@@ -0,0 +1,47 @@
+package com.carus.integrations;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Один адрес экзекьютора (например, по одному на хост AdsPower): свой breaker,
+ * свой WebSocket-канал и нагрузка для выбора наименее занятого.
+ */
+final class ExecutorEndpoint {
+
+  // вес нового замера в сглаженной латентности
+  private static final double EWMA_ALPHA = 0.2;
+
+  final String url;
+  final CircuitBreaker breaker = new CircuitBreaker();
+  final ExecutorWsChannel ws;
+  final AtomicInteger inFlight = new AtomicInteger();
+
+  private volatile double latencyMs;
+  private volatile String lastHealth = "unknown";
+
+  ExecutorEndpoint(String url, BetExecutorProperties props) {
+    this.url = url;
+    this.ws = new ExecutorWsChannel(props, url);
+  }
+
+  void recordLatency(long ms) {
+    double cur = latencyMs;
+    latencyMs = cur == 0 ? ms : cur + EWMA_ALPHA * (ms - cur);
+  }
+
+  double latencyMs() {
+    return latencyMs;
+  }
+
+  void health(String h) {
+    lastHealth = h;
+  }
+
+  String status() {
+    return url + ": " + breaker.status()
+        + " in-flight=" + inFlight.get()
+        + " latency=" + Math.round(latencyMs) + "ms"
+        + " health=" + lastHealth
+        + " " + ws.status();
+  }
+}
@@ -0,0 +1,528 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Надёжная доставка сигналов на экзекьютор (at-least-once).
+ *
+ * Сигнал сначала пишется в append-only журнал на диске и только после fsync считается принятым;
+ * отправитель раздаёт его в {@link IoExecutor} и ретраит с backoff, пока экзекьютор не ответит 202.
+ * После этого в журнал дописывается ACK. Сигнал, который ставить уже поздно (старше
+ * bet-executor.max-signal-age, больше bet-executor.max-attempts попыток) или который экзекьютор
+ * отверг (4xx, кроме 409), не ретраится: в журнал уходит DEAD с причиной, дальше как ACK. Повторная доставка безопасна: у сигнала idempotency key
+ * (arb_hash + номер плеча), экзекьютор по нему отбрасывает дубли.
+ *
+ * Адрес экзекьютора выбирается до первой попытки и пишется в журнал вместе с сигналом (или записью
+ * PIN, если на момент записи все экзекьюторы лежали): ретраи, в том числе после рестарта, идут только
+ * туда — другой экзекьютор не знает idempotency key, и таймаут на A с ретраем на B дал бы две ставки.
+ *
+ * Формат записи: [int len][int crc32][payload], payload = [byte type][long seq][...];
+ * у PUT в конце адрес экзекьютора, у PIN — только адрес, у DEAD — причина строкой.
+ * Один поток-писатель собирает записи пачкой и делает один fsync на пачку (group commit).
+ * На старте журнал проигрывается (оборванный хвост отрезается) и сжимается до недоставленных.
+ */
+@Component
+@Slf4j
+public class ExecutorOutbox {
+
+  private static final String JOURNAL = "outbox.journal";
+
+  private static final byte PUT = 1;
+  private static final byte ACK = 2;
+  // сигнал снят без доставки (устарел, попытки кончились, экзекьютор отверг) — для журнала как ACK
+  private static final byte DEAD = 3;
+  // сигнал закреплён за адресом экзекьютора (если при PUT адреса ещё не было)
+  private static final byte PIN = 4;
+
+  private static final int HTTP_ACCEPTED = 202;
+  // экзекьютор уже видел этот idempotency key — считаем доставленным
+  private static final int HTTP_CONFLICT = 409;
+
+  private static final Duration BASE_BACKOFF = Duration.ofSeconds(1);
+  private static final Duration MAX_BACKOFF = Duration.ofSeconds(60);
+  private static final Duration SENDER_TICK = Duration.ofMillis(200);
+  private static final Duration WRITE_TIMEOUT = Duration.ofSeconds(5);
+
+  // сжимаем журнал, когда ACK'нутого мусора набралось больше этого
+  private static final int COMPACT_AFTER_ACKS = 1000;
+
+  private final BetExecutorClient client;
+  private final BetExecutorProperties props;
+  private final IoExecutor io;
+  private final ArbEventStore events;
+  private final LiveStats stats;
+
+  // недоставленные сигналы по seq; попадают сюда только после fsync
+  private final ConcurrentSkipListMap<Long, Entry> pending = new ConcurrentSkipListMap<>();
+  private final LinkedBlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+  private final Semaphore wake = new Semaphore(0);
+  private final AtomicLong seq = new AtomicLong();
+
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong redeliveries = new AtomicLong();
+  private final AtomicLong lastDeliveryLagMs = new AtomicLong();
+  private final AtomicLong dead = new AtomicLong();
+  private volatile String lastDead = "";
+
+  // живут только на writer
+  private Path journal;
+  private FileChannel channel;
+  private ByteBuffer buf = ByteBuffer.allocateDirect(4096);
+  private int acksSinceCompact;
+
+  private Thread writer;
+  private Thread sender;
+  private volatile boolean running;
+
+  public ExecutorOutbox(BetExecutorClient client, BetExecutorProperties props, IoExecutor io,
+      ArbEventStore events, LiveStats stats) {
+    this.client = client;
+    this.props = props;
+    this.io = io;
+    this.events = events;
+    this.stats = stats;
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    if (!props.isEnabled()) return; // экзекьютор выключен — журнал не открываем
+
+    Path dir = Path.of(props.getOutboxDir());
+    Files.createDirectories(dir);
+    journal = dir.resolve(JOURNAL);
+
+    recover();
+    compact();
+    if (!pending.isEmpty()) {
+      log.info("[outbox] recovered {} undelivered signals", pending.size());
+    }
+
+    running = true;
+    writer = new Thread(this::writeLoop, "executor-outbox-writer");
+    writer.setDaemon(true);
+    writer.start();
+    sender = new Thread(this::sendLoop, "executor-outbox-sender");
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    if (sender != null) sender.interrupt();
+    // writer не прерываем: interrupt закрывает FileChannel посреди записи. Он сам допишет очередь и выйдет.
+    if (writer != null) {
+      try { writer.join(5_000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+    try { if (channel != null) channel.close(); } catch (IOException ignored) {}
+  }
+
+  /**
+   * Кладёт сигнал в журнал и ждёт fsync его пачки. После возврата сигнал переживёт рестарт.
+   *
+   * @return false если записать не удалось (диск, остановка) — тогда сигнала нет ни в журнале, ни в доставке
+   */
+  public boolean enqueue(BetSignal signal) throws InterruptedException {
+    if (!running) return false;
+
+    Entry e = new Entry(seq.incrementAndGet(), System.currentTimeMillis(), signal);
+    // адрес — в ту же запись: закреплён раньше, чем сигнал может уйти
+    e.endpoint = client.choose();
+    Write w = new Write(PUT, e);
+    writes.add(w);
+    try {
+      w.done.get(WRITE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+      return true;
+    } catch (ExecutionException ex) {
+      log.warn("[outbox] journal write failed for {}: {}", signal.idempotencyKey(), String.valueOf(ex.getCause()));
+      return false;
+    } catch (TimeoutException ex) {
+      // ещё в очереди — забираем, и сигнал точно не будет поставлен; писатель уже взял его в пачку —
+      // он окажется в журнале и уйдёт экзекьютору, так что ждём fsync и не говорим "пропущен"
+      if (writes.remove(w)) {
+        log.warn("[outbox] journal write timed out for {}, signal withdrawn", signal.idempotencyKey());
+        return false;
+      }
+      try {
+        w.done.get();
+        return true;
+      } catch (ExecutionException e2) {
+        log.warn("[outbox] journal write failed for {}: {}", signal.idempotencyKey(), String.valueOf(e2.getCause()));
+        return false;
+      }
+    }
+  }
+
+  public int pendingCount() {
+    return pending.size();
+  }
+
+  /** Возраст самого старого недоставленного сигнала, мс. */
+  public long lagMs() {
+    Map.Entry<Long, Entry> oldest = pending.firstEntry();
+    return oldest == null ? 0 : System.currentTimeMillis() - oldest.getValue().createdAtMs;
+  }
+
+  public String status() {
+    return "outbox: pending=" + pending.size() + " lag=" + lagMs() + "ms"
+        + " delivered=" + delivered.get() + " redeliveries=" + redeliveries.get()
+        + " last-delivery-lag=" + lastDeliveryLagMs.get() + "ms"
+        + " dead=" + dead.get() + (lastDead.isEmpty() ? "" : " (last: " + lastDead + ")")
+        + "\n" + client.channelStatus();
+  }
+
+  // =========================
+  // Sender
+  // =========================
+
+  private void sendLoop() {
+    while (running) {
+      try {
+        wake.tryAcquire(SENDER_TICK.toMillis(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (!props.isEnabled()) continue;
+
+      // устаревшие снимаем и тогда, когда экзекьюторы лежат: иначе pending и lag растут без предела
+      long now = System.currentTimeMillis();
+      long maxAgeMs = props.getMaxSignalAge().toMillis();
+      for (Entry e : pending.values()) {
+        if (now - e.createdAtMs > maxAgeMs && e.inFlight.compareAndSet(false, true)) {
+          kill(e, "expired after " + (now - e.createdAtMs) / 1000 + "s, " + e.attempts + " attempts");
+        }
+      }
+
+      // все breaker'ы открыты — не жжём попытки и backoff, ждём health-пробу
+      if (!client.isAvailable()) continue;
+
+      for (Entry e : pending.values()) {
+        if (e.nextAttemptAtMs > now) continue;
+        // закреплённый адрес лежит — ждём его, попытки не жжём
+        if (e.endpoint != null && !client.isAvailable(e.endpoint)) continue;
+        if (!e.inFlight.compareAndSet(false, true)) continue;
+        io.run("outbox deliver " + e.signal.idempotencyKey(), () -> deliver(e));
+      }
+    }
+  }
+
+  private void deliver(Entry e) {
+    if (e.endpoint == null && !pin(e)) {
+      // ни одного живого экзекьютора: сигнал ещё никуда не уходил, адрес выберем в следующий раз
+      e.nextAttemptAtMs = System.currentTimeMillis() + BASE_BACKOFF.toMillis();
+      e.inFlight.set(false);
+      return;
+    }
+    int attempt = ++e.attempts;
+    if (attempt > 1) redeliveries.incrementAndGet();
+
+    BetExecutorClient.Delivery d = null;
+    long t0 = System.nanoTime();
+    try {
+      d = client.deliver(e.signal, e.frame, e.endpoint);
+    } catch (Exception ex) {
+      log.warn("[outbox] deliver {} attempt {} error={}", e.signal.idempotencyKey(), attempt, ex.getMessage());
+    }
+
+    int status = d == null ? -1 : d.status();
+    boolean ok = status == HTTP_ACCEPTED || status == HTTP_CONFLICT;
+    events.executorOutcome(arbHashOf(e.signal.idempotencyKey()), Math.max(0, status));
+    stats.executorOutcome(ok, System.nanoTime() - t0);
+    if (ok) {
+      pending.remove(e.seq);
+      writes.add(new Write(ACK, e));
+      delivered.incrementAndGet();
+      lastDeliveryLagMs.set(System.currentTimeMillis() - e.createdAtMs);
+      log.atInfo()
+          .addKeyValue("key", e.signal.idempotencyKey())
+          .addKeyValue("signalId", d.signalId())
+          .addKeyValue("via", d.via())
+          .addKeyValue("event", e.signal.event())
+          .addKeyValue("status", status)
+          .addKeyValue("attempts", attempt)
+          .addKeyValue("stage", "executor")
+          .addKeyValue("ms", (System.nanoTime() - t0) / 1_000_000)
+          .log("[executor] accepted signal");
+      return;
+    }
+
+    // экзекьютор разобрал сигнал и отказал (валидация и т.п.): повтор даст то же самое
+    if (status >= 400 && status < 500) {
+      kill(e, "rejected with " + status);
+      return;
+    }
+    if (attempt >= props.getMaxAttempts()) {
+      kill(e, "gave up after " + attempt + " attempts, last status " + status);
+      return;
+    }
+    if (status > 0) {
+      log.info("[outbox] deliver {} attempt {} status={}", e.signal.idempotencyKey(), attempt, status);
+    }
+    long backoff = Math.min(MAX_BACKOFF.toMillis(), BASE_BACKOFF.toMillis() << Math.min(6, attempt - 1));
+    e.nextAttemptAtMs = System.currentTimeMillis() + backoff;
+    e.inFlight.set(false);
+  }
+
+  /**
+   * Закрепляет адрес за сигналом, которому его не досталось при записи, и ждёт fsync записи PIN:
+   * после рестарта ретраи пойдут туда же.
+   */
+  private boolean pin(Entry e) {
+    String url = client.choose();
+    if (url == null) return false;
+    e.endpoint = url;
+    Write w = new Write(PIN, e);
+    writes.add(w);
+    try {
+      w.done.get();
+      return true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return true; // адрес в памяти уже закреплён; журнал допишет writer
+    } catch (ExecutionException ex) {
+      log.warn("[outbox] journal write failed pinning {}: {}", e.signal.idempotencyKey(), String.valueOf(ex.getCause()));
+      return true;
+    }
+  }
+
+  /** Снимает сигнал без доставки: DEAD в журнал, в лог и в /status. inFlight уже у вызывающего. */
+  private void kill(Entry e, String reason) {
+    pending.remove(e.seq);
+    e.deadReason = reason;
+    writes.add(new Write(DEAD, e));
+    dead.incrementAndGet();
+    lastDead = e.signal.idempotencyKey() + " " + reason;
+    log.warn("[outbox] dropped signal {} ({}): {}", e.signal.idempotencyKey(), e.signal.event(), reason);
+  }
+
+  // =========================
+  // Writer (group commit)
+  // =========================
+
+  private void writeLoop() {
+    List<Write> batch = new ArrayList<>();
+    while (running || !writes.isEmpty()) {
+      try {
+        Write first = writes.poll(SENDER_TICK.toMillis(), TimeUnit.MILLISECONDS);
+        if (first == null) continue;
+        batch.add(first);
+      } catch (InterruptedException e) {
+        break;
+      }
+      writes.drainTo(batch);
+      try {
+        for (Write w : batch) append(w.type, w.entry);
+        channel.force(false);
+        for (Write w : batch) {
+          if (w.type == PUT) pending.put(w.entry.seq, w.entry);
+          else if (w.type != PIN) acksSinceCompact++;
+          w.done.complete(null);
+        }
+        if (acksSinceCompact >= COMPACT_AFTER_ACKS) compact();
+      } catch (IOException e) {
+        for (Write w : batch) w.done.completeExceptionally(e);
+      }
+      batch.clear();
+      wake.release();
+    }
+  }
+
+  private void append(byte type, Entry e) throws IOException {
+    ByteBuffer b = encode(type, e);
+    while (b.hasRemaining()) channel.write(b);
+  }
+
+  private ByteBuffer encode(byte type, Entry e) {
+    buf.clear();
+    buf.position(8); // место под len + crc
+    put(Byte.BYTES + Long.BYTES).put(type).putLong(e.seq);
+    if (type == PUT) {
+      BetSignal s = e.signal;
+      put(Long.BYTES).putLong(e.createdAtMs);
+      putString(s.idempotencyKey());
+      putString(s.event());
+      putString(s.market());
+      putString(s.odds() == null ? null : s.odds().toPlainString());
+      putString(s.amount() == null ? null : s.amount().toPlainString());
+      putString(s.eventUrl());
+      putString(e.endpoint);
+    } else if (type == PIN) {
+      putString(e.endpoint);
+    } else if (type == DEAD) {
+      putString(e.deadReason);
+    }
+    int len = buf.position() - 8;
+
+    CRC32 crc = new CRC32();
+    crc.update(buf.duplicate().position(8).limit(8 + len));
+    buf.putInt(0, len).putInt(4, (int) crc.getValue());
+    return buf.flip();
+  }
+
+  private void putString(String s) {
+    if (s == null) {
+      put(Integer.BYTES).putInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    put(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes);
+  }
+
+  /** Буфер, в котором гарантированно есть n свободных байт. */
+  private ByteBuffer put(int n) {
+    if (buf.remaining() < n) {
+      ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(buf.capacity() * 2, buf.position() + n));
+      bigger.put(buf.flip());
+      buf = bigger;
+    }
+    return buf;
+  }
+
+  // =========================
+  // Recovery / compaction
+  // =========================
+
+  private void recover() throws IOException {
+    if (!Files.exists(journal)) return;
+
+    ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(journal));
+    long maxSeq = 0;
+    int validEnd = 0;
+    while (in.remaining() >= 8) {
+      int len = in.getInt();
+      int crc = in.getInt();
+      if (len <= 0 || len > in.remaining()) break;
+
+      CRC32 c = new CRC32();
+      c.update(in.duplicate().limit(in.position() + len));
+      if ((int) c.getValue() != crc) break;
+
+      int end = in.position() + len;
+      byte type = in.get();
+      long s = in.getLong();
+      maxSeq = Math.max(maxSeq, s);
+      if (type == PUT) {
+        long createdAtMs = in.getLong();
+        BetSignal signal = new BetSignal(getString(in), getString(in), getString(in),
+            toDecimal(getString(in)), toDecimal(getString(in)), getString(in));
+        Entry e = new Entry(s, createdAtMs, signal);
+        // журналы до закрепления адреса его не пишут
+        if (in.position() < end) e.endpoint = getString(in);
+        pending.put(s, e);
+      } else if (type == PIN) {
+        Entry e = pending.get(s);
+        if (e != null) e.endpoint = getString(in);
+      } else if (type == ACK || type == DEAD) {
+        pending.remove(s);
+      }
+      in.position(end);
+      validEnd = end;
+    }
+
+    if (validEnd < in.limit()) {
+      log.warn("[outbox] journal has a torn tail, dropped {} bytes", in.limit() - validEnd);
+    }
+    seq.set(maxSeq);
+
+    // после долгого простоя ставить по старым коэффициентам нельзя; compact() следом их и вычистит
+    long now = System.currentTimeMillis();
+    long maxAgeMs = props.getMaxSignalAge().toMillis();
+    for (Entry e : List.copyOf(pending.values())) {
+      if (now - e.createdAtMs <= maxAgeMs) continue;
+      pending.remove(e.seq);
+      dead.incrementAndGet();
+      lastDead = e.signal.idempotencyKey() + " expired before restart";
+      log.warn("[outbox] dropped signal {} ({}): {}s old on restart", e.signal.idempotencyKey(), e.signal.event(),
+          (now - e.createdAtMs) / 1000);
+    }
+  }
+
+  /** Переписывает журнал: только недоставленные PUT. Вызывать до старта writer'а или на нём. */
+  private void compact() throws IOException {
+    if (channel != null) channel.close();
+
+    Path tmp = journal.resolveSibling(JOURNAL + ".tmp");
+    channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    for (Entry e : pending.values()) append(PUT, e);
+    channel.force(false);
+    channel.close();
+    Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    acksSinceCompact = 0;
+  }
+
+  /** idempotency key = arb_hash:leg */
+  private static String arbHashOf(String idempotencyKey) {
+    int colon = idempotencyKey.lastIndexOf(':');
+    return colon < 0 ? idempotencyKey : idempotencyKey.substring(0, colon);
+  }
+
+  private static String getString(ByteBuffer in) {
+    int len = in.getInt();
+    if (len < 0) return null;
+    byte[] bytes = new byte[len];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static BigDecimal toDecimal(String s) {
+    return s == null ? null : new BigDecimal(s);
+  }
+
+  private static final class Entry {
+    final long seq;
+    final long createdAtMs;
+    final BetSignal signal;
+    // кадр сериализуется один раз и переиспользуется во всех попытках доставки
+    final String frame;
+    volatile String endpoint;
+    // причина для записи DEAD
+    volatile String deadReason;
+
+    final AtomicBoolean inFlight = new AtomicBoolean();
+    volatile int attempts;
+    volatile long nextAttemptAtMs;
+
+    Entry(long seq, long createdAtMs, BetSignal signal) {
+      this.seq = seq;
+      this.createdAtMs = createdAtMs;
+      this.signal = signal;
+      this.frame = BetSignalCodec.toJson(signal);
+    }
+  }
+
+  private record Write(byte type, Entry entry, CompletableFuture<Void> done) {
+    Write(byte type, Entry entry) {
+      this(type, entry, new CompletableFuture<>());
+    }
+  }
+}
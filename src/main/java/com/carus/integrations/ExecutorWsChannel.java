@@ -0,0 +1,216 @@
+package com.carus.integrations;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Постоянное WebSocket-соединение с одним адресом экзекьютора (bet-executor.channel: ws).
+ *
+ * Кадр сигнала уходит готовой строкой, экзекьютор отвечает ack-кадром с тем же idempotencyKey
+ * и своим signalId. Без нового TCP/HTTP на каждый сигнал доставка в LAN укладывается в доли мс.
+ *
+ * Соединение поднимается лениво; если его нет или кадр не удалось записать в сокет,
+ * {@link #send} возвращает null и {@link BetExecutorClient} уходит в REST. Если кадр ушёл, а ack не пришёл
+ * за {@link #ACK_TIMEOUT}, экзекьютор мог сигнал уже взять: это ошибка транспорта, повтор делает outbox
+ * и только по WS (тот же idempotencyKey экзекьютор узнает), в REST такой сигнал больше не уходит.
+ * Переподключение не чаще раза в {@link #RECONNECT_EVERY}.
+ */
+@Slf4j
+final class ExecutorWsChannel {
+
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+  private static final Duration ACK_TIMEOUT = Duration.ofSeconds(2);
+  private static final Duration RECONNECT_EVERY = Duration.ofSeconds(5);
+
+  private final BetExecutorProperties props;
+  private final String baseUrl;
+  private final HttpClient http = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+
+  private final Map<String, CompletableFuture<BetSignalCodec.Ack>> awaiting = new ConcurrentHashMap<>();
+  // idempotencyKey -> когда кадр ушёл без ack; такие сигналы повторяем только по WS
+  private final Map<String, Long> unacked = new ConcurrentHashMap<>();
+  // у WebSocket может быть только одна незавершённая отправка; ReentrantLock, а не synchronized — зовут из виртуальных потоков
+  private final ReentrantLock sendLock = new ReentrantLock();
+  private final ReentrantLock connectLock = new ReentrantLock();
+
+  private volatile WebSocket ws;
+  private volatile long nextConnectAtMs;
+
+  private final AtomicLong acks = new AtomicLong();
+  private final AtomicLong fallbacks = new AtomicLong();
+  private final AtomicLong noAcks = new AtomicLong();
+  private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+  ExecutorWsChannel(BetExecutorProperties props, String baseUrl) {
+    this.props = props;
+    this.baseUrl = baseUrl;
+  }
+
+  boolean enabled() {
+    return props.isEnabled() && "ws".equalsIgnoreCase(props.getChannel());
+  }
+
+  boolean isUp() {
+    WebSocket w = ws;
+    return w != null && !w.isOutputClosed() && !w.isInputClosed();
+  }
+
+  /**
+   * Отправляет готовый кадр и ждёт ack.
+   *
+   * @return ack или null, если кадр не ушёл (канал недоступен) — тогда шлём по REST
+   * @throws IllegalStateException кадр ушёл без ack или уже уходил так раньше, а канал сейчас лежит:
+   *                               повторять по WS, не по REST
+   */
+  BetSignalCodec.Ack send(String idempotencyKey, String frame) throws InterruptedException {
+    WebSocket w = connection();
+    if (w == null) return fallback(idempotencyKey);
+
+    CompletableFuture<BetSignalCodec.Ack> ack = new CompletableFuture<>();
+    awaiting.put(idempotencyKey, ack);
+    long start = System.nanoTime();
+    boolean written = false;
+    try {
+      sendLock.lockInterruptibly();
+      try {
+        written = true;                  // дальше кадр мог уйти, даже если get() прервут
+        w.sendText(frame, true).get(ACK_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+      } catch (ExecutionException e) {
+        // запись в сокет упала — экзекьютор кадр не получил
+        log.warn("[executor-ws] send of {} failed: {}", idempotencyKey, e.getCause().toString());
+        drop(w);
+        return fallback(idempotencyKey);
+      } finally {
+        sendLock.unlock();
+      }
+      BetSignalCodec.Ack a = ack.get(ACK_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+      ackLatency.recordNanos(System.nanoTime() - start);
+      acks.incrementAndGet();
+      unacked.remove(idempotencyKey);
+      return a;
+    } catch (ExecutionException | TimeoutException e) {
+      // кадр ушёл (или мог уйти при таймауте записи): экзекьютор, возможно, уже ставит
+      markUnacked(idempotencyKey);
+      drop(w);
+      noAcks.incrementAndGet();
+      throw new IllegalStateException("no ack from " + baseUrl + " for " + idempotencyKey + ": " + e);
+    } catch (InterruptedException e) {
+      // прервали посреди записи или ожидания ack: кадр мог уйти, по REST этот ключ больше не шлём
+      if (written) markUnacked(idempotencyKey);
+      throw e;
+    } finally {
+      awaiting.remove(idempotencyKey, ack);
+    }
+  }
+
+  private BetSignalCodec.Ack fallback(String idempotencyKey) {
+    if (unacked.containsKey(idempotencyKey)) {
+      throw new IllegalStateException("ws to " + baseUrl + " is down, " + idempotencyKey + " already went over it");
+    }
+    fallbacks.incrementAndGet();
+    return null;
+  }
+
+  private void markUnacked(String idempotencyKey) {
+    long now = System.currentTimeMillis();
+    unacked.put(idempotencyKey, now);
+    // старше maxSignalAge outbox их уже не повторяет
+    long cutoff = now - props.getMaxSignalAge().toMillis();
+    unacked.values().removeIf(t -> t < cutoff);
+  }
+
+  String status() {
+    if (!enabled()) return "ws=off";
+    return "ws=" + (isUp() ? "up" : "down")
+        + " acks=" + acks.get() + " noAcks=" + noAcks.get() + " fallbacks=" + fallbacks.get()
+        + " ack p50/p99=" + LatencyHistogram.formatMicros(ackLatency.percentileMicros(0.5))
+        + "/" + LatencyHistogram.formatMicros(ackLatency.percentileMicros(0.99));
+  }
+
+  void close() {
+    WebSocket w = ws;
+    ws = null;
+    if (w != null) {
+      try { w.sendClose(WebSocket.NORMAL_CLOSURE, "shutdown"); } catch (Exception ignored) {}
+    }
+  }
+
+  private WebSocket connection() throws InterruptedException {
+    if (isUp()) return ws;
+    if (System.currentTimeMillis() < nextConnectAtMs) return null;
+
+    connectLock.lockInterruptibly();
+    try {
+      if (isUp()) return ws;
+      if (System.currentTimeMillis() < nextConnectAtMs) return null;
+
+      URI uri = URI.create(baseUrl.replaceFirst("^http", "ws") + props.getWsPath());
+      try {
+        ws = http.newWebSocketBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .buildAsync(uri, new Listener())
+            .get(CONNECT_TIMEOUT.toMillis() * 2, TimeUnit.MILLISECONDS);
+        log.info("[executor-ws] connected to {}", uri);
+        return ws;
+      } catch (ExecutionException | TimeoutException e) {
+        log.warn("[executor-ws] connect to {} failed: {}", uri, e.toString());
+        nextConnectAtMs = System.currentTimeMillis() + RECONNECT_EVERY.toMillis();
+        return null;
+      }
+    } finally {
+      connectLock.unlock();
+    }
+  }
+
+  private void drop(WebSocket w) {
+    if (ws == w) ws = null;
+    nextConnectAtMs = System.currentTimeMillis() + RECONNECT_EVERY.toMillis();
+    try { w.abort(); } catch (Exception ignored) {}
+    awaiting.values().forEach(f -> f.completeExceptionally(new IllegalStateException("connection dropped")));
+  }
+
+  private final class Listener implements WebSocket.Listener {
+    private final StringBuilder partial = new StringBuilder();
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+      partial.append(data);
+      if (last) {
+        BetSignalCodec.Ack ack = BetSignalCodec.parseAck(partial.toString());
+        partial.setLength(0);
+        if (ack != null && "ack".equals(ack.type()) && ack.idempotencyKey() != null) {
+          CompletableFuture<BetSignalCodec.Ack> f = awaiting.get(ack.idempotencyKey());
+          if (f != null) f.complete(ack);
+        }
+      }
+      webSocket.request(1);
+      return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+      log.info("[executor-ws] closed by executor: {} {}", statusCode, reason);
+      drop(webSocket);
+      return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+      log.warn("[executor-ws] error: {}", error.toString());
+      drop(webSocket);
+    }
+  }
+}
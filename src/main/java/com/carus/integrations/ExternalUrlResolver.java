@@ -0,0 +1,19 @@
+package com.carus.integrations;
+
+/**
+ * Резолвит ссылку агрегатора (ABB bet-link и т.п.) в прямую ссылку на букмекера.
+ * Реализацию даёт сканер: только он знает, через какую вкладку/сессию ходить.
+ */
+@FunctionalInterface
+public interface ExternalUrlResolver {
+
+  ExternalUrlResolver NONE = url -> null;
+
+  /** @return внешний URL или null, если не удалось. Не бросает. */
+  String resolve(String aggregatorUrl);
+
+  /** То же для плеча: реализация с кэшем может использовать букмекера и событие. */
+  default String resolve(BetLine bet) {
+    return resolve(bet.abbBetUrl());
+  }
+}
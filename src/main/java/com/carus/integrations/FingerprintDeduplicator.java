@@ -0,0 +1,81 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Второй уровень dedup, после {@link ArbHashDeduplicator}: по {@link ArbFingerprint}, со своим коротким TTL.
+ * Ловит ту же вилку под новым arb_hash (ABB пересчитал её после сдвига линии) и ту же вилку из другого сканера.
+ * Только в своём процессе и без снимка на диск: после рестарта карта пустая, и в пределах TTL
+ * вилка, уже ушедшая под старым arb_hash и пересчитанная ABB, может уйти ещё раз. Тот же arb_hash
+ * по-прежнему ловит {@link ArbHashDeduplicator} со снимком; редкий повтор дешевле второго снимка.
+ */
+@Component
+public class FingerprintDeduplicator {
+
+  private final boolean enabled;
+  private final long ttlMs;
+
+  private final ConcurrentHashMap<Long, Long> sentAtMs = new ConcurrentHashMap<>();
+  private final AtomicLong checked = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "fingerprint-cleaner");
+    t.setDaemon(true);
+    return t;
+  });
+
+  public FingerprintDeduplicator(@Value("${dedup.fingerprint.enabled:true}") boolean enabled,
+      @Value("${dedup.fingerprint.ttl:20m}") Duration ttl) {
+    this.enabled = enabled;
+    this.ttlMs = ttl.toMillis();
+    long every = Math.max(1_000, ttlMs / 2);
+    cleaner.scheduleWithFixedDelay(this::cleanup, every, every, TimeUnit.MILLISECONDS);
+  }
+
+  /** @return false — такая вилка уже уходила в пределах TTL под другим arb_hash */
+  public boolean tryAcquire(ArbHeader header, List<BetLine> bets) {
+    if (!enabled || bets == null || bets.isEmpty()) return true;
+    checked.incrementAndGet();
+
+    long fp = ArbFingerprint.of(header, bets);
+    long now = System.currentTimeMillis();
+    AtomicBoolean allowed = new AtomicBoolean();
+    sentAtMs.compute(fp, (k, old) -> {
+      if (old == null || now - old > ttlMs) {
+        allowed.set(true);
+        return now;
+      }
+      return old;
+    });
+    if (!allowed.get()) dropped.incrementAndGet();
+    return allowed.get();
+  }
+
+  private void cleanup() {
+    long cutoff = System.currentTimeMillis() - ttlMs;
+    sentAtMs.values().removeIf(ts -> ts < cutoff);
+  }
+
+  public String status() {
+    if (!enabled) return "fingerprint dedup off";
+    return "fingerprint dedup: " + dropped.get() + " of " + checked.get() + " new arb_hash were repeats"
+        + " (ttl " + ttlMs / 60_000 + "m, " + sentAtMs.size() + " live)";
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    cleaner.shutdownNow();
+  }
+}
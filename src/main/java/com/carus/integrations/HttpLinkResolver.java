@@ -0,0 +1,231 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Резолв ABB bet-ссылок без браузера: цепочка редиректов проходится обычным HTTP-клиентом
+ * с cookies и User-Agent, выгруженными из контекста вкладки резолвера.
+ *
+ * На каждом шаге берём {@code Location} из 3xx, а у 200 — meta refresh или JS-редирект, но только если
+ * страница — заглушка редиректа: не длиннее {@link #MAX_STUB_BODY} и без оболочки приложения ABB. В полной
+ * странице (доска, лендинг) такие строки бывают не про эту ссылку — её отдаём браузеру. Без рендера
+ * и без скриптов. Первый адрес не на allbestbets.com —
+ * это ссылка букмекера; к самому букмекеру не ходим. Если цепочка не разобралась или ABB отправил
+ * на логин (cookies устарели — тогда они перечитываются в фоне), ссылка уходит в браузерную вкладку.
+ *
+ * Потокобезопасен, резолвы идут параллельно (HttpClient, без очереди вкладки).
+ */
+@Slf4j
+final class HttpLinkResolver {
+
+  // заглушка редиректа — сотни байт; длиннее — уже страница приложения
+  private static final int MAX_STUB_BODY = 8 * 1024;
+  // не чаще — даже если выгрузка не удалась или сессия снова протухла
+  private static final long IDENTITY_RETRY_MS = 10_000;
+
+  private static final Pattern META_REFRESH = Pattern.compile(
+      "<meta[^>]+http-equiv\\s*=\\s*[\"']?refresh[\"']?[^>]*content\\s*=\\s*[\"']?\\s*\\d*\\s*;?\\s*url\\s*=\\s*([^\"'>\\s]+)",
+      Pattern.CASE_INSENSITIVE);
+  private static final Pattern JS_ASSIGN = Pattern.compile(
+      "(?:window\\.|document\\.|top\\.)?location(?:\\.href)?\\s*=\\s*[\"']([^\"']+)[\"']");
+  private static final Pattern JS_CALL = Pattern.compile(
+      "location\\.(?:replace|assign)\\(\\s*[\"']([^\"']+)[\"']");
+  // признаки страницы приложения: доска, корень SPA, навигация, layout Rails
+  private static final Pattern APP_SHELL = Pattern.compile(
+      "arbs-list|id\\s*=\\s*[\"']app[\"']|<nav[\\s>]|csrf-token", Pattern.CASE_INSENSITIVE);
+
+  private final AbbProperties.HttpResolve props;
+  private final AbbResolverTab identitySource;
+  private final CookieManager cookies = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
+  private final HttpClient http;
+
+  private volatile String userAgent;
+  private volatile long identityAtMs;
+  private volatile long identityTriedMs;
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+
+  private final AtomicLong viaHttp = new AtomicLong();
+  private final AtomicLong viaBrowser = new AtomicLong();
+  private final AtomicLong staleSession = new AtomicLong();
+  private final LatencyHistogram httpLatency = new LatencyHistogram();
+  private final LatencyHistogram browserLatency = new LatencyHistogram();
+
+  /** @param identitySource вкладка, из контекста которой берём cookies и User-Agent */
+  HttpLinkResolver(AbbProperties.HttpResolve props, AbbResolverTab identitySource) {
+    this.props = props;
+    this.identitySource = identitySource;
+    this.http = HttpClient.newBuilder()
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .connectTimeout(props.getHopTimeout())
+        .cookieHandler(cookies)
+        .build();
+  }
+
+  /** Первичная выгрузка cookies; блокирует до ответа вкладки. */
+  void loadIdentity() throws InterruptedException {
+    apply(identitySource.identity());
+  }
+
+  /**
+   * Резолвер: сначала HTTP, при неудаче — данная вкладка браузера.
+   * Один HttpLinkResolver обслуживает и основную вкладку, и вкладку prefetch.
+   */
+  ExternalUrlResolver over(ExternalUrlResolver browser) {
+    return url -> resolve(url, browser);
+  }
+
+  private String resolve(String abbBetUrl, ExternalUrlResolver browser) {
+    if (abbBetUrl == null || abbBetUrl.isBlank()) return null;
+
+    if (props.isEnabled()) {
+      refreshIdentityIfStale();
+      long t0 = System.nanoTime();
+      String url = follow(abbBetUrl);
+      if (url != null) {
+        httpLatency.recordNanos(System.nanoTime() - t0);
+        viaHttp.incrementAndGet();
+        return url;
+      }
+    }
+
+    long t0 = System.nanoTime();
+    String url = browser.resolve(abbBetUrl);
+    browserLatency.recordNanos(System.nanoTime() - t0);
+    viaBrowser.incrementAndGet();
+    return url;
+  }
+
+  /** @return ссылка букмекера или null, если без браузера не получилось */
+  private String follow(String start) {
+    URI uri;
+    try {
+      uri = URI.create(start);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+
+    for (int hop = 0; hop < props.getMaxHops(); hop++) {
+      if (!isAbb(uri)) return uri.toString();
+      if (uri.getPath() != null && uri.getPath().contains("/users/sign_in")) {
+        // сессия в cookies протухла: перечитаем из браузера, этот резолв — через вкладку
+        staleSession.incrementAndGet();
+        identityAtMs = 0;
+        return null;
+      }
+
+      HttpRequest.Builder req = HttpRequest.newBuilder(uri)
+          .timeout(props.getHopTimeout())
+          .header("Accept", "text/html,application/xhtml+xml,*/*;q=0.8")
+          .GET();
+      String ua = userAgent;
+      if (ua != null) req.header("User-Agent", ua);
+
+      String next;
+      try {
+        HttpResponse<InputStream> resp = http.send(req.build(), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = resp.body()) {
+          int code = resp.statusCode();
+          if (code >= 300 && code < 400) {
+            next = resp.headers().firstValue("Location").orElse(null);
+          } else if (code == 200) {
+            // на байт больше предела: так видно, что страница длиннее заглушки
+            byte[] html = body.readNBytes(MAX_STUB_BODY + 1);
+            next = html.length > MAX_STUB_BODY ? null : htmlRedirect(new String(html, StandardCharsets.UTF_8));
+          } else {
+            return null;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      } catch (IOException | IllegalArgumentException e) {
+        return null;
+      }
+
+      if (next == null || next.isBlank()) return null;
+      try {
+        uri = uri.resolve(next.trim().replace("&amp;", "&"));
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /** @return цель редиректа из заглушки или null, если это страница приложения или редиректа в ней нет */
+  static String htmlRedirect(String html) {
+    if (APP_SHELL.matcher(html).find()) return null;
+    for (Pattern p : new Pattern[] {META_REFRESH, JS_CALL, JS_ASSIGN}) {
+      Matcher m = p.matcher(html);
+      if (m.find()) return m.group(1);
+    }
+    return null;
+  }
+
+  private static boolean isAbb(URI uri) {
+    String host = uri.getHost();
+    return host != null && host.toLowerCase(Locale.ROOT).endsWith("allbestbets.com");
+  }
+
+  // =========================
+  // Cookies / User-Agent
+  // =========================
+
+  /** Перечитывает cookies в фоне: резолв не ждёт очереди вкладки. */
+  private void refreshIdentityIfStale() {
+    long now = System.currentTimeMillis();
+    if (now - identityAtMs < props.getIdentityRefresh().toMillis()) return;
+    if (now - identityTriedMs < IDENTITY_RETRY_MS) return;
+    if (!refreshing.compareAndSet(false, true)) return;
+    identityTriedMs = now;
+    Thread.ofVirtual().name("http-resolver-identity").start(() -> {
+      try {
+        apply(identitySource.identity());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        log.warn("[http-resolver] cookie refresh failed: {}", e.toString());
+      } finally {
+        refreshing.set(false);
+      }
+    });
+  }
+
+  private void apply(AbbResolverTab.Identity id) {
+    if (id == null) return;
+    BrowserCookies.seed(cookies.getCookieStore(), id.cookies());
+    if (id.userAgent() != null) userAgent = id.userAgent();
+    identityAtMs = System.currentTimeMillis();
+  }
+
+  // =========================
+  // Метрики
+  // =========================
+
+  String status() {
+    long h = viaHttp.get();
+    long b = viaBrowser.get();
+    return "http-resolve " + (props.isEnabled() ? "" : "off ")
+        + h + "/" + (h + b)
+        + " p50/p99=" + LatencyHistogram.formatMicros(httpLatency.percentileMicros(0.5))
+        + "/" + LatencyHistogram.formatMicros(httpLatency.percentileMicros(0.99))
+        + ", browser " + b
+        + " p50=" + LatencyHistogram.formatMicros(browserLatency.percentileMicros(0.5))
+        + (staleSession.get() > 0 ? ", stale session " + staleSession.get() : "");
+  }
+}
@@ -0,0 +1,81 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Исходящий блокирующий I/O (Telegram, экзекьютор, загрузка скриншотов): каждая отправка —
+ * отдельный виртуальный поток. Ретраи со sleep паркуют виртуальный поток, а не платформенный,
+ * так что тысячи отправок в полёте не держат тысячи потоков ОС.
+ *
+ * На остановке все незавершённые отправки прерываются (shutdownNow), ретраи на interrupt выходят.
+ */
+@Component
+@Slf4j
+public class IoExecutor {
+
+  private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+
+  private final ExecutorService executor =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("io-", 0).factory());
+
+  private final AtomicLong inFlight = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  /**
+   * Запускает задачу в своём виртуальном потоке.
+   * Future завершается исключением, если задача упала или executor уже остановлен.
+   */
+  public CompletableFuture<Void> run(String what, Runnable task) {
+    inFlight.incrementAndGet();
+    try {
+      return CompletableFuture.runAsync(task, executor).whenComplete((v, e) -> {
+        inFlight.decrementAndGet();
+        if (e == null) {
+          completed.incrementAndGet();
+        } else {
+          failed.incrementAndGet();
+          // runAsync заворачивает причину в CompletionException — в лог саму причину
+          Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+          log.warn("[io] {} failed: {}", what, cause.toString());
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.decrementAndGet();
+      log.warn("[io] {} rejected: executor is shut down", what);
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  public long inFlight() {
+    return inFlight.get();
+  }
+
+  /** failed — задачи, завершившиеся исключением; для TG это сообщения, которые так и не ушли. */
+  public String status() {
+    return "io: in-flight=" + inFlight.get() + " done=" + completed.get() + " failed=" + failed.get();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+        log.warn("[io] {} sends still running after shutdown", inFlight.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.carus.integrations;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Лёгкая log-linear гистограмма латентностей (в духе HdrHistogram): 8 под-корзин на каждую
+ * степень двойки микросекунд, т.е. погрешность перцентиля не больше ~12%.
+ * Запись — один incrementAndGet, без блокировок; перцентили считаются по 500 корзинам.
+ */
+final class LatencyHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB = 1 << SUB_BITS;
+  private static final int LINEAR = SUB * 2;                     // 0..15 мкс — точные корзины
+  private static final int BUCKETS = LINEAR + (64 - SUB_BITS - 1) * SUB;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  void recordNanos(long nanos) {
+    recordMicros(Math.max(0, nanos / 1_000));
+  }
+
+  void recordMicros(long micros) {
+    counts.incrementAndGet(index(micros));
+  }
+
+  long count() {
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+    return n;
+  }
+
+  /** @param q 0..1, например 0.99 @return верхняя граница корзины, мкс; 0 если пусто */
+  long percentileMicros(double q) {
+    return percentileMicros(q, List.of(this));
+  }
+
+  /** Перцентиль по объединению нескольких гистограмм (окна {@link RollingHistogram}). */
+  static long percentileMicros(double q, List<LatencyHistogram> hs) {
+    long total = 0;
+    for (LatencyHistogram h : hs) total += h.count();
+    if (total == 0) return 0;
+    long rank = (long) Math.ceil(q * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      for (LatencyHistogram h : hs) seen += h.counts.get(i);
+      if (seen >= rank) return upperBound(i);
+    }
+    return upperBound(BUCKETS - 1);
+  }
+
+  /** Сбрасывает счётчики. Не атомарно относительно записи — для метрик это допустимо. */
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+  }
+
+  static String formatMicros(long micros) {
+    if (micros < 1_000) return micros + "us";
+    if (micros < 10_000_000) return String.format(java.util.Locale.US, "%.1fms", micros / 1000.0);
+    return (micros / 1_000_000) + "s";
+  }
+
+  private static int index(long v) {
+    if (v < LINEAR) return (int) v;
+    int exp = 63 - Long.numberOfLeadingZeros(v);          // >= SUB_BITS + 1
+    int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+    int idx = LINEAR + (exp - SUB_BITS - 1) * SUB + sub;
+    return Math.min(idx, BUCKETS - 1);
+  }
+
+  private static long upperBound(int idx) {
+    if (idx < LINEAR) return idx;
+    int exp = (idx - LINEAR) / SUB + SUB_BITS + 1;
+    int sub = (idx - LINEAR) % SUB;
+    return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+  }
+}
@@ -0,0 +1,144 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Живые агрегаты для /stats, /top, /latency. Конвейер и outbox обновляют их по ходу работы
+ * (без блокировок), ответ на команду читает только окна фиксированного размера — историю не сканируем.
+ */
+@Component
+public class LiveStats {
+
+  private static final Duration MINUTE = Duration.ofMinutes(1);
+  private static final Duration HOUR = Duration.ofHours(1);
+  private static final Duration DAY = Duration.ofDays(1);
+
+  private static final Duration LATENCY_SLOT = Duration.ofMinutes(1);
+  private static final Duration LATENCY_WINDOW = Duration.ofMinutes(5);
+  // пары букмекеров: корзины по 5 минут на сутки (~2KB на пару)
+  private static final Duration PAIR_SLOT = Duration.ofMinutes(5);
+  private static final int MAX_PAIRS = 1000;
+  private static final int TOP_N = 10;
+
+  private final RollingCounter accepted = counter();
+  private final RollingCounter dedupHits = counter();
+  private final RollingCounter executorOk = counter();
+  private final RollingCounter executorFailed = counter();
+
+  private final RollingHistogram resolveLatency = new RollingHistogram(LATENCY_SLOT, LATENCY_WINDOW);
+  private final RollingHistogram telegramLatency = new RollingHistogram(LATENCY_SLOT, LATENCY_WINDOW);
+  private final RollingHistogram executorLatency = new RollingHistogram(LATENCY_SLOT, LATENCY_WINDOW);
+
+  private final Map<String, RollingCounter> pairs = new ConcurrentHashMap<>();
+
+  // =========================
+  // Запись
+  // =========================
+
+  /** Результат dedup: hit — вилку уже отправляли. */
+  void dedup(boolean hit, List<BetLine> bets) {
+    if (hit) {
+      dedupHits.increment();
+      return;
+    }
+    accepted.increment();
+    String pair = pairKey(bets);
+    RollingCounter c = pairs.get(pair);
+    if (c == null && pairs.size() < MAX_PAIRS) {
+      c = pairs.computeIfAbsent(pair, k -> new RollingCounter(PAIR_SLOT, DAY));
+    }
+    if (c != null) c.increment();
+  }
+
+  void resolved(long nanos) {
+    resolveLatency.recordNanos(nanos);
+  }
+
+  void telegramSent(long nanos) {
+    telegramLatency.recordNanos(nanos);
+  }
+
+  void executorOutcome(boolean ok, long nanos) {
+    (ok ? executorOk : executorFailed).increment();
+    executorLatency.recordNanos(nanos);
+  }
+
+  // =========================
+  // Ответы на команды
+  // =========================
+
+  /** @param telegramQueue глубина очереди telegram-ступени и отправки в полёте */
+  String statsText(String telegramQueue) {
+    long hits1h = dedupHits.sum(HOUR);
+    long acc1h = accepted.sum(HOUR);
+    long ok1h = executorOk.sum(HOUR);
+    long fail1h = executorFailed.sum(HOUR);
+
+    return "📊 stats\n"
+        + "arbs/min: " + accepted.sum(MINUTE) + " (avg 1h " + fmt(acc1h / 60.0) + ")\n"
+        + "arbs 1h/24h: " + acc1h + "/" + accepted.sum(DAY) + "\n"
+        + "dedup hit ratio 1h: " + pct(hits1h, hits1h + acc1h) + "\n"
+        + "resolver p50/p99 (5m): " + resolveLatency.p50p99() + "\n"
+        + "telegram p50/p99 (5m): " + telegramLatency.p50p99() + ", queue " + telegramQueue + "\n"
+        + "executor success 1h: " + pct(ok1h, ok1h + fail1h) + " (" + ok1h + "/" + (ok1h + fail1h) + ")";
+  }
+
+  String topText() {
+    return "🏆 top book pairs\n"
+        + "1h:\n" + top(HOUR)
+        + "24h:\n" + top(DAY);
+  }
+
+  String latencyText() {
+    return "⏱ latency p50/p99 (5m)\n"
+        + "resolver: " + resolveLatency.p50p99() + " n=" + resolveLatency.count() + "\n"
+        + "telegram: " + telegramLatency.p50p99() + " n=" + telegramLatency.count() + "\n"
+        + "executor: " + executorLatency.p50p99() + " n=" + executorLatency.count();
+  }
+
+  private String top(Duration window) {
+    List<Map.Entry<String, Long>> rows = new ArrayList<>(pairs.size());
+    for (Map.Entry<String, RollingCounter> e : pairs.entrySet()) {
+      long n = e.getValue().sum(window);
+      if (n > 0) rows.add(Map.entry(e.getKey(), n));
+    }
+    if (rows.isEmpty()) return "  —\n";
+    rows.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < Math.min(TOP_N, rows.size()); i++) {
+      sb.append("  ").append(rows.get(i).getKey()).append(": ").append(rows.get(i).getValue()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static String pairKey(List<BetLine> bets) {
+    if (bets == null || bets.size() < 2) return "?";
+    String a = normBook(bets.get(0).book());
+    String b = normBook(bets.get(1).book());
+    return a.compareTo(b) <= 0 ? a + "/" + b : b + "/" + a;
+  }
+
+  private static String normBook(Book book) {
+    return book == null || book.name().isEmpty() ? "?" : book.name();
+  }
+
+  private static String pct(long part, long total) {
+    return total == 0 ? "—" : fmt(100.0 * part / total) + "%";
+  }
+
+  private static String fmt(double v) {
+    return String.format(Locale.US, "%.1f", v);
+  }
+
+  private static RollingCounter counter() {
+    return new RollingCounter(MINUTE, DAY);
+  }
+}
@@ -0,0 +1,34 @@
+package com.carus.integrations;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничитель для шумных логов (консоль страницы, 4xx/5xx ответы): не больше {@code perSecond}
+ * записей в секунду, остальное только считается. Число пропущенных уходит в следующую записанную
+ * запись полем {@code suppressed}, так что всплеск виден, но не забивает очередь логгера.
+ *
+ * Без блокировок: его зовёт поток событий Playwright.
+ */
+final class LogSampler {
+
+  private final int perSecond;
+  private final AtomicLong window = new AtomicLong();
+  private final AtomicLong inWindow = new AtomicLong();
+  private final AtomicLong suppressed = new AtomicLong();
+
+  LogSampler(int perSecond) {
+    this.perSecond = perSecond;
+  }
+
+  /** @return -1 — не логировать; иначе сколько записей пропущено до этой */
+  long tryAcquire() {
+    long second = System.currentTimeMillis() / 1000;
+    long w = window.get();
+    if (w != second && window.compareAndSet(w, second)) inWindow.set(0);
+    if (inWindow.incrementAndGet() > perSecond) {
+      suppressed.incrementAndGet();
+      return -1;
+    }
+    return suppressed.getAndSet(0);
+  }
+}
@@ -0,0 +1,57 @@
+package com.carus.integrations;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Потоки, уснувшие в ожидании работы (или места в очереди). Ждущий сначала крутится и уступает,
+ * потом паркуется надолго; тот, кто дал работу, будит одного спящего. Пока спящих нет,
+ * {@link #wakeOne} — одно чтение, без системного вызова.
+ */
+final class Parking {
+
+  private final Set<Thread> parked = ConcurrentHashMap.newKeySet();
+  // страховка, а не опрос: будят через wakeOne, а столько спит поток, которого разбудить забыли
+  private final long maxParkNanos;
+
+  Parking(long maxParkNanos) {
+    this.maxParkNanos = maxParkNanos;
+  }
+
+  /**
+   * Один шаг ожидания: крутимся, потом уступаем, потом спим до {@link #wakeOne} (или maxParkNanos).
+   * ready проверяется уже после того, как поток записался в спящие, — иначе его могли бы не разбудить.
+   */
+  void idle(int round, BooleanSupplier ready) {
+    if (round < 64) {
+      Thread.onSpinWait();
+    } else if (round < 128) {
+      Thread.yield();
+    } else {
+      Thread t = Thread.currentThread();
+      parked.add(t);
+      try {
+        if (!ready.getAsBoolean()) LockSupport.parkNanos(this, maxParkNanos);
+      } finally {
+        parked.remove(t);
+      }
+    }
+  }
+
+  /** Будит один спящий поток; вынимает его из спящих, чтобы следующий вызов разбудил другой. */
+  void wakeOne() {
+    if (parked.isEmpty()) return;
+    for (Thread t : parked) {
+      if (parked.remove(t)) {
+        LockSupport.unpark(t);
+        return;
+      }
+    }
+  }
+
+  void wakeAll() {
+    parked.forEach(LockSupport::unpark);
+  }
+}
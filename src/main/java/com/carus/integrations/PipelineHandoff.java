@@ -0,0 +1,171 @@
+package com.carus.integrations;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Передача недоделанной работы конвейера между запусками: на остановке всё, что не успело
+ * пройти ступени, пишется в файл (JSON, по строке на вилку вместе с именем ступени), на старте
+ * читается и кладётся обратно в ту же ступень. Букмекеры заново интернируются по имени.
+ * Вместе с вилкой пишется время, когда её прочитал сканер: старше {@code shutdown.handoff-max-age} не проигрываем.
+ */
+@Slf4j
+final class PipelineHandoff {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private PipelineHandoff() {}
+
+  /** Вилка и ступень, с которой её продолжать. */
+  record Entry(String stage, ArbJob job) {}
+
+  static void save(Path file, List<Entry> entries) throws IOException {
+    Files.createDirectories(file.getParent());
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      for (Entry e : entries) {
+        w.write(MAPPER.writeValueAsString(toJson(e)));
+        w.newLine();
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Читает файл и удаляет его; битые строки пропускает, вилки старше {@code maxAge} (и без времени,
+   * из старого формата) выбрасывает — к этому моменту коэффициенты давно другие.
+   */
+  static List<Entry> load(Path file, Function<String, ExternalUrlResolver> resolvers, Duration maxAge)
+      throws IOException {
+    List<Entry> out = new ArrayList<>();
+    if (!Files.exists(file)) return out;
+    int stale = 0;
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      if (line.isBlank()) continue;
+      try {
+        Entry e = fromJson(MAPPER.readTree(line), resolvers);
+        if (isStale(e.job(), maxAge)) {
+          stale++;
+        } else {
+          out.add(e);
+        }
+      } catch (Exception e) {
+        log.warn("[handoff] skipping broken entry: {}", e.toString());
+      }
+    }
+    Files.delete(file);
+    if (stale > 0) log.info("[handoff] dropped {} arbs older than {}s", stale, maxAge.toSeconds());
+    return out;
+  }
+
+  static boolean isStale(ArbJob job, Duration maxAge) {
+    return job.queuedAtMs <= 0 || System.currentTimeMillis() - job.queuedAtMs > maxAge.toMillis();
+  }
+
+  // =========================
+  // JSON
+  // =========================
+
+  private static ObjectNode toJson(Entry e) {
+    ArbJob j = e.job();
+    ObjectNode n = MAPPER.createObjectNode();
+    n.put("stage", e.stage());
+    n.put("source", j.source);
+    n.put("arbHash", j.arbHash);
+    n.put("queuedAt", j.queuedAtMs);
+
+    ArbHeader h = j.header;
+    if (h != null) {
+      ObjectNode hn = n.putObject("header");
+      hn.put("percent", h.percentText());
+      hn.put("percentClass", h.percentClass());
+      hn.put("sport", h.sport());
+      hn.put("period", h.period());
+      hn.put("updatedAt", h.updatedAt());
+    }
+    bets(n.putArray("bets"), j.bets);
+    if (j.resolved != null) bets(n.putArray("resolved"), j.resolved);
+    if (j.stakes != null) {
+      ArrayNode s = n.putArray("stakes");
+      for (double d : j.stakes) s.add(d);
+    }
+    if (j.message != null) n.put("message", j.message);
+    if (j.route != null) {
+      ObjectNode r = n.putObject("route");
+      r.put("rule", j.route.rule());
+      r.put("chatId", j.route.chatId());
+      r.put("executor", j.route.executor());
+    }
+    return n;
+  }
+
+  private static void bets(ArrayNode arr, List<BetLine> bets) {
+    if (bets == null) return;
+    for (BetLine b : bets) {
+      ObjectNode bn = arr.addObject();
+      bn.put("book", b.book().name());
+      bn.put("date", b.date());
+      bn.put("event", b.event());
+      bn.put("league", b.league());
+      bn.put("market", b.market());
+      bn.put("odd", b.oddText());
+      bn.put("depth", b.depth());
+      bn.put("abbBetUrl", b.abbBetUrl());
+      bn.put("resolvedUrl", b.resolvedUrl());
+    }
+  }
+
+  private static Entry fromJson(JsonNode n, Function<String, ExternalUrlResolver> resolvers) {
+    String source = text(n, "source");
+    JsonNode hn = n.path("header");
+    ArbHeader header = hn.isObject()
+        ? ArbHeader.parse(text(hn, "percent"), text(hn, "percentClass"), text(hn, "sport"),
+            text(hn, "period"), text(hn, "updatedAt"))
+        : null;
+
+    ArbJob job = new ArbJob(source, text(n, "arbHash"), header, bets(n.path("bets")), resolvers.apply(source));
+    job.queuedAtMs = n.path("queuedAt").asLong(0);
+    if (n.has("resolved")) job.resolved = bets(n.path("resolved"));
+    if (n.has("stakes")) {
+      JsonNode s = n.path("stakes");
+      job.stakes = new double[s.size()];
+      for (int i = 0; i < s.size(); i++) job.stakes[i] = s.get(i).asDouble();
+    }
+    job.message = text(n, "message");
+    JsonNode r = n.path("route");
+    if (r.isObject()) {
+      job.route = new RoutingRules.Decision(text(r, "rule"), text(r, "chatId"), r.path("executor").asBoolean(true));
+    }
+    return new Entry(text(n, "stage"), job);
+  }
+
+  private static List<BetLine> bets(JsonNode arr) {
+    List<BetLine> out = new ArrayList<>(arr.size());
+    for (JsonNode bn : arr) {
+      BetLine b = BetLine.parse(text(bn, "book"), text(bn, "date"), text(bn, "event"), text(bn, "league"),
+          text(bn, "market"), text(bn, "odd"), text(bn, "depth"), text(bn, "abbBetUrl"));
+      String resolved = text(bn, "resolvedUrl");
+      out.add(resolved == null ? b : b.withResolvedUrl(resolved));
+    }
+    return out;
+  }
+
+  private static String text(JsonNode n, String field) {
+    JsonNode v = n.get(field);
+    return v == null || v.isNull() ? null : v.asText();
+  }
+}
@@ -0,0 +1,205 @@
+package com.carus.integrations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Одна ступень конвейера: свой {@link RingBuffer} на входе, свой пул потоков, своя политика
+ * при переполнении и свои метрики (глубина очереди, ожидание в очереди, время обработки).
+ *
+ * Пустая очередь: потоки ступени крутятся, потом спят, пока {@link #offer} их не разбудит ({@link Parking}),
+ * так что простаивающая ступень не жжёт CPU. Так же ждёт места производитель при BLOCK.
+ */
+@Slf4j
+final class PipelineStage<T> {
+
+  enum Backpressure {
+    /** Производитель ждёт место (ничего не теряем, медленная ступень тормозит предыдущие). */
+    BLOCK,
+    /** Новый элемент отбрасывается. */
+    DROP_NEWEST,
+    /** Выкидываем самый старый элемент очереди, новый кладём. */
+    DROP_OLDEST
+  }
+
+  @FunctionalInterface
+  interface Handler<T> {
+    void handle(T item) throws Exception;
+  }
+
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final String name;
+  private final RingBuffer<Slot<T>> queue;
+  private final int threads;
+  private final Backpressure backpressure;
+  private final Handler<T> handler;
+
+  private final List<Thread> workers = new ArrayList<>();
+  // потоки ступени ждут элемент, производители при BLOCK — место
+  private final Parking idleWorkers = new Parking(MAX_PARK_NANOS);
+  private final Parking blockedProducers = new Parking(MAX_PARK_NANOS);
+  private volatile boolean running;
+
+  // взятые из очереди, но не обработанные до конца; нужны drain'у, чтобы не потерять их на остановке
+  private final Set<T> busy = ConcurrentHashMap.newKeySet();
+  private final Set<T> unfinished = ConcurrentHashMap.newKeySet();
+  // принято в очередь и ещё не обработано; растёт до того, как элемент виден потокам, поэтому без гонки с isIdle
+  private final AtomicLong pending = new AtomicLong();
+
+  private final AtomicLong processed = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final LatencyHistogram queueWait = new LatencyHistogram();
+  private final LatencyHistogram service = new LatencyHistogram();
+
+  PipelineStage(String name, int capacity, int threads, Backpressure backpressure, Handler<T> handler) {
+    this.name = name;
+    this.queue = new RingBuffer<>(capacity);
+    this.threads = threads;
+    this.backpressure = backpressure;
+    this.handler = handler;
+  }
+
+  synchronized void start() {
+    if (running) return;
+    running = true;
+    for (int i = 0; i < threads; i++) {
+      Thread t = new Thread(this::workLoop, "pipeline-" + name + "-" + i);
+      t.setDaemon(true);
+      workers.add(t);
+      t.start();
+    }
+  }
+
+  synchronized void stop() {
+    running = false;
+    workers.forEach(Thread::interrupt);
+    workers.clear();
+    blockedProducers.wakeAll();
+  }
+
+  /**
+   * Останавливает ступень и отдаёт всё, что она не доделала: очередь, элементы, на которых
+   * обработчик прервали, и элементы потоков, не успевших выйти за joinTimeout.
+   */
+  synchronized List<T> stopAndCollect(long joinTimeoutMs) throws InterruptedException {
+    List<Thread> ws = new ArrayList<>(workers);
+    stop();
+    long deadline = System.currentTimeMillis() + joinTimeoutMs;
+    for (Thread t : ws) t.join(Math.max(1, deadline - System.currentTimeMillis()));
+
+    List<T> left = new ArrayList<>(unfinished);
+    for (T item : busy) {
+      if (!unfinished.contains(item)) left.add(item);
+    }
+    unfinished.clear();
+    for (Slot<T> s = queue.poll(); s != null; s = queue.poll()) left.add(s.item());
+    return left;
+  }
+
+  /** Очередь пуста и ни один поток ничего не обрабатывает. */
+  boolean isIdle() {
+    return pending.get() == 0;
+  }
+
+  /** @return false если элемент не принят (переполнение по политике или ступень остановлена) */
+  boolean offer(T item) {
+    Slot<T> slot = new Slot<>(item, System.nanoTime());
+    pending.incrementAndGet();
+    if (queue.offer(slot)) {
+      idleWorkers.wakeOne();
+      return true;
+    }
+
+    switch (backpressure) {
+      case DROP_NEWEST -> {
+        pending.decrementAndGet();
+        dropped.incrementAndGet();
+        return false;
+      }
+      case DROP_OLDEST -> {
+        while (!queue.offer(slot)) {
+          if (queue.poll() != null) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+          }
+        }
+        idleWorkers.wakeOne();
+        return true;
+      }
+      default -> {
+        int idle = 0;
+        while (!queue.offer(slot)) {
+          if (!running || Thread.currentThread().isInterrupted()) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+          }
+          blockedProducers.idle(++idle, () -> queue.size() < queue.capacity() || !running);
+        }
+        idleWorkers.wakeOne();
+        return true;
+      }
+    }
+  }
+
+  private void workLoop() {
+    int idle = 0;
+    while (running) {
+      Slot<T> slot = queue.poll();
+      if (slot == null) {
+        idleWorkers.idle(++idle, () -> queue.size() > 0 || !running);
+        continue;
+      }
+      idle = 0;
+      blockedProducers.wakeOne();
+
+      long start = System.nanoTime();
+      queueWait.recordNanos(start - slot.enqueuedNanos());
+      T item = slot.item();
+      busy.add(item);
+      try {
+        handler.handle(item);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        unfinished.add(item);
+      } catch (Exception e) {
+        failed.incrementAndGet();
+        log.atWarn().addKeyValue("stage", name).addKeyValue("ms", (System.nanoTime() - start) / 1_000_000)
+            .log("[pipeline {}] handler failed: {}", name, e.toString());
+      } finally {
+        busy.remove(item);
+        pending.decrementAndGet();
+      }
+      service.recordNanos(System.nanoTime() - start);
+      processed.incrementAndGet();
+    }
+  }
+
+  String name() { return name; }
+  int depth() { return queue.size(); }
+  int capacity() { return queue.capacity(); }
+  long processed() { return processed.get(); }
+  long dropped() { return dropped.get(); }
+  long failed() { return failed.get(); }
+  LatencyHistogram queueWait() { return queueWait; }
+  LatencyHistogram service() { return service; }
+
+  String status() {
+    return name + ": depth=" + depth() + "/" + capacity()
+        + " wait p50/p99=" + LatencyHistogram.formatMicros(queueWait.percentileMicros(0.5))
+        + "/" + LatencyHistogram.formatMicros(queueWait.percentileMicros(0.99))
+        + " work p50/p99=" + LatencyHistogram.formatMicros(service.percentileMicros(0.5))
+        + "/" + LatencyHistogram.formatMicros(service.percentileMicros(0.99))
+        + " done=" + processed() + " dropped=" + dropped() + " failed=" + failed();
+  }
+
+  private record Slot<T>(T item, long enqueuedNanos) {}
+}
@@ -1,189 +1,325 @@
 package com.carus.integrations;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.net.URI;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
-import com.microsoft.playwright.Browser;
 import com.microsoft.playwright.BrowserContext;
-import com.microsoft.playwright.BrowserType;
-import com.microsoft.playwright.Locator;
 import com.microsoft.playwright.Page;
-import com.microsoft.playwright.Playwright;
 import com.microsoft.playwright.PlaywrightException;
-import com.microsoft.playwright.options.Cookie;
 import com.microsoft.playwright.options.LoadState;
 import com.microsoft.playwright.options.WaitUntilState;
-import jakarta.annotation.PreDestroy;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.CommandLineRunner;
-import org.springframework.stereotype.Component;
-
-@Component
-public class PlaywrightWorker implements CommandLineRunner {
-
-  @Value("${abb.email}") private String email;
-  @Value("${abb.password}") private String password;
-  @Value("${bc-game.session-cookies:}") private String bcGameCookies;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Сканер allbestbets.com под одним аккаунтом {@link AbbAccountPool}: держит свой контекст в общем
+ * Chromium ({@link BrowserPool}), читает /arbs и сдаёт вилки в {@link ArbPipeline}.
+ *
+ * Шарды (abb.shards) ему назначает пул. Если их больше одного, остальные вкладки сканируются
+ * параллельно ({@link AbbShardTab}), а результаты сливаются в один поток с dedup по arb_hash.
+ */
+@Slf4j
+public class PlaywrightWorker implements ArbScanner {
+
+  private final String name;
+  private final AbbAccountPool.Account account;
+  private final AbbAccountPool pool;
+  private final String bcGameCookies;
+  private final String stateDir;
 
   private final TelegramSender telegramSender;
-  private final ArbHashDeduplicator arbHashDeduplicator;
-  private final TelegramProperties tgProps;
   private final WorkerControlService control;
-  private final BetExecutorClient betExecutorClient;
-
-
-  public PlaywrightWorker(TelegramSender telegramSender,
-      ArbHashDeduplicator arbHashDeduplicator,
-      TelegramProperties tgProps,
+  // команды этого сканера: на нём ждём паузу, интервал между сканами и шарды
+  private final WorkerControlService.Channel ch;
+  private final ArbPipeline pipeline;
+  private final BrowserPool browserPool;
+  private final AbbProperties abbProps;
+  private final ArbEventStore events;
+  // кэш ссылок букмекеров и упреждающий резолв; переживает перезапуск сессии
+  private final PreResolver preResolver;
+  private final ExternalUrlResolver resolver;
+
+  // читает основную вкладку; у каждой вкладки шарда свой reader со своим кэшем отпечатков
+  private final AbbArbReader reader = new AbbArbReader();
+  private final ShardCoverage coverage = new ShardCoverage();
+  private final AdaptiveScanScheduler scheduler;
+
+  // arb_hash -> updated-at с прошлого скана: по нему считаем, менялась ли доска
+  private Map<String, String> lastUpdatedAt = new HashMap<>();
+
+
+  PlaywrightWorker(AbbAccountPool.Account account,
+      AbbAccountPool pool,
+      TelegramSender telegramSender,
       WorkerControlService control,
-      BetExecutorClient betExecutorClient) {
+      ArbPipeline pipeline,
+      BrowserPool browserPool,
+      AbbProperties abbProps,
+      ArbEventStore events,
+      RoutingRules routing) {
+    this.name = account.name;
+    this.account = account;
+    this.pool = pool;
+    this.bcGameCookies = pool.bcGameCookies();
+    this.stateDir = pool.stateDir();
     this.telegramSender = telegramSender;
-    this.arbHashDeduplicator = arbHashDeduplicator;
-    this.tgProps = tgProps;
     this.control = control;
-    this.betExecutorClient = betExecutorClient;
-  }
-
-  private Playwright pw;
-  private Browser browser;
+    this.ch = control.channel(name);
+    this.pipeline = pipeline;
+    this.browserPool = browserPool;
+    this.abbProps = abbProps;
+    this.events = events;
+    this.preResolver = new PreResolver(name, abbProps.getPreresolve(), routing);
+    // резолвит своими вкладками, пока аккаунт здоров, иначе — вкладками другого аккаунта
+    this.resolver = pool.resolverFor(account);
+
+    AbbProperties.Scan scan = abbProps.getScan();
+    this.scheduler = new AdaptiveScanScheduler(
+        scan.getMinInterval(), scan.getMaxInterval(), scan.getInitialInterval(), scan.getCpuBudget());
+  }
+
+  // Всё ниже живёт только на потоке сканера
+  private BrowserPool.Session session;
   private BrowserContext context;
   private Page page;
 
-  // Отдельная вкладка для резолва внешних ссылок (тихо, без ухода на букмекера)
-  private Page resolverPage;
-
-  // Универсальный capture: поймали внешний document URL -> сюда
-  private final AtomicReference<String> externalCapture = new AtomicReference<>();
+  // Отдельная вкладка для резолва внешних ссылок; её зовут потоки конвейера (через preResolver)
+  private AbbResolverTab resolverTab;
+  // Вкладка упреждающего резолва, её зовёт только поток prefetch
+  private AbbResolverTab prefetchTab;
+  // HTTP-резолв с cookies resolverTab, обе вкладки — запасной путь; читает и /status
+  private volatile HttpLinkResolver linkResolver;
+
+  // HTTP-режим (abb.http-scan): доску читает httpScanner, page стоит на about:blank; null — читает браузер
+  private AbbHttpScanner httpScanner;
+  private long httpRetryAtMs;
+  private String userAgent;
+  // читает /status
+  private volatile String scanMode = "browser";
+  private volatile long httpFallbacks;
+  private volatile String lastFallback;
+
+  // Шарды этой сессии от пула и версия раскладки, по которой они выданы
+  private List<AbbProperties.Shard> shards = List.of();
+  private long planVersion = -1;
+
+  // шумные слушатели страницы
+  private final LogSampler consoleLog = new LogSampler(5);
+  private final LogSampler responseLog = new LogSampler(5);
+
+  // Вкладки шардов 2..N (первый шард — это page)
+  private final List<AbbShardTab> shardTabs = new ArrayList<>();
+  private long cycles;
 
   // === Settings ===
   private static final Duration NAV_TIMEOUT = Duration.ofSeconds(120);
-  private static final Duration LOOP_DELAY = Duration.ofSeconds(5); // скан каждые 5 сек
   private static final Duration RESTART_DELAY = Duration.ofSeconds(10);
   private static final Duration RESOLVE_TIMEOUT = Duration.ofSeconds(15);
+  private static final Duration SHARD_SCAN_TIMEOUT = Duration.ofSeconds(60);
+  private static final int COVERAGE_LOG_EVERY = 12;
 
-  private static final String ABB_BASE = "https://www.allbestbets.com";
+  // кусок ожидания на странице: между кусками проверяем interrupt и команды, Playwright при этом качает события
+  private static final long WAIT_SLICE_MS = 100;
 
-  // Банк под "равную вилку"
-  private static final double TOTAL_BANKROLL_USD = 100.0;
-  private static final Path SESSION_FILE = Paths.get("/app/session.json");
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String status() {
+    return pool.health(account)
+        + " | interval=" + scheduler.currentIntervalMs() + "ms"
+        + " scans/min=" + scheduler.scansPerMinute()
+        + " skipped=" + Math.round(reader.lastSkipRatio() * 100) + "%"
+        + " | shards " + coverage.summary()
+        + " | mode=" + scanMode
+        + (httpScanner != null ? " page=" + httpScanner.lastBytes() / 1024 + "KB" : "")
+        + (httpFallbacks > 0 ? " http fallbacks=" + httpFallbacks + " (" + lastFallback + ")" : "")
+        + " | " + preResolver.status()
+        + (linkResolver != null ? " | " + linkResolver.status() : "");
+  }
 
   @Override
-  public void run(String... args) {
-    while (true) {
+  public void runLoop() throws InterruptedException {
+    try {
+      loop();
+    } finally {
+      safeClose(true);
+    }
+  }
+
+  private void loop() throws InterruptedException {
+    while (!Thread.currentThread().isInterrupted()) {
       try {
-        // если уже в паузе — точно не держим сессию
-        if (control.isPaused()) safeClose();
-        while (control.isPaused()) Thread.sleep(1000);
+        // пауза: сессию не держим, ждём resume на канале команд
+        if (ch.isPaused()) {
+          safeClose();
+          ch.stage("paused");
+          ch.awaitResume();
+          ch.applied();
+        }
+        // открываемся заново в любом случае — рестарт уже выполнен
+        if (control.consumeRestart(name)) ch.applied();
+
+        // аккаунт остывает или шардов на него не хватило — сессию не держим, ждём новой раскладки
+        ch.stage("waiting for shards");
+        AbbAccountPool.Plan plan = pool.plan(account);
+        if (plan.shards().isEmpty()) {
+          safeClose();
+          ch.sleep(1000);
+          continue;
+        }
+        shards = plan.shards();
+        planVersion = plan.version();
 
-        startBrowser();
-        if (!tryOpenArbsWithSession()) {
+        ch.stage("opening board");
+        boolean warm = startBrowser();
+        if (!warm && !tryOpenArbsWithSession()) {
+          ch.stage("login");
           login();
           saveSession();
           openArbsPage();
         }
+        ch.stage("opening tabs");
+        openResolverTab();
+        if (!enterHttpMode()) openShardTabs();
 
-        while (true) {
-          if (control.isPaused()) {
+        while (!Thread.currentThread().isInterrupted()) {
+          if (ch.preempted()) {
             safeClose();                 // ✅ отпускаем ABB-сессию
-            while (control.isPaused()) Thread.sleep(1000);
-            break;                       // после resume — стартанём заново
+            break;                       // пауза или рестарт — на следующем круге
           }
 
-          if (control.consumeRestart()) {
+          if (pool.version(account) != planVersion) {
             safeClose();
-            break;                       // перезапуск цикла (browser+login заново)
+            break;                       // пул переложил шарды: открываемся под новые
           }
 
-          scanArbsOnce();
-          page.waitForTimeout(LOOP_DELAY.toMillis());
+          // интервал подстраивается под активность доски (см. AdaptiveScanScheduler)
+          ch.stage("scan");
+          long delay = scanArbsOnce();
+          ch.stage("idle");
+          pause(delay);
         }
 
+      } catch (WorkerControlService.Preempted e) {
+        // команда пришла посреди скана, логина или ожидания: бросаем работу, не дожидаясь таймаутов
+        safeClose();
+      } catch (InterruptedException e) {
+        throw e;
       } catch (Exception e) {
-        System.out.println("[CRASH] Worker crashed, restarting in " + RESTART_DELAY.toSeconds() + "s. Cause: " + e);
-        e.printStackTrace();
+        log.error("[CRASH] Worker crashed, restarting in {}s", RESTART_DELAY.toSeconds(), e);
         safeClose();
-        try { Thread.sleep(RESTART_DELAY.toMillis()); } catch (InterruptedException ignored) {}
+        ch.stage("crashed");
+        try {
+          ch.sleep(RESTART_DELAY.toMillis());
+        } catch (WorkerControlService.Preempted ignored) {
+          // pause/restart не ждут задержки после падения
+        }
       }
     }
   }
 
+  /**
+   * Ожидание на странице (между сканами, в логине), прерываемое остановкой и командами: pause/restart
+   * выкидывают {@link WorkerControlService.Preempted} не позже чем через {@link #WAIT_SLICE_MS}.
+   * В HTTP-режиме страница пустая — ждём прямо на канале команд.
+   */
+  private void pause(long ms) throws InterruptedException {
+    if (httpScanner != null) {
+      ch.sleep(ms);
+      return;
+    }
+    long end = System.currentTimeMillis() + ms;
+    for (long left = ms; left > 0; left = end - System.currentTimeMillis()) {
+      if (Thread.currentThread().isInterrupted()) throw new InterruptedException("scanner stopping");
+      ch.checkpoint();
+      page.waitForTimeout(Math.min(WAIT_SLICE_MS, left));
+    }
+    ch.checkpoint();
+  }
+
+  private Path sessionFile() {
+    return Paths.get(stateDir, account.sessionFile);
+  }
+
   // =========================
   // Navigation / Login
   // =========================
 
-  private void openArbsPage() {
-    page.waitForTimeout(10_000);
+  private void openArbsPage() throws InterruptedException {
+    pause(10_000);
     page.navigate(
-        "https://www.allbestbets.com/arbs",
+        primaryShardUrl(),
         new Page.NavigateOptions()
             .setWaitUntil(WaitUntilState.DOMCONTENTLOADED)
             .setTimeout(NAV_TIMEOUT.toMillis())
     );
 
-    System.out.println("Login successful: " + page.url());
+    log.info("Login successful: {}", page.url());
 
     try {
       byte[] screenshot = page.screenshot(new Page.ScreenshotOptions().setFullPage(false));
-      telegramSender.sendPhoto("-1003365303378", screenshot, "✅ Login successful");
+      telegramSender.sendPhotoAsync("-1003365303378", screenshot, "✅ Login successful");
     } catch (Exception e) {
-      System.out.println("Screenshot/TG send failed: " + e.getMessage());
+      log.warn("Screenshot/TG send failed: {}", e.getMessage());
     }
   }
 
   /** Пробуем открыть arbs с сохранённой сессией. Возвращает true если сессия жива. */
   private boolean tryOpenArbsWithSession() {
-    if (!Files.exists(SESSION_FILE)) {
-      System.out.println("[session] No saved session, will login");
+    if (!Files.exists(sessionFile())) {
+      log.info("[session] No saved session, will login");
       return false;
     }
     try {
       page.navigate(
-          "https://www.allbestbets.com/arbs",
+          primaryShardUrl(),
           new Page.NavigateOptions()
               .setWaitUntil(WaitUntilState.DOMCONTENTLOADED)
               .setTimeout(NAV_TIMEOUT.toMillis())
       );
       if (page.url().contains("/users/sign_in")) {
-        System.out.println("[session] Session expired, will re-login");
+        log.info("[session] Session expired, will re-login");
         return false;
       }
-      System.out.println("[session] Session valid, skipped login: " + page.url());
+      log.info("[session] Session valid, skipped login: {}", page.url());
       try {
         byte[] screenshot = page.screenshot(new Page.ScreenshotOptions().setFullPage(false));
-        telegramSender.sendPhoto("-1003365303378", screenshot, "✅ Resumed with saved session");
+        telegramSender.sendPhotoAsync("-1003365303378", screenshot, "✅ Resumed with saved session");
       } catch (Exception e) {
-        System.out.println("Screenshot/TG send failed: " + e.getMessage());
+        log.warn("Screenshot/TG send failed: {}", e.getMessage());
       }
       return true;
     } catch (Exception e) {
-      System.out.println("[session] Session check failed: " + e.getMessage());
+      log.warn("[session] Session check failed: {}", e.getMessage());
       return false;
     }
   }
 
   private void saveSession() {
     try {
-      context.storageState(new BrowserContext.StorageStateOptions().setPath(SESSION_FILE));
-      System.out.println("[session] Session saved to " + SESSION_FILE);
+      Files.createDirectories(sessionFile().getParent());
+      context.storageState(new BrowserContext.StorageStateOptions().setPath(sessionFile()));
+      log.info("[session] Session saved to {}", sessionFile());
     } catch (Exception e) {
-      System.out.println("[session] Failed to save session: " + e.getMessage());
+      log.warn("[session] Failed to save session: {}", e.getMessage());
     }
   }
 
-  private void login() {
+  private void login() throws InterruptedException {
     page.navigate(
         "https://www.allbestbets.com/users/sign_in",
         new Page.NavigateOptions()
@@ -194,558 +330,356 @@ public class PlaywrightWorker implements CommandLineRunner {
     page.waitForSelector("input[name='allbestbets_user[email]']");
     page.waitForSelector("input[name='allbestbets_user[password]']");
 
-    page.waitForTimeout(10_000);
-    page.fill("input[name='allbestbets_user[email]']", email);
+    pause(10_000);
+    page.fill("input[name='allbestbets_user[email]']", account.email);
 
-    page.waitForTimeout(10_000);
-    page.fill("input[name='allbestbets_user[password]']", password);
+    pause(10_000);
+    page.fill("input[name='allbestbets_user[password]']", account.password);
 
-    page.waitForTimeout(10_000);
+    pause(10_000);
     page.locator("button[type='submit'], input[type='submit']").first().click();
 
     page.waitForLoadState(LoadState.DOMCONTENTLOADED);
 
+    // уход со страницы логина ждём кусками: pause/restart не ждут двухминутного таймаута
+    long end = System.currentTimeMillis() + NAV_TIMEOUT.toMillis();
+    while (page.url().contains("/users/sign_in") && System.currentTimeMillis() < end) pause(WAIT_SLICE_MS);
     try {
-      page.waitForURL(
-          url -> !url.contains("/users/sign_in"),
-          new Page.WaitForURLOptions()
-              .setTimeout(NAV_TIMEOUT.toMillis())
-              .setWaitUntil(WaitUntilState.DOMCONTENTLOADED)
-      );
+      page.waitForLoadState(LoadState.DOMCONTENTLOADED);
     } catch (PlaywrightException ignored) {}
 
-    System.out.println("Logged in: " + page.url());
+    if (page.url().contains("/users/sign_in")) {
+      pool.signedOut(account, "login rejected");
+      throw new IllegalStateException("[" + name + "] login rejected, still on " + page.url());
+    }
+    log.info("Logged in: {}", page.url());
   }
 
   // =========================
   // Scraping
   // =========================
 
-  private void scanArbsOnce() {
-    Locator arbs = page.locator("#arbs-list ul.arbs-list > li.wrapper.arb.has-2-bets");
-    int n = arbs.count();
-    //System.out.println("Found " + n + " arbs");
-
-    for (int i = 0; i < n; i++) {
-      Locator arb = arbs.nth(i);
-
-      ArbHeader header = readHeader(arb);
-      String arbHash = extractArbHash(arb);
-
-      List<BetLine> betLines = readBets(arb);
-
-      if (shouldSendToTelegram(arbHash)) {
-
-        // 1) считаем "равную вилку" на банк 200$
-        double[] stakes = calcEqualStakesUsd(betLines, TOTAL_BANKROLL_USD);
-
-        // 2) резолвим внешние ссылки ДЛЯ ОБЕИХ контор
-        List<BetLine> resolved = resolveAllExternalUrls(betLines);
-
-        String message = buildTelegramMessage(header, resolved, arbHash, stakes);
-
-        // ✅ chatId берём из конфига tg.*
-        String chatId = selectChatId(resolved);
-        telegramSender.sendText(chatId, message);
-
-        System.out.println(">>> SEND TO TG: " + arbHash + " | " + header.updatedAt);
-
-        // отправляем Stake-ставку на экзакьютор (не влияет на TG-поток)
-        sendToExecutorIfStake(resolved, stakes);
-      }
+  /** @return пауза до следующего скана, мс */
+  private long scanArbsOnce() throws InterruptedException {
+    if (httpScanner == null && abbProps.getHttpScan().isEnabled()
+        && System.currentTimeMillis() >= httpRetryAtMs && enterHttpMode()) {
+      closeShardTabs();
+    }
+    preResolver.scanning(true);
+    try {
+      return scanAndSubmit();
+    } finally {
+      preResolver.scanning(false);
     }
   }
 
-  private void sendToExecutorIfStake(List<BetLine> betLines, double[] stakes) {
-    if (betLines == null) return;
-    for (int i = 0; i < betLines.size(); i++) {
-      BetLine b = betLines.get(i);
-      if (!isBook(b.book, "stake")) continue;
-
-      if (b.resolvedUrl == null || b.resolvedUrl.isBlank()) {
-        System.out.println("[executor] Stake bet found but no resolved URL, skipping");
-        return;
-      }
-
-      String event = betLines.get(0).event;
-      BigDecimal odds = parseOddBD(b.odd);
-      BigDecimal amount = (stakes != null && i < stakes.length)
-          ? BigDecimal.valueOf(stakes[i]).setScale(2, RoundingMode.HALF_UP)
-          : null;
+  private long scanAndSubmit() throws InterruptedException {
+    long t0 = System.nanoTime();
+    List<ShardCoverage.ShardScan> scans = httpScanner != null ? scanOverHttp() : scanInBrowser(t0);
+    if (httpScanner == null && page.url().contains("/users/sign_in")) {
+      // SPA сама ушла на логин: ABB закрыл сессию аккаунта
+      pool.signedOut(account, "signed out while scanning");
+      throw new IllegalStateException("[" + name + "] signed out by ABB");
+    }
+    pool.scanned(account, scans.size());
 
-      if (odds == null || amount == null) {
-        System.out.println("[executor] Cannot parse odds/amount for Stake bet, skipping");
-        return;
+    // один поток без повторов: одна и та же вилка часто видна в нескольких фильтрах
+    Map<String, ScannedArb> merged = new LinkedHashMap<>();
+    for (ShardCoverage.ShardScan scan : scans) {
+      for (ScannedArb a : scan.arbs()) {
+        if (a.arbHash() != null) merged.putIfAbsent(a.arbHash(), a);
       }
-
-      betExecutorClient.sendBetSignal(event, b.market, odds, amount, b.resolvedUrl);
-      return;
     }
-  }
-
-  private BigDecimal parseOddBD(String oddText) {
-    Double d = parseOdd(oddText);
-    return d == null ? null : BigDecimal.valueOf(d).setScale(2, RoundingMode.HALF_UP);
-  }
 
-  private ArbHeader readHeader(Locator arb) {
-    String percent = safeText(arb.locator(".header .percent"));
-    String percentClass = safeAttr(arb.locator(".header .percent"), "class");
-    String sport = safeText(arb.locator(".header .sport-name"));
-
-    String period = safeText(arb.locator(".header .arb-game-period span"));
-    if (period.isBlank()) {
-      period = safeText(arb.locator(".header .period-name"));
+    coverage.record(scans);
+    if (shardTabs.size() > 0 && ++cycles % COVERAGE_LOG_EVERY == 0) {
+      log.info("[shards] {}", coverage.summary());
     }
 
-    String updatedAt = safeText(arb.locator(".header .updated-at"));
-
-    return new ArbHeader(percent, percentClass, sport, period, updatedAt);
-  }
-
-  private List<BetLine> readBets(Locator arb) {
-    Locator bets = arb.locator(".bet-wrapper");
-    int count = bets.count();
+    long scanMs = (System.nanoTime() - t0) / 1_000_000;
+    int changed = countChanged(merged);
 
-    List<BetLine> out = new ArrayList<>(Math.min(count, 3));
-    for (int j = 0; j < count; j++) {
-      out.add(readBet(bets.nth(j)));
+    for (ScannedArb a : merged.values()) {
+      pipeline.submit(name, a.header(), a.bets(), a.arbHash(), resolver);
     }
-    return out;
+    // вся доска, включая то, что dedup уже не пропустит: кандидаты на резолв заранее
+    preResolver.observe(merged.values());
+
+    return scheduler.nextDelayMs(changed, scanMs);
   }
 
-  private BetLine readBet(Locator bet) {
-    String book = safeText(bet.locator(".bookmaker-name a"));
-    String date = safeText(bet.locator(".date"));
-    String event = safeText(bet.locator(".event-name .name a"));
-    String league = safeText(bet.locator(".event-name .league"));
-    String market = safeText(bet.locator(".market a span"));
-    String odd = safeText(bet.locator("a.coefficient-link"));
+  private List<ShardCoverage.ShardScan> scanInBrowser(long t0) throws InterruptedException {
+    // остальные шарды стартуют на своих потоках, первый читаем сами
+    List<Future<ShardCoverage.ShardScan>> pending = new ArrayList<>(shardTabs.size());
+    for (AbbShardTab tab : shardTabs) pending.add(tab.scanAsync());
 
-    // ✅ ссылка может быть на BET-кнопке или на коэффициенте (a.coefficient-link)
-    String href = safeAttr(bet.locator(".bet-button a"), "href");
+    List<ScannedArb> primary = reader.readAll(page);
 
-    if (href == null || href.isBlank()) {
-      href = safeAttr(bet.locator("a.coefficient-link"), "href");
-    }
-    if (href == null || href.isBlank()) {
-      href = safeAttr(bet.locator(".market a"), "href");
+    List<ShardCoverage.ShardScan> scans = new ArrayList<>(pending.size() + 1);
+    scans.add(new ShardCoverage.ShardScan(primaryShard().getName(), primary, (System.nanoTime() - t0) / 1_000_000));
+    try {
+      for (Future<ShardCoverage.ShardScan> f : pending) {
+        scans.add(awaitShard(f));
+      }
+    } catch (WorkerControlService.Preempted e) {
+      pending.forEach(f -> f.cancel(true));
+      throw e;
     }
-
-    String abbBetUrl = toAbsAbbUrl(href);
-
-    String depth = null;
-    Locator depthLoc = bet.locator(".market-dept");
-    if (depthLoc.count() > 0) depth = safeText(depthLoc);
-
-    return new BetLine(book, date, event, league, market, odd, depth, abbBetUrl, null);
+    return scans;
   }
 
-  private String toAbsAbbUrl(String href) {
-    if (href == null) return null;
-    String h = href.trim();
-    if (h.isEmpty()) return null;
-    if (h.startsWith("http://") || h.startsWith("https://")) return h;
-    if (h.startsWith("/")) return ABB_BASE + h;
-    return ABB_BASE + "/" + h;
-  }
-
-  private String extractArbHash(Locator arb) {
-    Locator anyLink = arb.locator("a[href*='arb_hash=']").first();
-    String href = anyLink.getAttribute("href");
-    if (href == null) return null;
-
-    String key = "arb_hash=";
-    int idx = href.indexOf(key);
-    if (idx < 0) return null;
-
-    String tail = href.substring(idx + key.length());
-    int amp = tail.indexOf('&');
-    return (amp >= 0) ? tail.substring(0, amp) : tail;
+  private List<ShardCoverage.ShardScan> scanOverHttp() throws InterruptedException {
+    try {
+      return httpScanner.scan(allShards(), ch);
+    } catch (AbbHttpScanner.Fallback e) {
+      fallbackToBrowser(e.getMessage());
+      return scanInBrowser(System.nanoTime());
+    }
   }
 
   // =========================
-  // Equal stake calc
+  // HTTP-режим
   // =========================
 
-  private double[] calcEqualStakesUsd(List<BetLine> betLines, double total) {
-    if (betLines == null || betLines.size() < 2) return null;
-
-    Double o1 = parseOdd(betLines.get(0).odd);
-    Double o2 = parseOdd(betLines.get(1).odd);
-    if (o1 == null || o2 == null || o1 <= 1.0 || o2 <= 1.0) return null;
-
-    double inv1 = 1.0 / o1;
-    double inv2 = 1.0 / o2;
-    double sum = inv1 + inv2;
-    if (sum <= 0) return null;
-
-    double s1 = total * inv1 / sum;
-    s1 = round2(s1);
-    double s2 = round2(total - s1);
+  /**
+   * Доску дальше читает HTTP-клиент с cookies из свежего session.json, страница ABB закрывается.
+   * @return false — режим выключен или session.json не прочитался, читаем браузером
+   */
+  private boolean enterHttpMode() {
+    AbbProperties.HttpScan hs = abbProps.getHttpScan();
+    if (!hs.isEnabled()) return false;
+    try {
+      saveSession();
+      if (userAgent == null) userAgent = (String) page.evaluate("() => navigator.userAgent");
+      httpScanner = new AbbHttpScanner(hs, sessionFile(), userAgent);
+    } catch (IOException | PlaywrightException e) {
+      log.warn("[http-scan] cannot start, staying in browser: {}", e.toString());
+      httpRetryAtMs = System.currentTimeMillis() + hs.getRetryAfter().toMillis();
+      return false;
+    }
+    // SPA с живыми обновлениями — основной расход CPU и памяти; в HTTP-режиме он не нужен
+    page.navigate("about:blank");
+    scanMode = "http";
+    log.info("[http-scan] reading {} filter(s) over HTTP", allShards().size());
+    return true;
+  }
+
+  /** Сессия протухла или разметка не та: открываем доску в браузере (там же перелогин). */
+  private void fallbackToBrowser(String reason) throws InterruptedException {
+    httpScanner = null;
+    scanMode = "browser";
+    httpFallbacks++;
+    lastFallback = reason;
+    httpRetryAtMs = System.currentTimeMillis() + abbProps.getHttpScan().getRetryAfter().toMillis();
+    log.warn("[http-scan] falling back to browser: {}", reason);
+    if (reason.startsWith("HTTP 429")) pool.throttled(account, reason);
+    else if (reason.equals("session expired")) pool.signedOut(account, "http-scan: " + reason);
 
-    return new double[] { s1, s2 };
+    page.navigate(
+        primaryShardUrl(),
+        new Page.NavigateOptions()
+            .setWaitUntil(WaitUntilState.DOMCONTENTLOADED)
+            .setTimeout(NAV_TIMEOUT.toMillis())
+    );
+    if (page.url().contains("/users/sign_in")) {
+      login();
+      saveSession();
+      openArbsPage();
+    }
+    openShardTabs();
+  }
+
+  /**
+   * Сколько вилок появились или обновились (updated-at) с прошлого скана.
+   * Заодно пишет в историю появление / обновление / исчезновение.
+   */
+  private int countChanged(Map<String, ScannedArb> merged) {
+    Map<String, String> now = new HashMap<>(merged.size() * 2);
+    int changed = 0;
+    for (ScannedArb a : merged.values()) {
+      String updatedAt = a.header().updatedAt();
+      now.put(a.arbHash(), updatedAt);
+      if (!lastUpdatedAt.containsKey(a.arbHash())) {
+        changed++;
+        events.arbObserved(ArbEventStore.SEEN, a);
+      } else if (!Objects.equals(lastUpdatedAt.get(a.arbHash()), updatedAt)) {
+        changed++;
+        events.arbObserved(ArbEventStore.UPDATED, a);
+      }
+    }
+    for (String hash : lastUpdatedAt.keySet()) {
+      if (!now.containsKey(hash)) events.arbGone(hash);
+    }
+    lastUpdatedAt = now;
+    return changed;
   }
 
-  private Double parseOdd(String oddText) {
-    if (oddText == null) return null;
-    String s = oddText.trim();
-    if (s.isEmpty()) return null;
-    s = s.replace(",", ".").replaceAll("[^0-9.]", "");
-    if (s.isEmpty()) return null;
+  private ShardCoverage.ShardScan awaitShard(Future<ShardCoverage.ShardScan> f) throws InterruptedException {
     try {
-      return Double.parseDouble(s);
-    } catch (Exception e) {
-      return null;
+      return ch.await(f, SHARD_SCAN_TIMEOUT.toMillis());
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("shard scan failed", e.getCause());
+    } catch (TimeoutException e) {
+      f.cancel(true);
+      throw new IllegalStateException("shard scan timed out after " + SHARD_SCAN_TIMEOUT.toSeconds() + "s");
     }
   }
 
-  private double round2(double v) {
-    return BigDecimal.valueOf(v).setScale(2, RoundingMode.HALF_UP).doubleValue();
-  }
-
   // =========================
-  // Universal external resolver (ALL books)
+  // Shards
   // =========================
 
-  private List<BetLine> resolveAllExternalUrls(List<BetLine> betLines) {
-    if (betLines == null || betLines.isEmpty()) return betLines;
-
-    List<BetLine> out = new ArrayList<>(betLines.size());
-    for (BetLine b : betLines) {
-      String resolved = resolveExternalUrlFromAbbBetUrl(b.abbBetUrl);
-      resolved = normalizeResolvedUrl(b.book, resolved);
-
-      out.add(new BetLine(
-          b.book, b.date, b.event, b.league, b.market, b.odd, b.depth, b.abbBetUrl, resolved
-      ));
-    }
-    return out;
+  private AbbProperties.Shard primaryShard() {
+    return shards.isEmpty() ? new AbbProperties.Shard("all", "/arbs") : shards.get(0);
   }
 
-  private String resolveExternalUrlFromAbbBetUrl(String abbBetUrl) {
-    if (abbBetUrl == null || abbBetUrl.isBlank() || resolverPage == null) return null;
-
-    externalCapture.set(null);
-    System.out.println("[resolver] navigating to ABB url: " + abbBetUrl);
+  private List<AbbProperties.Shard> allShards() {
+    return shards.isEmpty() ? List.of(primaryShard()) : shards;
+  }
 
-    try {
-      resolverPage.navigate(
-          abbBetUrl,
-          new Page.NavigateOptions()
-              .setWaitUntil(WaitUntilState.DOMCONTENTLOADED)
-              .setTimeout(RESOLVE_TIMEOUT.toMillis())
-      );
-    } catch (PlaywrightException ignored) {}
+  private String primaryShardUrl() {
+    return AbbArbReader.toAbsAbbUrl(primaryShard().getPath());
+  }
 
-    long end = System.currentTimeMillis() + RESOLVE_TIMEOUT.toMillis();
-    while (System.currentTimeMillis() < end) {
-      String got = externalCapture.get();
-      if (got != null && !got.isBlank()) return got;
-      try { resolverPage.waitForTimeout(100); } catch (Exception ignored) {}
-    }
+  /** Резолвер открываем после логина: его контекст берёт cookies из session.json. */
+  private void openResolverTab() throws InterruptedException {
+    if (!Files.exists(sessionFile())) saveSession();
 
-    return externalCapture.get();
-  }
+    resolverTab = new AbbResolverTab(name, RESOLVE_TIMEOUT);
+    resolverTab.open(browserPool, name, sessionFile(), bcGameCookies);
 
-  /** Парсит строку вида "name1=val1; name2=val2" в список Playwright Cookie для домена. */
-  private List<Cookie> parseCookieString(String raw, String domain) {
-    List<Cookie> result = new ArrayList<>();
-    for (String part : raw.split(";")) {
-      String trimmed = part.trim();
-      if (trimmed.isEmpty()) continue;
-      int eq = trimmed.indexOf('=');
-      if (eq < 0) continue;
-      String name = trimmed.substring(0, eq).trim();
-      String value = trimmed.substring(eq + 1).trim();
-      result.add(new Cookie(name, value).setDomain(domain).setPath("/"));
+    if (abbProps.getPreresolve().isEnabled()) {
+      prefetchTab = new AbbResolverTab(name + "-prefetch", RESOLVE_TIMEOUT);
+      prefetchTab.open(browserPool, name + "/prefetch", sessionFile(), bcGameCookies);
     }
-    return result;
-  }
 
-  private boolean isAbbUrl(String url) {
-    if (url == null) return false;
-    String u = url.toLowerCase();
-    return u.contains("allbestbets.com");
+    HttpLinkResolver http = new HttpLinkResolver(abbProps.getHttpResolve(), resolverTab);
+    http.loadIdentity();
+    linkResolver = http;
+    preResolver.attach(http.over(resolverTab), prefetchTab == null ? null : http.over(prefetchTab));
+    pool.resolverUp(account, preResolver);
+    // вилки, не дорезолвленные до прошлой остановки, идут через новый резолвер
+    pipeline.scannerReady(name, resolver);
   }
 
-  private String normalizeResolvedUrl(String book, String url) {
-    if (url == null || url.isBlank()) return url;
+  /** Открывает вкладки шардов 2..N уже после логина: их контексты берут cookies из session.json. */
+  private void openShardTabs() throws InterruptedException {
+    if (shards.size() < 2) return;
 
-    return url;
+    for (AbbProperties.Shard shard : shards.subList(1, shards.size())) {
+      AbbShardTab tab = new AbbShardTab(name, shard);
+      shardTabs.add(tab);
+      tab.open(browserPool, name, sessionFile(), NAV_TIMEOUT);
+    }
+    log.info("[shards] scanning {} filters in parallel", shards.size());
   }
 
-  // =========================
-  // Telegram message
-  // =========================
-
-  private String buildTelegramMessage(
-      ArbHeader h,
-      List<BetLine> bets,
-      String arbHash,
-      double[] stakes
-  ) {
-    String emoji = headerEmoji(h.percentClass);
-
-    String event = bets.isEmpty() ? "" : nullToEmpty(bets.get(0).event);
-    String league = bets.isEmpty() ? "" : nullToEmpty(bets.get(0).league);
-    String date = bets.isEmpty() ? "" : nullToEmpty(bets.get(0).date);
-    String period = nullToEmpty(h.period);
-
-    String timeUntil = formatTimeUntilGame(date);
-
-    StringBuilder sb = new StringBuilder();
-    sb.append("⚡️ ").append(emoji).append(" ").append(nullToEmpty(h.percent));
-    if (!timeUntil.isBlank()) sb.append(" | ").append(timeUntil);
-    sb.append(" | ").append(nullToEmpty(h.sport));
-
-    if (!period.isBlank()) sb.append(" ").append(period);
-    sb.append(" | ").append(nullToEmpty(h.updatedAt)).append("\n");
-
-    if (!event.isBlank()) sb.append("🏟 ").append(event).append("\n");
-    if (!league.isBlank()) sb.append("🏷 ").append(league).append("\n");
-    if (!date.isBlank()) sb.append("🗓 ").append(date).append("\n");
-
-    for (int i = 0; i < bets.size(); i++) {
-      BetLine b = bets.get(i);
-      sb.append(i + 1).append(") ")
-          .append(nullToEmpty(displayBook(b.book))).append(" — ")
-          .append(nullToEmpty(b.market)).append(" @ ")
-          .append(nullToEmpty(b.odd));
-
-      if (stakes != null && i < stakes.length) {
-        sb.append(" | $").append(String.format(java.util.Locale.US, "%.2f", stakes[i]));
-      }
-
-      if (b.depth != null && !b.depth.isBlank()) sb.append(" | depth ").append(b.depth);
-      sb.append("\n");
+  /** Вкладки закрываются параллельно: каждая ждёт свой поток до 10 с, подряд это складывалось. */
+  private void closeShardTabs() {
+    List<Thread> closing = new ArrayList<>(shardTabs.size());
+    for (AbbShardTab tab : shardTabs) {
+      closing.add(Thread.ofVirtual().start(() -> {
+        try { tab.close(); } catch (Exception ignored) {}
+      }));
     }
-
-    // ✅ ссылки на обе конторы (и любые другие)
-    for (BetLine b : bets) {
-      if (b.resolvedUrl != null && !b.resolvedUrl.isBlank()) {
-        sb.append("🎯 ").append(nullToEmpty(displayBook(b.book))).append(": ").append(b.resolvedUrl).append("\n");
+    shardTabs.clear();
+    for (Thread t : closing) {
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
       }
     }
-
-    return sb.toString().trim();
-  }
-
-  private String displayBook(String book) {
-    // точку меняем на пробел, лишние пробелы схлопываем
-    return nullToEmpty(book).replace('.', ' ').replaceAll("\\s+", " ").trim();
-  }
-
-
-  private String headerEmoji(String percentClass) {
-    String c = (percentClass == null ? "" : percentClass).toLowerCase();
-    if (c.contains("green")) return "🟢";
-    if (c.contains("red")) return "🔴";
-    if (c.contains("yellow")) return "🟡";
-    return "⚪️";
-  }
-
-  private String nullToEmpty(String s) {
-    return s == null ? "" : s.trim();
-  }
-
-  // =========================
-  // Filtering / Dedup
-  // =========================
-
-
-  private boolean shouldSendToTelegram(String arbHash) {
-    if (arbHash == null || arbHash.isBlank()) return false;
-    return arbHashDeduplicator.tryAcquire(arbHash);
   }
 
   // =========================
   // Playwright lifecycle
   // =========================
 
-  private void startBrowser() {
-    pw = Playwright.create();
-
-    browser = pw.chromium().launch(new BrowserType.LaunchOptions()
-        .setHeadless(false)
-        .setArgs(List.of(
-            "--no-sandbox",
-            "--disable-dev-shm-usage",
-            "--disable-gpu"
-        )));
-
-    if (Files.exists(SESSION_FILE)) {
-      System.out.println("[session] Loading saved session from " + SESSION_FILE);
-      context = browser.newContext(new Browser.NewContextOptions().setStorageStatePath(SESSION_FILE));
-    } else {
-      context = browser.newContext();
+  /** @return вкладка внешнего Chromium с прошлого запуска уже на доске — навигация и логин не нужны */
+  private boolean startBrowser() {
+    // Chromium общий (или внешний, browser.external-cdp-url), нам — свой контекст с сохранённой ABB-сессией
+    session = browserPool.openWarmSession(name, sessionFile());
+    context = session.context();
+
+    page = warmPage();
+    boolean warm = page != null;
+    if (page == null) {
+      // во внешнем контексте берём уже открытую вкладку, чтобы они не копились от рестарта к рестарту
+      page = session.borrowed() && !context.pages().isEmpty() ? context.pages().get(0) : context.newPage();
     }
 
-    page = context.newPage();
-    resolverPage = context.newPage();
-
-    if (bcGameCookies != null && !bcGameCookies.isBlank()) {
-      List<Cookie> cookies = parseCookieString(bcGameCookies, "bc.game");
-      context.addCookies(cookies);
-      System.out.println("[bc.game] Loaded " + cookies.size() + " session cookies");
-    }
-
-    page.onConsoleMessage(m -> System.out.println("[console] " + m.text()));
-    page.onRequestFailed(r -> System.out.println("[request failed] " + r.url()));
-    page.onResponse(r -> {
-      if (r.status() >= 400) System.out.println("[response " + r.status() + "] " + r.url());
+    // слушатели на потоке событий Playwright: на всплеске (SPA сыпет ошибками) пишем выборочно
+    page.onConsoleMessage(m -> {
+      long skipped = consoleLog.tryAcquire();
+      if (skipped >= 0) log.atInfo().addKeyValue("suppressed", skipped).log("[console] {}", m.text());
     });
-
-    // Универсальный перехват: как только resolverPage уходит на внешний document — сохраняем и abort
-    resolverPage.route("**/*", route -> {
-      String url = route.request().url();
-      String type = route.request().resourceType();
-
-      if ("document".equals(type)) {
-        if (url != null && !isAbbUrl(url)) {
-          System.out.println("[resolver] document redirect -> " + url);
-          externalCapture.compareAndSet(null, url);
-          route.abort();
-          return;
+    page.onRequestFailed(r -> {
+      long skipped = responseLog.tryAcquire();
+      if (skipped >= 0) log.atWarn().addKeyValue("suppressed", skipped).log("[request failed] {}", r.url());
+    });
+    page.onResponse(r -> {
+      if (r.status() >= 400) {
+        long skipped = responseLog.tryAcquire();
+        if (skipped >= 0) {
+          log.atInfo().addKeyValue("status", r.status()).addKeyValue("suppressed", skipped).log("[response] {}", r.url());
         }
       }
-
-      if ("image".equals(type) || "font".equals(type) || "media".equals(type)) {
-        route.abort();
-        return;
-      }
-
-      route.resume();
+      if (r.status() == 429 && r.url().contains("allbestbets.com")) pool.throttled(account, "HTTP 429");
     });
 
     page.setDefaultTimeout(NAV_TIMEOUT.toMillis());
     page.setDefaultNavigationTimeout(NAV_TIMEOUT.toMillis());
 
-    resolverPage.setDefaultTimeout(RESOLVE_TIMEOUT.toMillis());
-    resolverPage.setDefaultNavigationTimeout(RESOLVE_TIMEOUT.toMillis());
+    if (warm) log.info("[session] external Chromium: continuing on open page {}", page.url());
+    return warm;
   }
 
-  @PreDestroy
-  public void onShutdown() {
-    safeClose();
+  private Page warmPage() {
+    if (!session.borrowed()) return null;
+    String board = primaryShardUrl();
+    for (Page p : context.pages()) {
+      if (p.url().startsWith(board)) return p;
+    }
+    return null;
   }
 
   private void safeClose() {
-    try { if (context != null) context.close(); } catch (Exception ignored) {}
-    try { if (browser != null) browser.close(); } catch (Exception ignored) {}
-    try { if (pw != null) pw.close(); } catch (Exception ignored) {}
-
+    safeClose(false);
+  }
+
+  /**
+   * @param keepWarm остановка приложения: вкладку во внешнем Chromium оставляем на доске, следующий
+   *                 запуск продолжит на ней. Пауза, рестарт и падение сканера её закрывают.
+   */
+  private void safeClose(boolean keepWarm) {
+    // сначала то, что видно снаружи: сканер стоит, резолвы уходят на другие аккаунты — команда выполнена
+    preResolver.detach();
+    pool.resolverDown(account);
+    long t0 = System.nanoTime();
+    String command = ch.pendingCommand();
+    long ackMicros = ch.applied();
+    ch.stage("closing");
+
+    closeShardTabs();
+    httpScanner = null;
+    scanMode = "browser";
+    try { if (prefetchTab != null) prefetchTab.close(); } catch (Exception ignored) {}
+    try { if (resolverTab != null) resolverTab.close(); } catch (Exception ignored) {}
+    // keepWarm — последний close из runLoop: поток prefetch больше не нужен (вкладка уже закрыта, он не висит на ней)
+    if (keepWarm) preResolver.close();
+    try { if (session != null && !keepWarm) session.park(); } catch (Exception ignored) {}
+    try { if (session != null) session.close(); } catch (Exception ignored) {}
+
+    resolverTab = null;
+    prefetchTab = null;
+    session = null;
     context = null;
-    browser = null;
-    pw = null;
     page = null;
-    resolverPage = null;
-  }
-
-  // =========================
-  // Helpers
-  // =========================
-
-  private String formatTimeUntilGame(String dateStr) {
-    if (dateStr == null || dateStr.isBlank()) return "";
-    try {
-      LocalDateTime gameTime = null;
-      int year = LocalDate.now().getYear();
-
-      // "dd.MM HH:mm"  →  add current year
-      if (dateStr.matches("\\d{2}\\.\\d{2} \\d{2}:\\d{2}")) {
-        String full = dateStr.substring(0, 5) + "." + year + " " + dateStr.substring(6);
-        gameTime = LocalDateTime.parse(full, DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"));
-      }
-      // "dd.MM.yyyy HH:mm"
-      if (gameTime == null && dateStr.matches("\\d{2}\\.\\d{2}\\.\\d{4} \\d{2}:\\d{2}")) {
-        gameTime = LocalDateTime.parse(dateStr, DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"));
-      }
-
-      if (gameTime == null) return "";
-
-      ZonedDateTime now = ZonedDateTime.now(ZoneId.systemDefault());
-      ZonedDateTime game = gameTime.atZone(ZoneId.systemDefault());
-      long totalMinutes = Duration.between(now, game).toMinutes();
-      if (totalMinutes <= 0) return "";
-
-      long hours = totalMinutes / 60;
-      long minutes = totalMinutes % 60;
-      return hours > 0 ? hours + "ч " + minutes + "м" : minutes + "м";
-    } catch (Exception e) {
-      return "";
+    if (ackMicros >= 0) {
+      log.info("[control] {} {} applied in {}, session released in {}ms", name, command,
+          LatencyHistogram.formatMicros(ackMicros), (System.nanoTime() - t0) / 1_000_000);
     }
   }
-
-  private String safeText(Locator loc) {
-    try {
-      if (loc == null || loc.count() == 0) return "";
-      String t = loc.first().textContent(new Locator.TextContentOptions().setTimeout(0));
-      return t == null ? "" : t.trim();
-    } catch (PlaywrightException e) {
-      return "";
-    }
-  }
-
-  private String safeAttr(Locator loc, String name) {
-    try {
-      if (loc == null || loc.count() == 0) return null;
-      String v = loc.first().getAttribute(name, new Locator.GetAttributeOptions().setTimeout(0));
-      return v == null ? null : v.trim();
-    } catch (PlaywrightException e) {
-      return null;
-    }
-  }
-
-  // ✅ теперь чат берём из tg.* конфига
-  private String selectChatId(List<BetLine> betLines) {
-    String chatId;
-
-    System.out.println(betLines.get(0).book + " " + betLines.get(1).book);
-    if (hasBook(betLines, "game")) {
-      chatId = tgProps.getBcGameChatId();
-    } else if (hasBook(betLines, "pinnacle") && hasBook(betLines, "stake")) {
-      chatId = tgProps.getPinnacleStakeOnlyChatId();
-    } else {
-      chatId = tgProps.getAllOthersChatId();
-    }
-
-    // fallback
-    if (chatId == null || chatId.isBlank()) {
-      chatId = (tgProps.getChatId() != null && !tgProps.getChatId().isBlank())
-          ? tgProps.getChatId()
-          : "-1";
-    }
-    return chatId;
-  }
-
-  private boolean hasBook(List<BetLine> betLines, String needle) {
-    if (betLines == null || betLines.isEmpty()) return false;
-    for (BetLine b : betLines) {
-      if (isBook(b.book, needle)) return true;
-    }
-    return false;
-  }
-
-  private boolean isBook(String book, String needle) {
-    return book != null && book.toLowerCase().contains(needle);
-  }
-
-  // =========================
-  // DTOs
-  // =========================
-
-  private record ArbHeader(String percent, String percentClass, String sport, String period, String updatedAt) {}
-
-  private record BetLine(
-      String book,
-      String date,
-      String event,
-      String league,
-      String market,
-      String odd,
-      String depth,
-      String abbBetUrl,
-      String resolvedUrl
-  ) {}
 }
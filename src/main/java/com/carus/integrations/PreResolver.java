@@ -0,0 +1,362 @@
+package com.carus.integrations;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Резолвер сканера с кэшем и упреждающим резолвом ссылок ABB -> букмекер.
+ *
+ * После каждого скана {@link #observe} видит всю доску, включая вилки, которые dedup уже не пропустит:
+ * плечи, чьих ссылок ещё нет в кэше, становятся кандидатами. Пара букмекер+событие, которая
+ * повторяется на доске (то же событие, другой рынок), стоит выше. Пока сканер ждёт следующего скана,
+ * поток prefetch резолвит лучших кандидатов на своей вкладке, не больше {@code budget-per-minute}
+ * навигаций в минуту, и кладёт результат в кэш. Вилка, прошедшая dedup, берёт ссылку из кэша:
+ * сначала по точной ABB-ссылке, затем (event-level) по букмекеру и событию — ссылка на событие
+ * у букмекера от рынка не зависит.
+ *
+ * Кэш и счётчики живут дольше сессии браузера: вкладки подключаются в {@link #attach} и
+ * отключаются в {@link #detach} при перезапуске сканера. Поток prefetch останавливает {@link #close},
+ * когда runLoop сканера выходит; следующий attach поднимет новый.
+ */
+@Slf4j
+final class PreResolver implements ExternalUrlResolver {
+
+  // повторная попытка для ссылки, которая не зарезолвилась
+  private static final long FAILED_RETRY_MS = 120_000;
+  private static final long MINUTE_MS = 60_000;
+  private static final long IDLE_POLL_MS = 200;
+  // сколько close ждёт поток prefetch после interrupt
+  private static final long PREFETCH_JOIN_MS = 2_000;
+
+  private final String scannerName;
+  private final AbbProperties.PreResolve props;
+  private final RoutingRules routing;
+
+  private volatile ExternalUrlResolver foreground = ExternalUrlResolver.NONE;
+  private volatile ExternalUrlResolver speculative;
+  private volatile boolean scanning;
+  private Thread prefetchThread;
+
+  // abbBetUrl -> ссылка; book id + событие -> ссылка
+  private final Map<String, Cached> byUrl = new ConcurrentHashMap<>();
+  private final Map<String, Cached> byEvent = new ConcurrentHashMap<>();
+  private final Map<String, Candidate> candidates = new ConcurrentHashMap<>();
+
+  // бюджет — только на потоке prefetch
+  private long budgetWindowStart;
+  private volatile int budgetUsed;
+
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong exactHits = new AtomicLong();
+  private final AtomicLong eventHits = new AtomicLong();
+  private final AtomicLong prefetched = new AtomicLong();
+  private final AtomicLong prefetchFailed = new AtomicLong();
+  private final AtomicLong prefetchUsed = new AtomicLong();
+  private volatile int lastMinuteUsed;
+
+  PreResolver(String scannerName, AbbProperties.PreResolve props, RoutingRules routing) {
+    this.scannerName = scannerName;
+    this.props = props;
+    this.routing = routing;
+  }
+
+  /**
+   * Подключает вкладки новой сессии.
+   *
+   * @param speculative вкладка для упреждающих резолвов или null, если prefetch выключен
+   */
+  synchronized void attach(ExternalUrlResolver foreground, ExternalUrlResolver speculative) {
+    this.foreground = foreground;
+    this.speculative = speculative;
+    if (speculative != null && prefetchThread == null) {
+      prefetchThread = new Thread(this::prefetchLoop, "scanner-" + scannerName + "-prefetch");
+      prefetchThread.setDaemon(true);
+      prefetchThread.start();
+    }
+  }
+
+  /** Вкладки закрыты (пауза, рестарт): prefetch ждёт следующего attach, кэш остаётся. */
+  synchronized void detach() {
+    foreground = ExternalUrlResolver.NONE;
+    speculative = null;
+  }
+
+  /** Сканер остановлен (runLoop вышел): вкладки отключаются, поток prefetch прерывается и дожидается. */
+  void close() {
+    Thread t;
+    synchronized (this) {
+      detach();
+      t = prefetchThread;
+      prefetchThread = null;
+    }
+    if (t == null) return;
+    t.interrupt();
+    // сканер обычно сам прерван (остановка приложения) — всё равно ждём, флаг вернём
+    boolean interrupted = Thread.interrupted();
+    try {
+      t.join(PREFETCH_JOIN_MS);
+    } catch (InterruptedException e) {
+      interrupted = true;
+    } finally {
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+    if (t.isAlive()) log.warn("[prefetch {}] thread did not stop in {}ms", scannerName, PREFETCH_JOIN_MS);
+  }
+
+  /** Сканер читает доску — prefetch не навигирует, чтобы не отнимать у скана CPU Chromium. */
+  void scanning(boolean scanning) {
+    this.scanning = scanning;
+  }
+
+  // =========================
+  // Критический путь
+  // =========================
+
+  @Override
+  public String resolve(String abbBetUrl) {
+    if (abbBetUrl == null || abbBetUrl.isBlank()) return null;
+    lookups.incrementAndGet();
+    String hit = fromCache(byUrl.get(abbBetUrl));
+    if (hit != null) {
+      exactHits.incrementAndGet();
+      return hit;
+    }
+    return resolveNow(abbBetUrl, null);
+  }
+
+  @Override
+  public String resolve(BetLine bet) {
+    String url = bet.abbBetUrl();
+    if (url == null || url.isBlank()) return null;
+    lookups.incrementAndGet();
+
+    String hit = fromCache(byUrl.get(url));
+    if (hit != null) {
+      exactHits.incrementAndGet();
+      return hit;
+    }
+    if (props.isEventLevel()) {
+      hit = fromCache(byEvent.get(eventKey(bet)));
+      if (hit != null) {
+        eventHits.incrementAndGet();
+        return hit;
+      }
+    }
+    return resolveNow(url, bet);
+  }
+
+  private String resolveNow(String url, BetLine bet) {
+    String resolved = foreground.resolve(url);
+    if (resolved != null) store(url, bet == null ? null : eventKey(bet), resolved, false);
+    candidates.remove(url);
+    return resolved;
+  }
+
+  private String fromCache(Cached c) {
+    if (c == null || c.url == null) return null;
+    if (System.currentTimeMillis() - c.atMs > props.getTtl().toMillis()) return null;
+    if (c.speculative && c.used.compareAndSet(false, true)) prefetchUsed.incrementAndGet();
+    return c.url;
+  }
+
+  // =========================
+  // Кандидаты
+  // =========================
+
+  /** Поток сканера, после каждого скана: вся доска, не только новые вилки. */
+  void observe(Collection<ScannedArb> arbs) {
+    if (speculative == null) return;
+    long now = System.currentTimeMillis();
+    long ttl = props.getTtl().toMillis();
+
+    // сколько строк доски на каждую пару букмекер+событие: повторяющиеся события резолвим первыми
+    Map<String, Integer> eventRows = new HashMap<>();
+    for (ScannedArb a : arbs) {
+      if (a.bets() == null) continue;
+      for (BetLine b : a.bets()) eventRows.merge(eventKey(b), 1, Integer::sum);
+    }
+
+    for (ScannedArb a : arbs) {
+      if (a.bets() == null) continue;
+      // вилку, которую правила никуда не отправят, резолвить незачем
+      RoutingRules.Decision d = routing.peek(a.header(), a.bets());
+      if (d.chatId() == null && !d.executor()) continue;
+
+      for (BetLine b : a.bets()) {
+        String url = b.abbBetUrl();
+        if (url == null || url.isBlank()) continue;
+        if (isFresh(byUrl.get(url), now, ttl)) continue;
+        String ek = eventKey(b);
+        if (props.isEventLevel() && isFresh(byEvent.get(ek), now, ttl)) continue;
+
+        Candidate c = candidates.get(url);
+        if (c == null) {
+          if (candidates.size() >= props.getMaxCandidates()) continue;
+          c = candidates.computeIfAbsent(url, u -> new Candidate(ek));
+        }
+        c.eventRows = eventRows.getOrDefault(ek, 1);
+        c.seen++;
+        c.lastSeenMs = now;
+      }
+    }
+
+    // кандидаты, которых давно нет на доске, больше не нужны
+    for (Iterator<Candidate> it = candidates.values().iterator(); it.hasNext(); ) {
+      if (now - it.next().lastSeenMs > ttl) it.remove();
+    }
+  }
+
+  private static boolean isFresh(Cached c, long now, long ttl) {
+    if (c == null) return false;
+    return now - c.atMs <= (c.url == null ? FAILED_RETRY_MS : ttl);
+  }
+
+  // =========================
+  // Prefetch
+  // =========================
+
+  private void prefetchLoop() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        ExternalUrlResolver tab = speculative;
+        if (tab == null || scanning || !takeBudget()) {
+          Thread.sleep(IDLE_POLL_MS);
+          continue;
+        }
+        Map.Entry<String, Candidate> best = pickBest();
+        if (best == null) {
+          returnBudget();
+          Thread.sleep(IDLE_POLL_MS);
+          continue;
+        }
+        candidates.remove(best.getKey());
+        if (alreadyResolved(best.getKey(), best.getValue().eventKey)) {
+          returnBudget(); // пока ждали, её (или событие) зарезолвил критический путь или другой кандидат
+          continue;
+        }
+
+        String resolved = tab.resolve(best.getKey());
+        if (resolved == null) prefetchFailed.incrementAndGet();
+        else prefetched.incrementAndGet();
+        store(best.getKey(), best.getValue().eventKey, resolved, true);
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.warn("[prefetch] {}", e.toString());
+      }
+    }
+  }
+
+  private Map.Entry<String, Candidate> pickBest() {
+    Map.Entry<String, Candidate> best = null;
+    for (Map.Entry<String, Candidate> e : candidates.entrySet()) {
+      if (best == null || e.getValue().compareTo(best.getValue()) > 0) best = e;
+    }
+    return best;
+  }
+
+  private boolean alreadyResolved(String url, String eventKey) {
+    long now = System.currentTimeMillis();
+    long ttl = props.getTtl().toMillis();
+    Cached c = byUrl.get(url);
+    if (c != null && c.url != null && isFresh(c, now, ttl)) return true;
+    Cached e = props.isEventLevel() ? byEvent.get(eventKey) : null;
+    return e != null && isFresh(e, now, ttl);
+  }
+
+  private boolean takeBudget() {
+    long now = System.currentTimeMillis();
+    if (now - budgetWindowStart >= MINUTE_MS) {
+      lastMinuteUsed = budgetUsed;
+      budgetWindowStart = now;
+      budgetUsed = 0;
+    }
+    if (budgetUsed >= props.getBudgetPerMinute()) return false;
+    budgetUsed++;
+    return true;
+  }
+
+  private void returnBudget() {
+    budgetUsed--;
+  }
+
+  private void store(String url, String eventKey, String resolved, boolean speculative) {
+    long now = System.currentTimeMillis();
+    Cached c = new Cached(resolved, now, speculative);
+    byUrl.put(url, c);
+    if (resolved != null && eventKey != null) byEvent.put(eventKey, c);
+
+    // кэш ограничен тем же, что и кандидаты: старое выкидываем, когда разрослось
+    if (byUrl.size() > props.getMaxCandidates() * 4) evictExpired(now);
+  }
+
+  private void evictExpired(long now) {
+    long ttl = props.getTtl().toMillis();
+    byUrl.values().removeIf(c -> !isFresh(c, now, ttl));
+    byEvent.values().removeIf(c -> !isFresh(c, now, ttl));
+  }
+
+  private static String eventKey(BetLine b) {
+    return b.book().id() + "|" + (b.event() == null ? "" : b.event().trim());
+  }
+
+  // =========================
+  // Метрики
+  // =========================
+
+  String status() {
+    long n = lookups.get();
+    long hits = exactHits.get() + eventHits.get();
+    long spec = prefetched.get();
+    String s = "prefetch hit=" + pct(hits, n) + " (" + exactHits.get() + " url + " + eventHits.get()
+        + " event of " + n + ")";
+    if (speculative == null && prefetchThread == null) return s + " prefetch off";
+    return s + " spec=" + spec + " used=" + prefetchUsed.get() + " (" + pct(prefetchUsed.get(), spec) + ")"
+        + " failed=" + prefetchFailed.get()
+        + " budget=" + Math.max(budgetUsed, lastMinuteUsed) + "/" + props.getBudgetPerMinute() + "/min"
+        + " candidates=" + candidates.size();
+  }
+
+  private static String pct(long part, long total) {
+    return total == 0 ? "—" : Math.round(100.0 * part / total) + "%";
+  }
+
+  private static final class Cached {
+    final String url;          // null — не зарезолвилась, повтор через FAILED_RETRY_MS
+    final long atMs;
+    final boolean speculative;
+    final AtomicBoolean used = new AtomicBoolean();
+
+    Cached(String url, long atMs, boolean speculative) {
+      this.url = url;
+      this.atMs = atMs;
+      this.speculative = speculative;
+    }
+  }
+
+  /** Пишет поток сканера, читает поток prefetch — порядок кандидатов не обязан быть точным. */
+  private static final class Candidate implements Comparable<Candidate> {
+    final String eventKey;
+    volatile int eventRows;
+    volatile int seen;
+    volatile long lastSeenMs;
+
+    Candidate(String eventKey) {
+      this.eventKey = eventKey;
+    }
+
+    @Override
+    public int compareTo(Candidate o) {
+      int c = Integer.compare(eventRows, o.eventRows);
+      if (c == 0) c = Integer.compare(seen, o.seen);
+      return c != 0 ? c : Long.compare(lastSeenMs, o.lastSeenMs);
+    }
+  }
+}
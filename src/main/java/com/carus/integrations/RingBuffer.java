@@ -0,0 +1,79 @@
+package com.carus.integrations;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченная lock-free очередь MPMC на кольцевом буфере (схема Вьюкова):
+ * у каждой ячейки свой sequence, производители и потребители двигают tail/head через CAS.
+ * Без блокировок и без аллокаций на offer/poll.
+ */
+final class RingBuffer<E> {
+
+  private final int mask;
+  private final AtomicReferenceArray<E> slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  RingBuffer(int capacity) {
+    int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // ближайшая степень двойки >= capacity
+    this.mask = cap - 1;
+    this.slots = new AtomicReferenceArray<>(cap);
+    this.sequences = new AtomicLongArray(cap);
+    for (int i = 0; i < cap; i++) sequences.set(i, i);
+  }
+
+  /** @return false если буфер полон */
+  boolean offer(E e) {
+    long pos = tail.get();
+    while (true) {
+      int idx = (int) (pos & mask);
+      long dif = sequences.get(idx) - pos;
+      if (dif == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          slots.set(idx, e);
+          sequences.set(idx, pos + 1); // публикуем элемент потребителю
+          return true;
+        }
+        pos = tail.get();
+      } else if (dif < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  /** @return null если буфер пуст */
+  E poll() {
+    long pos = head.get();
+    while (true) {
+      int idx = (int) (pos & mask);
+      long dif = sequences.get(idx) - (pos + 1);
+      if (dif == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          E e = slots.get(idx);
+          slots.set(idx, null);
+          sequences.set(idx, pos + mask + 1); // ячейка свободна для следующего круга
+          return e;
+        }
+        pos = head.get();
+      } else if (dif < 0) {
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, capacity()));
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+}
@@ -0,0 +1,52 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Счётчик событий в скользящем окне: кольцо корзин фиксированной длины, каждая помечена
+ * номером своего интервала. Запись — CAS на пометку при смене интервала + addAndGet, без блокировок.
+ * Сумма за окно проходит не больше slots корзин, независимо от объёма истории.
+ *
+ * Событие, пришедшее ровно в момент смены корзины, может потеряться — для статистики допустимо.
+ */
+final class RollingCounter {
+
+  private final long slotMs;
+  private final int slots;
+  private final AtomicLongArray counts;
+  private final AtomicLongArray epochs;
+
+  RollingCounter(Duration slot, Duration window) {
+    this.slotMs = slot.toMillis();
+    this.slots = (int) Math.max(1, window.toMillis() / slotMs);
+    this.counts = new AtomicLongArray(slots);
+    this.epochs = new AtomicLongArray(slots);
+    for (int i = 0; i < slots; i++) epochs.set(i, -1);
+  }
+
+  void increment() {
+    add(1);
+  }
+
+  void add(long n) {
+    long epoch = System.currentTimeMillis() / slotMs;
+    int i = (int) (epoch % slots);
+    long tag = epochs.get(i);
+    if (tag != epoch && epochs.compareAndSet(i, tag, epoch)) counts.set(i, 0);
+    counts.addAndGet(i, n);
+  }
+
+  /** Сумма за последние {@code window} (округляется вверх до целых корзин, не больше окна счётчика). */
+  long sum(Duration window) {
+    long now = System.currentTimeMillis() / slotMs;
+    int n = (int) Math.min(slots, Math.max(1, (window.toMillis() + slotMs - 1) / slotMs));
+    long total = 0;
+    for (int k = 0; k < n; k++) {
+      long epoch = now - k;
+      int i = (int) (epoch % slots);
+      if (epochs.get(i) == epoch) total += counts.get(i);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,61 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link LatencyHistogram} за скользящее окно: кольцо гистограмм по slot, старая корзина
+ * сбрасывается, когда в неё приходит запись нового интервала. Перцентиль — по живым корзинам.
+ */
+final class RollingHistogram {
+
+  private final long slotMs;
+  private final LatencyHistogram[] hists;
+  private final AtomicLongArray epochs;
+
+  RollingHistogram(Duration slot, Duration window) {
+    this.slotMs = slot.toMillis();
+    int slots = (int) Math.max(1, window.toMillis() / slotMs);
+    this.hists = new LatencyHistogram[slots];
+    this.epochs = new AtomicLongArray(slots);
+    for (int i = 0; i < slots; i++) {
+      hists[i] = new LatencyHistogram();
+      epochs.set(i, -1);
+    }
+  }
+
+  void recordNanos(long nanos) {
+    long epoch = System.currentTimeMillis() / slotMs;
+    int i = (int) (epoch % hists.length);
+    long tag = epochs.get(i);
+    if (tag != epoch && epochs.compareAndSet(i, tag, epoch)) hists[i].reset();
+    hists[i].recordNanos(nanos);
+  }
+
+  long percentileMicros(double q) {
+    return LatencyHistogram.percentileMicros(q, live());
+  }
+
+  long count() {
+    long n = 0;
+    for (LatencyHistogram h : live()) n += h.count();
+    return n;
+  }
+
+  String p50p99() {
+    List<LatencyHistogram> live = live();
+    return LatencyHistogram.formatMicros(LatencyHistogram.percentileMicros(0.5, live))
+        + "/" + LatencyHistogram.formatMicros(LatencyHistogram.percentileMicros(0.99, live));
+  }
+
+  private List<LatencyHistogram> live() {
+    long now = System.currentTimeMillis() / slotMs;
+    List<LatencyHistogram> out = new ArrayList<>(hists.length);
+    for (int i = 0; i < hists.length; i++) {
+      if (now - epochs.get(i) < hists.length) out.add(hists[i]);
+    }
+    return out;
+  }
+}
@@ -0,0 +1,418 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+/**
+ * Маршрутизация вилок по чатам Telegram и на экзекьютор из файла правил (routing.file, YAML).
+ *
+ * Правила проверяются сверху вниз, срабатывает первое подходящее. Файл перечитывается при
+ * изменении (проверка mtime раз в routing.reload-every) без перезапуска воркера; если новый файл
+ * не разобрался, остаются прежние правила. Нет файла — встроенные правила, как было в коде.
+ *
+ * При загрузке правила компилируются: каждый шаблон букмекера получает свой бит, для каждого
+ * {@link Book} маска шаблонов считается один раз (по id из {@link BookRegistry}), и проверка
+ * вилки — это OR масок плеч и несколько сравнений на правило, без строк.
+ *
+ * <pre>
+ * rules:
+ *   - name: bc-game
+ *     books-any: [game]            # хотя бы одно плечо содержит подстроку
+ *     chat: bc-game                # алиас tg.*-chat-id или числовой id чата; none — не слать в TG
+ *   - name: pinnacle-stake
+ *     books-all: [pinnacle, stake] # каждая подстрока есть хотя бы в одном плече
+ *     books-none: [game]
+ *     percent-min: 1.5
+ *     sports: [Soccer, Tennis]
+ *     live: false                  # true — матч уже идёт, false — prematch
+ *     chat: pinnacle-stake
+ *     executor: true               # отдавать ли Stake-плечо экзекьютору (по умолчанию true)
+ *   - name: rest
+ *     chat: all-others
+ * </pre>
+ */
+@Component
+@Slf4j
+public class RoutingRules {
+
+  /** Не больше 63 шаблонов: старший бит маски занят под "ещё не посчитано". */
+  private static final int MAX_PATTERNS = 63;
+  private static final long UNSET = Long.MIN_VALUE;
+
+  private final TelegramProperties tgProps;
+  private final Path file;
+  private final Duration reloadEvery;
+
+  private volatile Table table;
+  private FileTime loadedMtime;
+  private String lastError;
+
+  private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "routing-reload");
+    t.setDaemon(true);
+    return t;
+  });
+
+  public RoutingRules(TelegramProperties tgProps,
+                      @Value("${routing.file:/app/routing/routing.yml}") String file,
+                      @Value("${routing.reload-every:2s}") Duration reloadEvery) {
+    this.tgProps = tgProps;
+    this.file = Path.of(file);
+    this.reloadEvery = reloadEvery;
+    this.table = compile(defaultRules(), "builtin", Map.of());
+  }
+
+  @PostConstruct
+  public void start() {
+    reloadIfChanged();
+    reloader.scheduleWithFixedDelay(this::reloadIfChanged,
+        reloadEvery.toMillis(), reloadEvery.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    reloader.shutdownNow();
+  }
+
+  // =========================
+  // Hot path
+  // =========================
+
+  /** Выбор для вилки. Вызывается format-ступенью конвейера на каждую вилку. */
+  Decision route(ArbHeader header, List<BetLine> bets) {
+    Table t = table;
+    long books = 0;
+    if (bets != null) {
+      for (BetLine b : bets) books |= t.bits(b.book());
+    }
+    for (Rule r : t.rules) {
+      if (r.matches(books, header, bets)) {
+        r.hits.increment();
+        return r.decision;
+      }
+    }
+    t.misses.increment();
+    return t.fallback;
+  }
+
+  /** Как {@link #route}, но без счётчиков: для упреждающего резолва ({@link PreResolver}). */
+  Decision peek(ArbHeader header, List<BetLine> bets) {
+    Table t = table;
+    long books = 0;
+    if (bets != null) {
+      for (BetLine b : bets) books |= t.bits(b.book());
+    }
+    for (Rule r : t.rules) {
+      if (r.matches(books, header, bets)) return r.decision;
+    }
+    return t.fallback;
+  }
+
+  // =========================
+  // Загрузка
+  // =========================
+
+  private synchronized void reloadIfChanged() {
+    try {
+      if (!Files.exists(file)) {
+        if (loadedMtime != null) {
+          log.warn("[routing] {} removed, back to builtin rules", file);
+          table = compile(defaultRules(), "builtin", table.hitsByName());
+          loadedMtime = null;
+        }
+        return;
+      }
+      FileTime mtime = Files.getLastModifiedTime(file);
+      if (mtime.equals(loadedMtime)) return;
+
+      List<Map<String, Object>> rules = read(file);
+      table = compile(rules, file + " @ " + mtime, table.hitsByName());
+      loadedMtime = mtime;
+      lastError = null;
+      log.info("[routing] loaded {} rules from {}", table.rules.length, file);
+    } catch (Exception e) {
+      // кривой файл не должен ломать отправку: оставляем прежние правила до следующей правки
+      lastError = e.getMessage();
+      try {
+        loadedMtime = Files.getLastModifiedTime(file);
+      } catch (IOException ignored) {}
+      log.warn("[routing] {} rejected, keeping previous rules: {}", file, e.getMessage());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> read(Path file) throws IOException {
+    try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      Object root = new Yaml(new SafeConstructor(new LoaderOptions())).load(r);
+      if (!(root instanceof Map<?, ?> m) || !(m.get("rules") instanceof List<?> list)) {
+        throw new IllegalArgumentException("expected top-level 'rules:' list");
+      }
+      List<Map<String, Object>> out = new ArrayList<>();
+      for (Object o : list) {
+        if (!(o instanceof Map<?, ?>)) throw new IllegalArgumentException("rule is not a map: " + o);
+        out.add((Map<String, Object>) o);
+      }
+      return out;
+    }
+  }
+
+  /** Прежняя логика selectChatId: BC.Game -> свой чат, Pinnacle + Stake -> свой, остальное — общий. */
+  private static List<Map<String, Object>> defaultRules() {
+    return List.of(
+        Map.of("name", "bc-game", "books-any", List.of("game"), "chat", "bc-game"),
+        Map.of("name", "pinnacle-stake", "books-all", List.of("pinnacle", "stake"), "chat", "pinnacle-stake"),
+        Map.of("name", "all-others", "chat", "all-others"));
+  }
+
+  private Table compile(List<Map<String, Object>> specs, String source, Map<String, LongAdder> oldHits) {
+    Map<String, Integer> patternBits = new LinkedHashMap<>();
+    List<Rule> rules = new ArrayList<>(specs.size());
+
+    for (int i = 0; i < specs.size(); i++) {
+      Map<String, Object> s = specs.get(i);
+      String name = str(s.getOrDefault("name", "rule-" + (i + 1)));
+      try {
+        long all = mask(list(s.get("books-all")), patternBits);
+        long any = mask(list(s.get("books-any")), patternBits);
+        long none = mask(list(s.get("books-none")), patternBits);
+
+        List<String> sports = list(s.get("sports"));
+        String chat = chatId(str(s.get("chat")));
+        boolean executor = s.get("executor") == null || Boolean.parseBoolean(str(s.get("executor")));
+
+        rules.add(new Rule(all, any, none,
+            num(s.get("percent-min"), Double.NEGATIVE_INFINITY),
+            num(s.get("percent-max"), Double.POSITIVE_INFINITY),
+            sports.toArray(String[]::new),
+            s.get("live") == null ? null : Boolean.parseBoolean(str(s.get("live"))),
+            new Decision(name, chat, executor),
+            oldHits.getOrDefault(name, new LongAdder())));
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("rule '" + name + "': " + e.getMessage(), e);
+      }
+    }
+
+    return new Table(source, patternBits.keySet().toArray(String[]::new), rules.toArray(Rule[]::new),
+        new Decision("fallback", chatId(null), true), oldHits.getOrDefault("", new LongAdder()));
+  }
+
+  private static long mask(List<String> patterns, Map<String, Integer> patternBits) {
+    long m = 0;
+    for (String p : patterns) {
+      String key = p.trim().toLowerCase(Locale.ROOT);
+      if (key.isEmpty()) continue;
+      Integer bit = patternBits.get(key);
+      if (bit == null) {
+        if (patternBits.size() >= MAX_PATTERNS) {
+          throw new IllegalArgumentException("too many distinct book patterns (max " + MAX_PATTERNS + ")");
+        }
+        bit = patternBits.size();
+        patternBits.put(key, bit);
+      }
+      m |= 1L << bit;
+    }
+    return m;
+  }
+
+  /** Алиас из tg.* или сам id; пусто — дефолтный чат, none — без Telegram. */
+  private String chatId(String chat) {
+    if ("none".equalsIgnoreCase(chat)) return null;
+    String id = switch (chat == null ? "" : chat) {
+      case "bc-game" -> tgProps.getBcGameChatId();
+      case "pinnacle-stake" -> tgProps.getPinnacleStakeOnlyChatId();
+      case "all-others" -> tgProps.getAllOthersChatId();
+      case "default", "" -> null;
+      default -> chat;
+    };
+    // fallback
+    if (id == null || id.isBlank()) {
+      id = (tgProps.getChatId() != null && !tgProps.getChatId().isBlank())
+          ? tgProps.getChatId()
+          : "-1";
+    }
+    return id;
+  }
+
+  private static List<String> list(Object o) {
+    if (o == null) return List.of();
+    if (o instanceof List<?> l) {
+      List<String> out = new ArrayList<>(l.size());
+      for (Object x : l) out.add(str(x));
+      return out;
+    }
+    return List.of(str(o));
+  }
+
+  private static double num(Object o, double dflt) {
+    if (o == null) return dflt;
+    if (o instanceof Number n) return n.doubleValue();
+    double d = Decimals.parse(str(o));
+    if (Double.isNaN(d)) throw new IllegalArgumentException("not a number: " + o);
+    return d;
+  }
+
+  private static String str(Object o) {
+    return o == null ? null : String.valueOf(o).trim();
+  }
+
+  // =========================
+  // Статус
+  // =========================
+
+  String status() {
+    Table t = table;
+    return "routing: " + t.rules.length + " rules, " + t.patterns.length + " book patterns (" + t.source + ")"
+        + (lastError == null ? "" : "\n  last reload failed: " + lastError);
+  }
+
+  /** Правила с счётчиками срабатываний, для /routes. */
+  String rulesText() {
+    Table t = table;
+    StringBuilder sb = new StringBuilder("🧭 ").append(status());
+    for (Rule r : t.rules) {
+      sb.append("\n").append(r.decision.rule()).append(": ").append(r.hits.sum())
+          .append(" → ").append(r.decision.chatId() == null ? "no tg" : r.decision.chatId())
+          .append(r.decision.executor() ? "" : ", no executor");
+    }
+    sb.append("\nno match: ").append(t.misses.sum());
+    return sb.toString();
+  }
+
+  // =========================
+  // Скомпилированные правила
+  // =========================
+
+  /**
+   * Итог маршрутизации.
+   *
+   * @param chatId   куда слать в Telegram; null — не слать
+   * @param executor отдавать ли Stake-плечо экзекьютору
+   */
+  record Decision(String rule, String chatId, boolean executor) {}
+
+  private static final class Rule {
+    final long all, any, none;
+    final double percentMin, percentMax;
+    final String[] sports;
+    final Boolean live;
+    final Decision decision;
+    final LongAdder hits;
+
+    Rule(long all, long any, long none, double percentMin, double percentMax,
+         String[] sports, Boolean live, Decision decision, LongAdder hits) {
+      this.all = all;
+      this.any = any;
+      this.none = none;
+      this.percentMin = percentMin;
+      this.percentMax = percentMax;
+      this.sports = sports;
+      this.live = live;
+      this.decision = decision;
+      this.hits = hits;
+    }
+
+    boolean matches(long books, ArbHeader h, List<BetLine> bets) {
+      if ((books & all) != all) return false;
+      if (any != 0 && (books & any) == 0) return false;
+      if ((books & none) != 0) return false;
+
+      // NaN не проходит ни одну границу — если границы заданы, неразобранный процент не матчится
+      if (percentMin != Double.NEGATIVE_INFINITY || percentMax != Double.POSITIVE_INFINITY) {
+        double p = h == null ? Double.NaN : h.percent();
+        if (!(p >= percentMin && p <= percentMax)) return false;
+      }
+      if (sports.length > 0 && !sportMatches(h == null ? null : h.sport())) return false;
+      if (live != null && live != isLive(bets)) return false;
+      return true;
+    }
+
+    private boolean sportMatches(String sport) {
+      if (sport == null) return false;
+      for (String s : sports) {
+        if (s.equalsIgnoreCase(sport)) return true;
+      }
+      return false;
+    }
+
+    private static boolean isLive(List<BetLine> bets) {
+      Instant start = bets == null || bets.isEmpty() ? null : bets.get(0).startsAt();
+      return start != null && start.toEpochMilli() <= System.currentTimeMillis();
+    }
+  }
+
+  private static final class Table {
+    final String source;
+    final String[] patterns;
+    final Rule[] rules;
+    final Decision fallback;
+    final LongAdder misses;
+
+    // book id -> маска шаблонов; UNSET — ещё не считали (новый букмекер)
+    private volatile long[] bookBits = new long[0];
+
+    Table(String source, String[] patterns, Rule[] rules, Decision fallback, LongAdder misses) {
+      this.source = source;
+      this.patterns = patterns;
+      this.rules = rules;
+      this.fallback = fallback;
+      this.misses = misses;
+    }
+
+    long bits(Book book) {
+      long[] cache = bookBits;
+      int id = book.id();
+      if (id < cache.length && cache[id] != UNSET) return cache[id];
+      return computeBits(book);
+    }
+
+    private synchronized long computeBits(Book book) {
+      long[] cache = bookBits;
+      if (book.id() >= cache.length) {
+        long[] grown = Arrays.copyOf(cache, Math.max(book.id() + 1, BookRegistry.size() + 16));
+        Arrays.fill(grown, cache.length, grown.length, UNSET);
+        cache = grown;
+      }
+      String name = book.name().toLowerCase(Locale.ROOT);
+      long m = 0;
+      for (int i = 0; i < patterns.length; i++) {
+        if (!name.isEmpty() && name.contains(patterns[i])) m |= 1L << i;
+      }
+      cache[book.id()] = m;
+      bookBits = cache; // volatile-запись публикует и новый массив, и значение
+      return m;
+    }
+
+    Map<String, LongAdder> hitsByName() {
+      Map<String, LongAdder> m = new HashMap<>();
+      for (Rule r : rules) m.put(r.decision.rule(), r.hits);
+      m.put("", misses);
+      return m;
+    }
+  }
+}
@@ -0,0 +1,6 @@
+package com.carus.integrations;
+
+import java.util.List;
+
+/** Одна вилка, снятая со страницы за один проход: хеш + заголовок + плечи. */
+public record ScannedArb(String arbHash, ArbHeader header, List<BetLine> bets) {}
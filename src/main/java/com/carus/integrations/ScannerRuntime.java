@@ -0,0 +1,85 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Запускает все {@link ArbScanner} параллельно, каждый на своём потоке.
+ * Сканеры изолированы: падение одного не трогает остальных.
+ */
+@Component
+@Slf4j
+public class ScannerRuntime implements CommandLineRunner {
+
+  private static final Duration RESTART_DELAY = Duration.ofSeconds(10);
+  private static final Duration STOP_TIMEOUT = Duration.ofSeconds(15);
+
+  private final List<ArbScanner> scanners;
+  private final WorkerControlService control;
+  private final ArbPipeline pipeline;
+  private final List<Thread> threads = new ArrayList<>();
+
+  public ScannerRuntime(List<ArbScanner> scanners, List<ArbScanner.Group> groups, WorkerControlService control,
+      ArbPipeline pipeline) {
+    this.scanners = new ArrayList<>(scanners);
+    for (ArbScanner.Group g : groups) this.scanners.addAll(g.scanners());
+    this.control = control;
+    this.pipeline = pipeline;
+    for (ArbScanner s : this.scanners) control.register(s.getName(), s::status);
+  }
+
+  @Override
+  public void run(String... args) {
+    // вилки из handoff от сканеров, которых больше нет, не дождутся резолвера
+    pipeline.retainSources(new HashSet<>(control.scannerNames()));
+    for (ArbScanner scanner : scanners) {
+      Thread t = new Thread(() -> supervise(scanner), "scanner-" + scanner.getName());
+      threads.add(t);
+      t.start();
+    }
+    log.info("[runtime] started scanners: {}", control.scannerNames());
+  }
+
+  /** runLoop сам переживает падения; сюда долетает только то, что он не поймал. */
+  private void supervise(ArbScanner scanner) {
+    String name = scanner.getName();
+    while (!Thread.currentThread().isInterrupted()) {
+      control.markRunning(name, true);
+      try {
+        scanner.runLoop();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable e) {
+        log.error("[runtime] scanner {} died", name, e);
+      } finally {
+        control.markRunning(name, false);
+      }
+
+      if (Thread.currentThread().isInterrupted()) break;
+      try { Thread.sleep(RESTART_DELAY.toMillis()); } catch (InterruptedException e) { break; }
+    }
+    log.info("[runtime] scanner {} stopped", name);
+  }
+
+  /** Прерывает сканеры и ждёт, пока они закроют свои сессии браузера. Повторный вызов — no-op. */
+  @PreDestroy
+  public synchronized void shutdown() {
+    threads.forEach(Thread::interrupt);
+    for (Thread t : threads) {
+      try {
+        t.join(STOP_TIMEOUT.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    threads.clear();
+  }
+}
@@ -0,0 +1,72 @@
+package com.carus.integrations;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Покрытие и латентность шардов: сколько строк дал каждый шард, сколько из них
+ * не видел больше никто (ради чего шард вообще держим) и сколько стоил его проход.
+ * Пишет поток сканера, читает /status — отсюда volatile и concurrent-карта.
+ */
+final class ShardCoverage {
+
+  // вес нового замера в EWMA латентности
+  private static final double ALPHA = 0.2;
+
+  private final Map<String, ShardStat> shards = new ConcurrentSkipListMap<>();
+  private volatile int lastRows;
+  private volatile int lastMerged;
+
+  /** Учитывает один цикл: результаты всех шардов в порядке приоритета. */
+  void record(List<ShardScan> scans) {
+    Map<String, Integer> seenIn = new HashMap<>();
+    int rows = 0;
+    for (ShardScan s : scans) {
+      rows += s.arbs().size();
+      for (ScannedArb a : s.arbs()) {
+        if (a.arbHash() != null) seenIn.merge(a.arbHash(), 1, Integer::sum);
+      }
+    }
+
+    for (ShardScan s : scans) {
+      int exclusive = 0;
+      for (ScannedArb a : s.arbs()) {
+        if (a.arbHash() != null && seenIn.get(a.arbHash()) == 1) exclusive++;
+      }
+      shards.computeIfAbsent(s.shard(), n -> new ShardStat()).update(s.arbs().size(), exclusive, s.latencyMs());
+    }
+
+    lastRows = rows;
+    lastMerged = seenIn.size();
+  }
+
+  String summary() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("rows=").append(lastRows).append(" unique=").append(lastMerged);
+    shards.forEach((name, st) -> sb.append(" | ").append(name)
+        .append(": rows=").append(st.rows)
+        .append(" only=").append(st.exclusive)
+        .append(" ").append(Math.round(st.latencyEwmaMs)).append("ms")
+        .append(" (max ").append(st.latencyMaxMs).append("ms)"));
+    return sb.toString();
+  }
+
+  /** Результат одного прохода по одному шарду. */
+  record ShardScan(String shard, List<ScannedArb> arbs, long latencyMs) {}
+
+  private static final class ShardStat {
+    volatile int rows;
+    volatile int exclusive;
+    volatile double latencyEwmaMs = -1;
+    volatile long latencyMaxMs;
+
+    void update(int rows, int exclusive, long latencyMs) {
+      this.rows = rows;
+      this.exclusive = exclusive;
+      this.latencyEwmaMs = latencyEwmaMs < 0 ? latencyMs : latencyEwmaMs + ALPHA * (latencyMs - latencyEwmaMs);
+      this.latencyMaxMs = Math.max(latencyMaxMs, latencyMs);
+    }
+  }
+}
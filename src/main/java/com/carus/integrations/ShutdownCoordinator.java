@@ -0,0 +1,71 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Порядок остановки при редеплое. Spring останавливает SmartLifecycle раньше любых @PreDestroy,
+ * поэтому здесь всё, что должно случиться, пока браузер, IoExecutor и outbox ещё живы:
+ *
+ * <ol>
+ *   <li>конвейер перестаёт принимать вилки и дорабатывает очереди до {@code shutdown.drain-timeout}
+ *       (резолв ещё ходит через вкладки сканеров);</li>
+ *   <li>что не успело — в handoff-файл, проиграется на следующем старте;</li>
+ *   <li>снимок dedup на диск;</li>
+ *   <li>сканеры прерываются и закрывают контексты браузера.</li>
+ * </ol>
+ *
+ * Outbox (журнал уже на диске), история и IoExecutor закрываются дальше своими @PreDestroy.
+ */
+@Component
+@Slf4j
+public class ShutdownCoordinator implements SmartLifecycle {
+
+  private final ArbPipeline pipeline;
+  private final ArbHashDeduplicator dedup;
+  private final ScannerRuntime runtime;
+  private final Duration drainTimeout;
+
+  private volatile boolean running;
+
+  public ShutdownCoordinator(ArbPipeline pipeline,
+                             ArbHashDeduplicator dedup,
+                             ScannerRuntime runtime,
+                             @Value("${shutdown.drain-timeout:20s}") Duration drainTimeout) {
+    this.pipeline = pipeline;
+    this.dedup = dedup;
+    this.runtime = runtime;
+    this.drainTimeout = drainTimeout;
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    if (!running) return;
+    running = false;
+    long t0 = System.currentTimeMillis();
+    log.info("[shutdown] draining pipeline (up to {}s)", drainTimeout.toSeconds());
+    try {
+      int handedOff = pipeline.drain(drainTimeout);
+      dedup.save();
+      runtime.shutdown();
+      log.info("[shutdown] done in {}ms, handed off {}", System.currentTimeMillis() - t0, handedOff);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("[shutdown] interrupted while draining");
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+}
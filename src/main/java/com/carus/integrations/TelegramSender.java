@@ -14,6 +14,7 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Service
@@ -23,32 +24,50 @@ public class TelegramSender {
 
   private final TelegramProperties props;
   private final RestTemplate telegramRestTemplate;
+  private final IoExecutor io;
+
+  /**
+   * То же, что {@link #sendText(String, String)}, но в своём виртуальном потоке: вызывающий не ждёт ретраев.
+   * Future завершается исключением, если сообщение так и не ушло (попытки кончились или отправку прервали).
+   */
+  public CompletableFuture<Void> sendTextAsync(String chatId, String text) {
+    return io.run("telegram sendText", () -> {
+      if (!sendText(chatId, text)) throw new IllegalStateException("telegram sendText failed, chatId=" + chatId);
+    });
+  }
+
+  public CompletableFuture<Void> sendPhotoAsync(String chatId, byte[] imageBytes, String caption) {
+    return io.run("telegram sendPhoto", () -> {
+      if (!sendPhoto(chatId, imageBytes, caption)) throw new IllegalStateException("telegram sendPhoto failed, chatId=" + chatId);
+    });
+  }
 
   /**
    * Просто отправляет любой текст в дефолтный chat_id из props. Без parse_mode.
    */
-  public void sendText(String text) {
-    sendText(null, text, true, false);
+  public boolean sendText(String text) {
+    return sendText(null, text, true, false);
   }
 
-  public void sendText(String text, boolean disableWebPreview, boolean silent) {
-    sendText(null, text, disableWebPreview, silent);
+  public boolean sendText(String text, boolean disableWebPreview, boolean silent) {
+    return sendText(null, text, disableWebPreview, silent);
   }
 
   /**
    * Отправка в конкретный чат (если chatId == null/blank -> берём props.getChatId()).
    */
-  public void sendText(String chatId, String text) {
-    sendText(chatId, text, true, false);
+  public boolean sendText(String chatId, String text) {
+    return sendText(chatId, text, true, false);
   }
 
-  public void sendText(String chatId, String text, boolean disableWebPreview, boolean silent) {
-    if (text == null || text.isBlank()) return;
+  /** @return true если Telegram принял сообщение (пустой текст — слать нечего, тоже true) */
+  public boolean sendText(String chatId, String text, boolean disableWebPreview, boolean silent) {
+    if (text == null || text.isBlank()) return true;
 
     String resolvedChatId = resolveChatId(chatId);
     if (resolvedChatId == null || resolvedChatId.isBlank()) {
       log.warn("Telegram chat_id пустой: передан={}, props.chatId={}", chatId, props.getChatId());
-      return;
+      return false;
     }
 
     String url = UriComponentsBuilder
@@ -75,33 +94,35 @@ public class TelegramSender {
             telegramRestTemplate.exchange(url, HttpMethod.POST, entity, String.class);
 
         if (resp.getStatusCode().is2xxSuccessful()) {
-          return;
+          return true;
         }
 
         log.warn("Telegram send failed (attempt {}): chatId={}, status={}, body={}",
             attempt, resolvedChatId, resp.getStatusCode(), safeTrim(resp.getBody()));
-        sleepBackoff(attempt);
+        if (!sleepBackoff(attempt)) return false;
 
       } catch (HttpStatusCodeException e) {
         log.warn("Telegram HTTP error (attempt {}): chatId={}, status={}, body={}",
             attempt, resolvedChatId, e.getStatusCode(), safeTrim(e.getResponseBodyAsString()));
-        sleepBackoff(attempt);
+        if (!sleepBackoff(attempt)) return false;
 
       } catch (Exception e) {
         log.warn("Telegram send exception (attempt {}): chatId={}, {}",
             attempt, resolvedChatId, e.getMessage(), e);
-        sleepBackoff(attempt);
+        if (!sleepBackoff(attempt)) return false;
       }
     }
 
     log.error("Telegram send окончательно не удалось после {} попыток (chatId={})", maxAttempts, resolvedChatId);
+    return false;
   }
 
-  public void sendPhoto(String chatId, byte[] imageBytes, String caption) {
+  /** @return true если Telegram принял фото */
+  public boolean sendPhoto(String chatId, byte[] imageBytes, String caption) {
     String resolvedChatId = resolveChatId(chatId);
     if (resolvedChatId == null || resolvedChatId.isBlank()) {
       log.warn("Telegram chat_id пустой, sendPhoto пропущен");
-      return;
+      return false;
     }
 
     String url = UriComponentsBuilder
@@ -128,20 +149,21 @@ public class TelegramSender {
       try {
         ResponseEntity<String> resp =
             telegramRestTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-        if (resp.getStatusCode().is2xxSuccessful()) return;
+        if (resp.getStatusCode().is2xxSuccessful()) return true;
         log.warn("Telegram sendPhoto failed (attempt {}): status={}", attempt, resp.getStatusCode());
-        sleepBackoff(attempt);
+        if (!sleepBackoff(attempt)) return false;
       } catch (HttpStatusCodeException e) {
         log.warn("Telegram sendPhoto HTTP error (attempt {}): status={}, body={}",
             attempt, e.getStatusCode(), safeTrim(e.getResponseBodyAsString()));
-        sleepBackoff(attempt);
+        if (!sleepBackoff(attempt)) return false;
       } catch (Exception e) {
         log.warn("Telegram sendPhoto exception (attempt {}): {}", attempt, e.getMessage(), e);
-        sleepBackoff(attempt);
+        if (!sleepBackoff(attempt)) return false;
       }
     }
 
     log.error("Telegram sendPhoto окончательно не удалось после {} попыток", maxAttempts);
+    return false;
   }
 
   private String resolveChatId(String chatId) {
@@ -149,9 +171,17 @@ public class TelegramSender {
     return props.getChatId();
   }
 
-  private void sleepBackoff(int attempt) {
+  /** @return false если поток прервали (остановка) — ретраи прекращаем */
+  private boolean sleepBackoff(int attempt) {
     long ms = (long) (1000L * Math.pow(2, attempt - 1)); // 1s,2s,4s,8s
-    try { Thread.sleep(ms); } catch (InterruptedException ignored) {}
+    try {
+      Thread.sleep(ms);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Telegram send прерван на ретрае {}", attempt);
+      return false;
+    }
   }
 
   private String safeTrim(String s) {
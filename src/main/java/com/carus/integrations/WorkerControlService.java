@@ -1,17 +1,258 @@
 package com.carus.integrations;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import org.springframework.stereotype.Service;
 
+/**
+ * pause/resume/restart по каждому сканеру.
+ * name == null -> команда на все сканеры (как было до multi-scanner).
+ *
+ * У каждого сканера свой {@link Channel}: сканер ждёт на нём (пауза, интервал между сканами, шарды),
+ * а не опрашивает флаги, и команда будит его сразу. pause/restart ещё и отменяют ожидание в полёте —
+ * сканер выходит из скана через {@link Preempted}. От команды до того, как сканер её выполнил
+ * ({@link Channel#applied}), меряется задержка — в /status.
+ */
 @Service
 public class WorkerControlService {
-  private final AtomicBoolean paused = new AtomicBoolean(false);
-  private final AtomicBoolean restart = new AtomicBoolean(false);
 
-  public void pause() { paused.set(true); }
-  public void resume() { paused.set(false); }
-  public void restart() { restart.set(true); paused.set(false); }
+  private final Map<String, Channel> scanners = new ConcurrentHashMap<>();
 
-  public boolean isPaused() { return paused.get(); }
-  public boolean consumeRestart() { return restart.getAndSet(false); }
+  // команда -> сканер её выполнил, по всем сканерам
+  private final LatencyHistogram ackLatency = new LatencyHistogram();
+  private final AtomicLong commands = new AtomicLong();
+  private volatile String lastAck = "";
+
+  public void register(String name, Supplier<String> status) {
+    channel(name).status = status;
+  }
+
+  public boolean isKnown(String name) {
+    return name == null || scanners.containsKey(name);
+  }
+
+  public List<String> scannerNames() {
+    List<String> names = new ArrayList<>(scanners.keySet());
+    names.sort(null);
+    return names;
+  }
+
+  public void pause() { pause(null); }
+  public void resume() { resume(null); }
+  public void restart() { restart(null); }
+
+  public void pause(String name) {
+    forEach(name, c -> c.command("pause", true, () -> c.paused.set(true)));
+  }
+
+  public void resume(String name) {
+    // не на паузе — выполнять нечего, задержку не меряем
+    forEach(name, c -> { if (c.paused.get()) c.command("resume", false, () -> c.paused.set(false)); });
+  }
+
+  public void restart(String name) {
+    forEach(name, c -> c.command("restart", true, () -> { c.restart.set(true); c.paused.set(false); }));
+  }
+
+  public boolean isPaused(String name) { return channel(name).paused.get(); }
+  public boolean consumeRestart(String name) { return channel(name).restart.getAndSet(false); }
+
+  public void markRunning(String name, boolean running) { channel(name).running.set(running); }
+  public boolean isRunning(String name) { return channel(name).running.get(); }
+
+  public String status(String name) {
+    Supplier<String> s = channel(name).status;
+    try {
+      return s == null ? "" : s.get();
+    } catch (RuntimeException e) {
+      return "status error: " + e.getMessage();
+    }
+  }
+
+  /** Чем сканер занят сейчас и сколько: "scan 1.2s"; плюс невыполненная команда. */
+  public String stage(String name) {
+    return channel(name).stageLine();
+  }
+
+  /** Сводка для /status: сколько команд и за сколько сканеры их выполняли. */
+  public String commandStats() {
+    long n = ackLatency.count();
+    if (n == 0) return "control: " + commands.get() + " commands, none applied yet";
+    return "control: " + commands.get() + " commands, applied p50="
+        + LatencyHistogram.formatMicros(ackLatency.percentileMicros(0.50))
+        + " p99=" + LatencyHistogram.formatMicros(ackLatency.percentileMicros(0.99))
+        + " | last " + lastAck;
+  }
+
+  public Channel channel(String name) {
+    return scanners.computeIfAbsent(name, Channel::new);
+  }
+
+  private void forEach(String name, Consumer<Channel> action) {
+    if (name == null) {
+      scanners.values().forEach(action);
+    } else {
+      action.accept(channel(name));
+    }
+  }
+
+  /**
+   * Команда прервала работу сканера (скан, логин, ожидание). Ловится в цикле сканера: сессию
+   * отпустить и идти на следующий круг, где он увидит паузу или рестарт. Без стека — это не ошибка.
+   */
+  public static final class Preempted extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Preempted(String command) {
+      super(command, null, false, false);
+    }
+  }
+
+  /**
+   * Канал команд одного сканера. Флаги пишет кто угодно, ждёт на канале только поток сканера.
+   */
+  public final class Channel {
+
+    private final String name;
+    final AtomicBoolean paused = new AtomicBoolean(false);
+    final AtomicBoolean restart = new AtomicBoolean(false);
+    final AtomicBoolean running = new AtomicBoolean(false);
+    volatile Supplier<String> status;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // ожидания сканера, которые pause/restart отменяют
+    private final Set<Future<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+    // команда, которую сканер ещё не выполнил, и когда пришла первая из невыполненных
+    private volatile String pending;
+    private long issuedNanos;
+
+    private volatile String stage = "starting";
+    private volatile long stageSinceNanos = System.nanoTime();
+
+    private Channel(String name) {
+      this.name = name;
+    }
+
+    public boolean isPaused() {
+      return paused.get();
+    }
+
+    /** Есть pause или restart, которые сканер ещё не выполнил: текущую работу пора бросать. */
+    public boolean preempted() {
+      return paused.get() || restart.get();
+    }
+
+    /** @throws Preempted если пришла pause/restart */
+    public void checkpoint() {
+      if (preempted()) throw new Preempted(pending == null ? "pause" : pending);
+    }
+
+    /** Вместо Thread.sleep: просыпается сразу на pause/restart (и бросает {@link Preempted}). */
+    public void sleep(long ms) throws InterruptedException {
+      long left = TimeUnit.MILLISECONDS.toNanos(ms);
+      lock.lock();
+      try {
+        while (left > 0 && !preempted()) left = changed.awaitNanos(left);
+      } finally {
+        lock.unlock();
+      }
+      checkpoint();
+    }
+
+    /** Ждёт resume (или restart) без опроса. */
+    public void awaitResume() throws InterruptedException {
+      lock.lock();
+      try {
+        while (paused.get()) changed.await();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * {@link Future#get(long, TimeUnit)}, который pause/restart отменяют: задача получает cancel(true),
+     * а ждущий — {@link Preempted}, не дожидаясь таймаута.
+     */
+    public <T> T await(Future<T> f, long timeoutMs)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      inFlight.add(f);
+      try {
+        if (preempted()) f.cancel(true);
+        return f.get(timeoutMs, TimeUnit.MILLISECONDS);
+      } catch (CancellationException e) {
+        checkpoint();
+        throw e;
+      } finally {
+        inFlight.remove(f);
+      }
+    }
+
+    /** Чем сканер занят: в /status с длительностью. */
+    public void stage(String stage) {
+      this.stage = stage;
+      this.stageSinceNanos = System.nanoTime();
+    }
+
+    /**
+     * Сканер выполнил последнюю команду: пишет задержку команда -> эффект.
+     * @return задержка, мкс; -1 — невыполненной команды не было
+     */
+    public long applied() {
+      String cmd;
+      long micros;
+      lock.lock();
+      try {
+        cmd = pending;
+        if (cmd == null) return -1;
+        micros = (System.nanoTime() - issuedNanos) / 1_000;
+        pending = null;
+      } finally {
+        lock.unlock();
+      }
+      ackLatency.recordMicros(micros);
+      lastAck = name + " " + cmd + " " + LatencyHistogram.formatMicros(micros);
+      return micros;
+    }
+
+    /** Последняя невыполненная команда, для лога. */
+    public String pendingCommand() {
+      return pending;
+    }
+
+    private void command(String cmd, boolean preempt, Runnable apply) {
+      commands.incrementAndGet();
+      lock.lock();
+      try {
+        if (pending == null) issuedNanos = System.nanoTime();
+        pending = cmd;
+        apply.run();
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      if (preempt) inFlight.forEach(f -> f.cancel(true));
+    }
+
+    private String stageLine() {
+      long micros = (System.nanoTime() - stageSinceNanos) / 1_000;
+      String p = pending;
+      return stage + " " + LatencyHistogram.formatMicros(micros) + (p != null ? " (" + p + " pending)" : "");
+    }
+  }
 }
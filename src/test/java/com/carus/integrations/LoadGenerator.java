@@ -0,0 +1,419 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Нагрузочный и длительный прогон конвейера без ABB и без браузера (профиль {@code loadtest}, см. {@link LoadTest}).
+ * Сканер "load" держит синтетическую доску loadtest.board-size вилок и сдаёт её в {@link ArbPipeline}
+ * с темпом loadtest.rate строк в секунду, как настоящий сканер, читающий доску целиком.
+ *
+ * Доска живёт: появляются новые вилки (новые события и arb_hash), старые пересчитываются под новым
+ * arb_hash (отпечаток dedup), сдвигаются коэффициенты. Плечи — loadtest.legs из loadtest.books,
+ * Stake-плечи идут в экзекьютор (заглушка stub-executor) и каталог событий. Резолвер — заглушка с
+ * задержкой loadtest.resolve-latency, Telegram — {@link StubTelegramServer}.
+ *
+ * Раз в loadtest.report-every — строка отчёта (и строка CSV loadtest.report-file): темп на входе и в
+ * Telegram, p50/p99 доска -> Telegram, паузы GC, куча и куча после GC, размер dedup, очередь telegram.
+ * Растущие куча после GC и dedup при ровном темпе — утечка; растущая очередь и p99 — узкое место.
+ */
+@Component
+@Profile("loadtest")
+@Slf4j
+public class LoadGenerator implements ArbScanner {
+
+  private static final String NAME = "load";
+  private static final long TICK_MS = 100;
+  private static final String[] TEAMS = {
+      "Arsenal", "Chelsea", "Liverpool", "Everton", "Real Madrid", "Barcelona", "Sevilla", "Valencia",
+      "Bayern", "Dortmund", "Leipzig", "Inter", "Milan", "Juventus", "Napoli", "Roma", "Ajax", "PSV",
+      "Benfica", "Porto", "Celtic", "Rangers", "Galatasaray", "Fenerbahce", "Lyon", "Marseille",
+      "Zenit", "Spartak", "Flamengo", "Palmeiras", "Boca Juniors", "River Plate"};
+  private static final String[] SPORTS = {"Soccer", "Tennis", "Basketball", "Hockey"};
+  private static final String[][] MARKETS = {
+      {"Over 2.5", "Under 2.5"}, {"AH1(-1.5)", "AH2(+1.5)"}, {"1", "X2"}, {"Over 10.5 corners", "Under 10.5 corners"}};
+  private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd.MM HH:mm").withZone(ZoneId.systemDefault());
+
+  private final LoadTestProperties props;
+  private final ArbPipeline pipeline;
+  private final ArbHashDeduplicator dedup;
+  private final FingerprintDeduplicator fingerprints;
+  private final EventCatalog catalog;
+  private final ExecutorOutbox outbox;
+  private final StubTelegramServer telegram;
+  private final WorkerControlService control;
+  private final WorkerControlService.Channel ch;
+
+  private final SplittableRandom rnd = new SplittableRandom(42);
+  private final List<Book> books = new ArrayList<>();
+  // хеши уникальны в пределах прогона: снимок dedup с прошлого прогона их не знает
+  private final String runId = Long.toString(System.currentTimeMillis(), 36);
+  private final ExternalUrlResolver resolver;
+
+  // ниже — только поток сканера
+  private Synth[] board;
+  private int cursor;
+  private long seq;
+  private double newDebt, rehashDebt, oddsDebt, submitDebt;
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong rehashed = new AtomicLong();
+
+  // паузы GC с потока уведомлений JMX
+  private final AtomicLong gcPauseMaxMs = new AtomicLong();
+  private final AtomicLong gcPauseTotalMs = new AtomicLong();
+  private final AtomicLong gcPauses = new AtomicLong();
+
+  private volatile String lastReport = "not started";
+  private final CountDownLatch finished = new CountDownLatch(1);
+
+  public LoadGenerator(LoadTestProperties props,
+      ArbPipeline pipeline,
+      ArbHashDeduplicator dedup,
+      FingerprintDeduplicator fingerprints,
+      EventCatalog catalog,
+      ExecutorOutbox outbox,
+      StubTelegramServer telegram,
+      WorkerControlService control) {
+    this.props = props;
+    this.pipeline = pipeline;
+    this.dedup = dedup;
+    this.fingerprints = fingerprints;
+    this.catalog = catalog;
+    this.outbox = outbox;
+    this.telegram = telegram;
+    this.control = control;
+    this.ch = control.channel(NAME);
+    for (String b : props.getBooks()) books.add(BookRegistry.of(b));
+
+    long resolveNanos = props.getResolveLatency().toNanos();
+    this.resolver = url -> {
+      LockSupport.parkNanos(resolveNanos);
+      return url == null ? null : url.replace("https://abb.invalid/bet/", "https://book.invalid/event/");
+    };
+    watchGc();
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public String status() {
+    return lastReport;
+  }
+
+  /** Ждёт итогового отчёта прогона. */
+  public boolean awaitFinished(Duration timeout) throws InterruptedException {
+    return finished.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /** Итог прогона (или последняя строка отчёта, пока прогон идёт). */
+  public String lastReport() {
+    return lastReport;
+  }
+
+  @Override
+  public void runLoop() throws InterruptedException {
+    pipeline.scannerReady(NAME, resolver);
+    board = new Synth[Math.max(1, props.getBoardSize())];
+    for (int i = 0; i < board.length; i++) board[i] = newArb();
+
+    long t0 = System.currentTimeMillis();
+    long end = t0 + props.getDuration().toMillis();
+    long nextReport = t0 + props.getReportEvery().toMillis();
+    Report report = new Report(t0);
+    log.info("[loadtest] {} rows/s, board {}, {} legs, for {}", props.getRate(), board.length, props.getLegs(),
+        props.getDuration());
+
+    long last = t0;
+    ch.stage("submitting");
+    while (System.currentTimeMillis() < end) {
+      if (Thread.currentThread().isInterrupted()) throw new InterruptedException("load generator stopping");
+      try {
+        ch.sleep(TICK_MS);
+      } catch (WorkerControlService.Preempted e) {
+        // пауза или рестарт — сразу, не дожидаясь тика
+        if (control.consumeRestart(NAME)) ch.applied();  // перезапускать нечего
+        if (ch.isPaused()) {
+          ch.applied();
+          ch.stage("paused");
+          ch.awaitResume();
+          ch.applied();
+          ch.stage("submitting");
+          last = System.currentTimeMillis();
+        }
+      }
+      long now = System.currentTimeMillis();
+      double dt = (now - last) / 1000.0;
+      last = now;
+
+      churn(dt);
+      submitDebt += props.getRate() * dt;
+      for (; submitDebt >= 1; submitDebt--) submitNext();
+
+      if (now >= nextReport) {
+        report.line(now);
+        nextReport = now + props.getReportEvery().toMillis();
+      }
+    }
+    report.line(System.currentTimeMillis());
+    report.summary();
+    ch.stage("done");
+    finished.countDown();
+
+    // прогон окончен, отчёт в /status и в логе; ждём остановки приложения
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        ch.sleep(Long.MAX_VALUE);
+      } catch (WorkerControlService.Preempted e) {
+        // сдавать уже нечего: команды просто подтверждаем
+        control.consumeRestart(NAME);
+        ch.applied();
+        ch.awaitResume();
+        ch.applied();
+      }
+    }
+    throw new InterruptedException("load generator stopping");
+  }
+
+  // =========================
+  // Синтетическая доска
+  // =========================
+
+  private void churn(double dt) {
+    newDebt += props.getNewPerSecond() * dt;
+    rehashDebt += props.getRehashPerSecond() * dt;
+    oddsDebt += props.getOddsPerSecond() * dt;
+    for (; newDebt >= 1; newDebt--) {
+      board[rnd.nextInt(board.length)] = newArb();
+      created.incrementAndGet();
+    }
+    for (; rehashDebt >= 1; rehashDebt--) {
+      Synth a = board[rnd.nextInt(board.length)];
+      // ABB пересчитал вилку: тот же матч и рынок, новый хеш и чуть другие коэффициенты
+      a.hash = nextHash();
+      a.boardNanos = System.nanoTime();
+      nudgeOdds(a);
+      rehashed.incrementAndGet();
+    }
+    for (; oddsDebt >= 1; oddsDebt--) nudgeOdds(board[rnd.nextInt(board.length)]);
+  }
+
+  private void submitNext() {
+    Synth a = board[cursor];
+    cursor = (cursor + 1) % board.length;
+    // updated-at = момент появления хеша на доске: по нему заглушка Telegram считает задержку
+    ArbHeader header = ArbHeader.parse(a.percentText(), "green", a.sport, "Match", "t" + a.boardNanos);
+    List<BetLine> bets = new ArrayList<>(a.legs.length);
+    for (int i = 0; i < a.legs.length; i++) {
+      Book b = a.legs[i];
+      String odd = String.format(Locale.US, "%.2f", a.odds[i]);
+      bets.add(new BetLine(b, a.date, a.startsAt, a.event, "Synthetic League", a.markets[i], odd, a.odds[i], "",
+          "https://abb.invalid/bet/" + a.eventId + "-" + b.id() + "-" + i, null));
+    }
+    if (pipeline.submit(NAME, header, bets, a.hash, resolver)) submitted.incrementAndGet();
+    else rejected.incrementAndGet();
+  }
+
+  private Synth newArb() {
+    Synth a = new Synth();
+    a.eventId = ++seq;
+    String home = TEAMS[rnd.nextInt(TEAMS.length)];
+    String away = TEAMS[rnd.nextInt(TEAMS.length)];
+    a.event = home + " - " + away + " " + (a.eventId % 97);
+    a.sport = SPORTS[rnd.nextInt(SPORTS.length)];
+    a.startsAt = Instant.ofEpochSecond((System.currentTimeMillis() / 1000 + 600 + rnd.nextInt(86_400)) / 60 * 60);
+    a.date = DATE.format(a.startsAt);
+
+    int legs = Math.max(2, props.getLegs());
+    a.legs = new Book[legs];
+    a.markets = new String[legs];
+    a.odds = new double[legs];
+    String[] pair = MARKETS[rnd.nextInt(MARKETS.length)];
+    int first = rnd.nextInt(books.size());
+    for (int i = 0; i < legs; i++) {
+      a.legs[i] = books.get((first + i) % books.size());
+      a.markets[i] = i < pair.length ? pair[i] : "Outcome " + (i + 1);
+    }
+    a.hash = nextHash();
+    a.boardNanos = System.nanoTime();
+    nudgeOdds(a);
+    return a;
+  }
+
+  private void nudgeOdds(Synth a) {
+    // сумма обратных коэффициентов чуть меньше 1 — вилка 0.5..5%
+    double margin = 1 / (1.005 + rnd.nextDouble() * 0.045);
+    for (int i = 0; i < a.odds.length; i++) a.odds[i] = Math.round(a.odds.length / margin * 100) / 100.0;
+    a.odds[0] += rnd.nextInt(-5, 6) / 100.0;
+  }
+
+  private String nextHash() {
+    return "lt" + runId + "-" + (++seq);
+  }
+
+  private static final class Synth {
+    long eventId;
+    String event;
+    String sport;
+    Instant startsAt;
+    String date;
+    Book[] legs;
+    String[] markets;
+    double[] odds;
+    String hash;
+    long boardNanos;
+
+    String percentText() {
+      double inv = 0;
+      for (double o : odds) inv += 1 / o;
+      return String.format(Locale.US, "%.2f%%", (1 / inv - 1) * 100);
+    }
+  }
+
+  // =========================
+  // Отчёт
+  // =========================
+
+  private void watchGc() {
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (!(gc instanceof NotificationEmitter emitter)) continue;
+      emitter.addNotificationListener((n, h) -> {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+        // циклы конкурентных сборщиков (G1 Concurrent, ZGC Cycles) идут рядом с приложением, это не паузы
+        String name = info.getGcName();
+        if (name.contains("Concurrent") || name.contains("Cycles")) return;
+        long ms = info.getGcInfo().getDuration();
+        gcPauses.incrementAndGet();
+        gcPauseTotalMs.addAndGet(ms);
+        gcPauseMaxMs.accumulateAndGet(ms, Math::max);
+      }, null, null);
+    }
+  }
+
+  /** Сумма занятого в пулах кучи сразу после последней сборки — растёт при ровной нагрузке только от утечки. */
+  private static long heapAfterGc() {
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() != MemoryType.HEAP) continue;
+      MemoryUsage u = pool.getCollectionUsage();
+      if (u != null) used += u.getUsed();
+    }
+    return used;
+  }
+
+  private final class Report {
+    private final long startMs;
+    private final Path csv;
+    private long lastMs;
+    private long lastSubmitted, lastRejected, lastSent, lastGcTotal, lastGcCount;
+    private long firstAfterGc = -1, firstDedup = -1;
+
+    Report(long startMs) {
+      this.startMs = startMs;
+      this.lastMs = startMs;
+      this.csv = props.getReportFile() == null || props.getReportFile().isBlank() ? null : Path.of(props.getReportFile());
+      write("elapsed_s,rows_per_s,rejected,tg_per_s,tg_429,e2e_p50_ms,e2e_p99_ms,gc_pauses,gc_pause_max_ms,"
+          + "gc_pause_total_ms,heap_mb,heap_after_gc_mb,dedup_size,tg_queue\n", false);
+    }
+
+    void line(long now) {
+      double sec = Math.max(0.001, (now - lastMs) / 1000.0);
+      long sub = submitted.get(), rej = rejected.get(), sent = telegram.messages();
+      long gcTotal = gcPauseTotalMs.get(), gcCount = gcPauses.get();
+      long gcMax = gcPauseMaxMs.getAndSet(0);
+      long[] e2e = telegram.takeWindow();
+      long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+      long afterGc = heapAfterGc();
+      int dedupSize = dedup.size();
+      if (firstAfterGc < 0 && afterGc > 0) firstAfterGc = afterGc;
+      if (firstDedup < 0) firstDedup = dedupSize;
+
+      long elapsed = (now - startMs) / 1000;
+      double rowsPerS = (sub - lastSubmitted) / sec;
+      double tgPerS = (sent - lastSent) / sec;
+      lastReport = String.format(Locale.US,
+          "t=%ds in=%.0f/s rejected=%d tg=%.1f/s (429 x%d) e2e p50=%s p99=%s | gc %d pauses max=%dms total=%dms"
+              + " | heap=%dMB afterGC=%dMB | dedup=%d | tg queue %s",
+          elapsed, rowsPerS, rej - lastRejected, tgPerS, telegram.throttled(),
+          LatencyHistogram.formatMicros(e2e[0]), LatencyHistogram.formatMicros(e2e[1]),
+          gcCount - lastGcCount, gcMax, gcTotal - lastGcTotal, heap >> 20, afterGc >> 20, dedupSize,
+          pipeline.telegramQueue());
+      log.info("[loadtest] {}", lastReport);
+      write(String.format(Locale.US, "%d,%.1f,%d,%.2f,%d,%.1f,%.1f,%d,%d,%d,%d,%d,%d,%s%n",
+          elapsed, rowsPerS, rej - lastRejected, tgPerS, telegram.throttled(), e2e[0] / 1000.0, e2e[1] / 1000.0,
+          gcCount - lastGcCount, gcMax, gcTotal - lastGcTotal, heap >> 20, afterGc >> 20, dedupSize,
+          pipeline.telegramQueue().replace('/', ':')), true);
+
+      lastMs = now;
+      lastSubmitted = sub;
+      lastRejected = rej;
+      lastSent = sent;
+      lastGcTotal = gcTotal;
+      lastGcCount = gcCount;
+    }
+
+    void summary() {
+      LatencyHistogram all = telegram.totalLatency();
+      long sec = Math.max(1, (System.currentTimeMillis() - startMs) / 1000);
+      String s = String.format(Locale.US,
+          "done in %ds: rows %d (%d/s), rejected %d, new arbs %d, rehashed %d, telegram %d (%.1f/s)"
+              + ", e2e p50=%s p99=%s p99.9=%s, gc pauses %d total %dms"
+              + ", heap after GC %dMB -> %dMB, dedup %d -> %d",
+          sec, submitted.get(), submitted.get() / sec, rejected.get(), created.get(), rehashed.get(),
+          telegram.messages(), telegram.messages() / (double) sec,
+          LatencyHistogram.formatMicros(all.percentileMicros(0.50)),
+          LatencyHistogram.formatMicros(all.percentileMicros(0.99)),
+          LatencyHistogram.formatMicros(all.percentileMicros(0.999)),
+          gcPauses.get(), gcPauseTotalMs.get(), Math.max(0, firstAfterGc) >> 20, heapAfterGc() >> 20,
+          firstDedup, dedup.size());
+      lastReport = s;
+      log.info("[loadtest] {}", s);
+      log.info("[loadtest] {}", pipeline.status());
+      log.info("[loadtest] {} | {} | {}", fingerprints.status(), catalog.status(), outbox.status());
+    }
+
+    private void write(String row, boolean append) {
+      if (csv == null) return;
+      try {
+        Files.writeString(csv, row, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+      } catch (IOException e) {
+        log.warn("[loadtest] cannot write {}: {}", csv, e.toString());
+      }
+    }
+  }
+}
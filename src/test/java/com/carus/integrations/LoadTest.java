@@ -0,0 +1,58 @@
+package com.carus.integrations;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Нагрузочный прогон всего конвейера: {@link LoadGenerator} вместо ABB, {@link StubTelegramServer} вместо
+ * Telegram, {@link StubBetExecutor} вместо экзекьютора. Идёт loadtest.duration (по умолчанию час),
+ * поэтому только по запросу:
+ *
+ * <pre>
+ * mvn test -Dtest=LoadTest -Dloadtest.run=true [-Dloadtest.duration=10m -Dloadtest.rate=500]
+ * </pre>
+ *
+ * Отчёт — строки [loadtest] в логе и loadtest.report-file.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles({"loadtest", "stub-executor"})
+@EnabledIfSystemProperty(named = "loadtest.run", matches = "true")
+class LoadTest {
+
+  @Autowired
+  private LoadGenerator generator;
+
+  @Autowired
+  private StubTelegramServer telegram;
+
+  @Autowired
+  private LoadTestProperties props;
+
+  @Test
+  void pipelineHoldsTheLoad() throws InterruptedException {
+    assertTrue(generator.awaitFinished(props.getDuration().plusMinutes(1)),
+        "load generator did not finish: " + generator.lastReport());
+    assertTrue(telegram.messages() > 0, "nothing reached telegram: " + generator.lastReport());
+  }
+
+  /** Без ABB-аккаунтов (браузер, логин) и без бота управления (long polling в настоящий Telegram). */
+  @TestConfiguration
+  static class WithoutAbb {
+
+    @Bean
+    static BeanDefinitionRegistryPostProcessor withoutAbbScanners() {
+      return registry -> {
+        registry.removeBeanDefinition("abbAccountPool");
+        registry.removeBeanDefinition("controlBot");
+      };
+    }
+  }
+}
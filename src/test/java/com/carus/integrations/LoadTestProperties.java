@@ -0,0 +1,56 @@
+package com.carus.integrations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** Синтетическая нагрузка на конвейер (профиль loadtest), см. {@link LoadGenerator}. */
+@Data
+@ConfigurationProperties(prefix = "loadtest")
+public class LoadTestProperties {
+
+  /** Сколько строк доски в секунду сдаётся в конвейер (как сканер, который читает доску целиком). */
+  private int rate = 200;
+
+  /** Сколько длится прогон; потом финальный отчёт, генератор замолкает. */
+  private Duration duration = Duration.ofHours(1);
+
+  /** Вилок на синтетической доске одновременно. */
+  private int boardSize = 300;
+
+  /** Плеч у вилки. */
+  private int legs = 2;
+
+  /** Букмекеры для плеч; Stake — путь экзекьютора и каталога событий. */
+  private List<String> books = new ArrayList<>(List.of("Stake", "Pinnacle", "bc.game", "1xBet", "GGBet", "Marathon"));
+
+  /** Новых вилок в секунду (вместо самых старых): новые arb_hash, полный путь до TG. */
+  private double newPerSecond = 2;
+
+  /** Пересчётов в секунду: то же событие и рынок под новым arb_hash (работа отпечатка dedup). */
+  private double rehashPerSecond = 0.5;
+
+  /** Сдвигов коэффициентов в секунду: тот же arb_hash, новый updated-at. */
+  private double oddsPerSecond = 10;
+
+  /** Задержка заглушки резолвера (редирект ABB). */
+  private Duration resolveLatency = Duration.ofMillis(20);
+
+  /** Порт заглушки Telegram Bot API на 127.0.0.1 (tg.api-base-url профиля loadtest смотрит сюда). */
+  private int telegramPort = 18090;
+
+  /** Задержка ответа заглушки Telegram. */
+  private Duration telegramLatency = Duration.ofMillis(30);
+
+  /** Доля ответов 429 от заглушки Telegram (проверка ретраев под нагрузкой). */
+  private double telegram429Rate = 0.0;
+
+  /** Как часто печатать строку отчёта и дописывать её в CSV. */
+  private Duration reportEvery = Duration.ofSeconds(30);
+
+  /** CSV с отчётом по времени; пусто — только лог. */
+  private String reportFile = "loadtest-report.csv";
+}
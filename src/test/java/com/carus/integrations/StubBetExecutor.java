@@ -0,0 +1,219 @@
+package com.carus.integrations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Локальная заглушка bet-executor для проверки доставки без настоящего сервиса.
+ * Только в тестах: включается профилем {@code stub-executor}, слушает {@code bet-executor.stub-port} на 127.0.0.1:
+ *
+ * <ul>
+ *   <li>{@code POST /api/bet-signal} — 202 + {"signalId":..}, повтор того же Idempotency-Key — 409</li>
+ *   <li>{@code GET /ws/bet-signal} с Upgrade — WebSocket, на каждый кадр сигнала ack-кадр</li>
+ *   <li>{@code GET /api/health} — 200</li>
+ * </ul>
+ *
+ * Ставок не делает, только печатает сигналы. Каждое соединение — виртуальный поток.
+ */
+@Component
+@Profile("stub-executor")
+@Slf4j
+public class StubBetExecutor {
+
+  private static final String WS_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+  private final int port;
+
+  // idempotencyKey -> signalId
+  private final Map<String, String> seen = new ConcurrentHashMap<>();
+  private final AtomicLong ids = new AtomicLong();
+
+  private ServerSocket server;
+  private Thread acceptor;
+
+  public StubBetExecutor(@Value("${bet-executor.stub-port:8081}") int port) {
+    this.port = port;
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    acceptor = Thread.ofVirtual().name("stub-executor").start(this::acceptLoop);
+    log.info("[stub-executor] listening on 127.0.0.1:{}", port);
+  }
+
+  @PreDestroy
+  public void stop() {
+    try { server.close(); } catch (IOException ignored) {}
+    if (acceptor != null) acceptor.interrupt();
+  }
+
+  private void acceptLoop() {
+    while (!server.isClosed()) {
+      try {
+        Socket s = server.accept();
+        Thread.ofVirtual().name("stub-executor-conn").start(() -> handle(s));
+      } catch (IOException e) {
+        if (!server.isClosed()) log.warn("[stub-executor] accept failed: {}", e.toString());
+      }
+    }
+  }
+
+  private void handle(Socket socket) {
+    try (socket) {
+      socket.setTcpNoDelay(true);
+      InputStream in = socket.getInputStream();
+      OutputStream out = socket.getOutputStream();
+
+      String requestLine = readLine(in);
+      if (requestLine == null) return;
+      Map<String, String> headers = new LinkedHashMap<>();
+      for (String line = readLine(in); line != null && !line.isEmpty(); line = readLine(in)) {
+        int colon = line.indexOf(':');
+        if (colon > 0) headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+      }
+
+      if ("websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+        serveWebSocket(headers.get("sec-websocket-key"), in, out);
+      } else if (requestLine.startsWith("POST /api/bet-signal")) {
+        int len = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+        String body = new String(in.readNBytes(len), StandardCharsets.UTF_8);
+        BetSignalCodec.Ack signal = BetSignalCodec.parseAck(body);
+        String key = headers.getOrDefault("idempotency-key", signal == null ? null : signal.idempotencyKey());
+        boolean fresh = key == null || !seen.containsKey(key);
+        String signalId = accept(key, body, "rest");
+        respond(out, fresh ? "202 Accepted" : "409 Conflict", "{\"signalId\":\"" + signalId + "\"}");
+      } else if (requestLine.startsWith("GET /api/health")) {
+        respond(out, "200 OK", "{\"status\":\"UP\"}");
+      } else {
+        respond(out, "404 Not Found", "{}");
+      }
+    } catch (IOException e) {
+      // клиент отвалился
+    }
+  }
+
+  private String accept(String key, String body, String via) {
+    if (key == null) return "stub-" + ids.incrementAndGet();
+    String[] created = new String[1];
+    String id = seen.computeIfAbsent(key, k -> created[0] = "stub-" + ids.incrementAndGet());
+    log.info("[stub-executor] {} via {} -> {} {}", created[0] != null ? "signal" : "duplicate", via, id, body);
+    return id;
+  }
+
+  private void serveWebSocket(String wsKey, InputStream rawIn, OutputStream out) throws IOException {
+    String accept;
+    try {
+      byte[] sha1 = MessageDigest.getInstance("SHA-1")
+          .digest((wsKey + WS_GUID).getBytes(StandardCharsets.ISO_8859_1));
+      accept = Base64.getEncoder().encodeToString(sha1);
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+    out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+        + "Upgrade: websocket\r\nConnection: Upgrade\r\n"
+        + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+
+    DataInputStream in = new DataInputStream(rawIn);
+    ByteArrayOutputStream message = new ByteArrayOutputStream();
+    while (true) {
+      int b0;
+      try {
+        b0 = in.readUnsignedByte();
+      } catch (EOFException e) {
+        return;
+      }
+      boolean fin = (b0 & 0x80) != 0;
+      int opcode = b0 & 0x0F;
+      int b1 = in.readUnsignedByte();
+      long len = b1 & 0x7F;
+      if (len == 126) len = in.readUnsignedShort();
+      else if (len == 127) len = in.readLong();
+      byte[] mask = new byte[4];
+      if ((b1 & 0x80) != 0) in.readFully(mask);
+      byte[] payload = new byte[(int) len];
+      in.readFully(payload);
+      for (int i = 0; i < payload.length; i++) payload[i] ^= mask[i & 3];
+
+      switch (opcode) {
+        case 0x8 -> { // close
+          writeFrame(out, 0x8, payload);
+          return;
+        }
+        case 0x9 -> writeFrame(out, 0xA, payload); // ping -> pong
+        case 0x1, 0x0 -> {
+          message.write(payload);
+          if (!fin) continue;
+          String text = message.toString(StandardCharsets.UTF_8);
+          message.reset();
+
+          BetSignalCodec.Ack signal = BetSignalCodec.parseAck(text);
+          if (signal == null || signal.idempotencyKey() == null) continue;
+          boolean fresh = !seen.containsKey(signal.idempotencyKey());
+          String signalId = accept(signal.idempotencyKey(), text, "ws");
+          String ack = "{\"type\":\"ack\",\"idempotencyKey\":\"" + signal.idempotencyKey()
+              + "\",\"signalId\":\"" + signalId + "\",\"status\":" + (fresh ? 202 : 409) + "}";
+          writeFrame(out, 0x1, ack.getBytes(StandardCharsets.UTF_8));
+        }
+        default -> { }
+      }
+    }
+  }
+
+  private static void writeFrame(OutputStream out, int opcode, byte[] payload) throws IOException {
+    out.write(0x80 | opcode);
+    if (payload.length < 126) {
+      out.write(payload.length);
+    } else if (payload.length < 65536) {
+      out.write(126);
+      out.write(payload.length >>> 8);
+      out.write(payload.length & 0xFF);
+    } else {
+      out.write(127);
+      for (int i = 7; i >= 0; i--) out.write((int) ((long) payload.length >>> (8 * i)) & 0xFF);
+    }
+    out.write(payload);
+    out.flush();
+  }
+
+  private static void respond(OutputStream out, String status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    out.write(("HTTP/1.1 " + status + "\r\nContent-Type: application/json\r\n"
+        + "Content-Length: " + bytes.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    out.write(bytes);
+    out.flush();
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c == '\n') return sb.toString();
+      if (c != '\r') sb.append((char) c);
+    }
+    return sb.length() == 0 ? null : sb.toString();
+  }
+}
@@ -0,0 +1,141 @@
+package com.carus.integrations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Заглушка Telegram Bot API для нагрузочного прогона (профиль {@code loadtest}): на
+ * {@code POST /bot<token>/sendMessage} и {@code sendPhoto} отвечает {"ok":true} через
+ * loadtest.telegram-latency, доля loadtest.telegram-429-rate — 429 (ретраи TelegramSender).
+ *
+ * {@link LoadGenerator} кладёт в updated-at вилки момент, когда она попала на доску; отсюда
+ * задержка доска -> Telegram целиком, через dedup, резолв, формат и отправку.
+ */
+@Component
+@Profile("loadtest")
+@Slf4j
+public class StubTelegramServer {
+
+  private final LoadTestProperties props;
+  private final ObjectMapper json = new ObjectMapper();
+
+  private final AtomicLong messages = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  // окно отчёта и весь прогон
+  private final LatencyHistogram window = new LatencyHistogram();
+  private final LatencyHistogram total = new LatencyHistogram();
+
+  private HttpServer server;
+  private ExecutorService handlers;
+
+  public StubTelegramServer(LoadTestProperties props) {
+    this.props = props;
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), props.getTelegramPort()), 256);
+    handlers = Executors.newVirtualThreadPerTaskExecutor();
+    server.setExecutor(handlers);
+    server.createContext("/", this::handle);
+    server.start();
+    log.info("[stub-telegram] listening on 127.0.0.1:{}", props.getTelegramPort());
+  }
+
+  private void handle(HttpExchange ex) throws IOException {
+    long arrivedNanos = System.nanoTime();
+    try (ex) {
+      byte[] body;
+      try (InputStream in = ex.getRequestBody()) {
+        body = in.readAllBytes();
+      }
+      try {
+        Thread.sleep(props.getTelegramLatency().toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (ThreadLocalRandom.current().nextDouble() < props.getTelegram429Rate()) {
+        throttled.incrementAndGet();
+        reply(ex, 429, "{\"ok\":false,\"error_code\":429,\"parameters\":{\"retry_after\":1}}");
+        return;
+      }
+      if (ex.getRequestURI().getPath().endsWith("/sendMessage")) {
+        messages.incrementAndGet();
+        long seenAt = boardTimestamp(body);
+        if (seenAt > 0) {
+          window.recordNanos(arrivedNanos - seenAt);
+          total.recordNanos(arrivedNanos - seenAt);
+        }
+      }
+      reply(ex, 200, "{\"ok\":true,\"result\":{\"message_id\":" + messages.get() + "}}");
+    }
+  }
+
+  /** Первая строка сообщения заканчивается на "| updated-at"; у синтетических вилок это "t<nanoTime>". */
+  private long boardTimestamp(byte[] body) {
+    try {
+      JsonNode text = json.readTree(body).get("text");
+      if (text == null) return 0;
+      String s = text.asText();
+      int eol = s.indexOf('\n');
+      String first = eol < 0 ? s : s.substring(0, eol);
+      int bar = first.lastIndexOf("| t");
+      return bar < 0 ? 0 : Long.parseLong(first.substring(bar + 3).trim());
+    } catch (IOException | RuntimeException e) {
+      return 0;
+    }
+  }
+
+  private static void reply(HttpExchange ex, int code, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    ex.getResponseHeaders().set("Content-Type", "application/json");
+    ex.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = ex.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  long messages() {
+    return messages.get();
+  }
+
+  long throttled() {
+    return throttled.get();
+  }
+
+  LatencyHistogram totalLatency() {
+    return total;
+  }
+
+  /** Задержка доска -> Telegram за окно отчёта, мкс: {p50, p99}; окно сбрасывается. */
+  long[] takeWindow() {
+    long[] p = { window.percentileMicros(0.50), window.percentileMicros(0.99) };
+    window.reset();
+    return p;
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (server != null) server.stop(0);
+    if (handlers != null) handlers.shutdownNow();
+  }
+}